@@ -1,14 +1,11 @@
 package ru.practicum.ewm.event.service;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.ewm.category.model.Category;
@@ -24,8 +21,7 @@ import ru.practicum.ewm.exceptions.ConflictException;
 import ru.practicum.ewm.exceptions.NotFoundException;
 import ru.practicum.ewm.user.model.User;
 import ru.practicum.ewm.user.storage.UserRepository;
-import ru.practicum.stats.client.StatsClient;
-import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.client.ViewsCache;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -43,7 +39,7 @@ public class EventServiceImpl implements EventService {
     private final UserRepository userRepository;
     private final CategoryRepository categoryRepository;
     private final EventFilterBuilder filterBuilder;
-    private final StatsClient statsClient;
+    private final ViewsCache viewsCache;
 
     // Получить событие по id (public)
     @Override
@@ -354,9 +350,12 @@ public class EventServiceImpl implements EventService {
 
     // получает кол-во просмотров для списка событий
     private Map<Long, Long> getViewsForEvents(List<Event> events) {
+        if (events.isEmpty()) {
+            return Map.of();
+        }
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-        // найти самую ранюю дату создания event
+        // найти самую раннюю дату создания event
         LocalDateTime earliestEvent = events.getFirst().getCreatedOn();
 
         for (Event event : events) {
@@ -364,43 +363,21 @@ public class EventServiceImpl implements EventService {
                 earliestEvent = event.getCreatedOn();
             }
         }
-        // дата начала и конца
+        // дата начала; конец — текущий момент
         String start = earliestEvent.format(formatter);
-        String end = LocalDateTime.now().format(formatter);
-
-        // мапа для сопаставления uri и id Event
-        Map<String, Long> uriIdMap = new HashMap<>();
 
-        // создаёт список uri для запроса статистикаи
+        // создаёт список uri для запроса статистики
         List<String> eventsUris = events.stream()
-                .map(event -> {
-                    String uri = "/events/" + event.getId();
-
-                    uriIdMap.put(uri, event.getId());
-
-                    return uri;
-                }).toList();
-
-        ResponseEntity<Object> response = statsClient.getStats(start, end, eventsUris, true);
-
-        Object responseBody = response.getBody();
-
-        ObjectMapper mapper = new ObjectMapper();
+                .map(event -> "/events/" + event.getId())
+                .toList();
 
-        List<ViewStatsDto> viewStatsDtoList = mapper.convertValue(responseBody,
-                new TypeReference<>() {
-                });
+        // из сервиса статистики запрашиваются только отсутствующие в кэше uri
+        Map<String, Long> urisToViewsMap = viewsCache.getViews(start, eventsUris, true);
 
         Map<Long, Long> idsToViewsMap = new HashMap<>();
-
-        if (viewStatsDtoList.isEmpty()) {
-            for (Event event : events) {
-                idsToViewsMap.put(event.getId(), 0L); //Если статистика отсутствует, устанавливаем 0 просмотров
-            }
-        } else {
-            for (ViewStatsDto viewStatsDto : viewStatsDtoList) {
-                idsToViewsMap.put(uriIdMap.get(viewStatsDto.getUri()), viewStatsDto.getHits());
-            }
+        for (Event event : events) {
+            // если статистика по событию отсутствует, устанавливаем 0 просмотров
+            idsToViewsMap.put(event.getId(), urisToViewsMap.getOrDefault("/events/" + event.getId(), 0L));
         }
 
         return idsToViewsMap;
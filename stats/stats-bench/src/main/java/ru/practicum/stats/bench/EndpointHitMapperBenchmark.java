@@ -0,0 +1,32 @@
+package ru.practicum.stats.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.mapper.EndpointHitMapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Преобразование DTO хитов в сущности с нормализацией IP: одна операция — все {@code rows} хитов.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndpointHitMapperBenchmark {
+
+    @Benchmark
+    public void toEndpointHit(HitData data, Blackhole blackhole) {
+        for (EndpointHitDto hit : data.hits) {
+            blackhole.consume(EndpointHitMapper.toEndpointHit(hit));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.practicum.stats.bench;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.storage.ViewStatsProjection;
+import ru.practicum.stats.storage.ViewStatsRow;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Набор данных для бенчмарков: хиты и строки статистики.
+ * <p>
+ * Размеры задаются параметрами JMH: {@code rows} — количество хитов, {@code uris} — количество
+ * различных URI (и строк в результате статистики), {@code ips} — количество различных IP.
+ * Данные генерируются детерминированно, поэтому прогоны с одинаковыми параметрами сравнимы.
+ */
+@State(Scope.Benchmark)
+public class HitData {
+    static final String APP = "ewm-main-service";
+
+    @Param("10000")
+    public int rows;
+    @Param("100")
+    public int uris;
+    @Param("1000")
+    public int ips;
+
+    List<EndpointHitDto> hits;
+    List<ViewStatsProjection> projections;
+    List<String> uriList;
+
+    @Setup
+    public void generate() {
+        Random random = new Random(42);
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+
+        uriList = new ArrayList<>(uris);
+        for (int i = 0; i < uris; i++) {
+            uriList.add("/events/" + i);
+        }
+
+        hits = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            hits.add(new EndpointHitDto(null, APP, uriList.get(random.nextInt(uris)), ip(random.nextInt(ips)),
+                    now.minusSeconds(random.nextInt(3600))));
+        }
+
+        projections = new ArrayList<>(uris);
+        for (int i = 0; i < uris; i++) {
+            projections.add(new ViewStatsRow(APP, uriList.get(i), (long) random.nextInt(rows + 1)));
+        }
+        projections.sort((a, b) -> Long.compare(b.getHits(), a.getHits()));
+    }
+
+    private static String ip(int index) {
+        return "10." + (index >>> 16 & 0xFF) + "." + (index >>> 8 & 0xFF) + "." + (index & 0xFF);
+    }
+}
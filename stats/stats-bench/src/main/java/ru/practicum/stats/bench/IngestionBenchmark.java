@@ -0,0 +1,97 @@
+package ru.practicum.stats.bench;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.stats.StatsServer;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.model.Precision;
+import ru.practicum.stats.service.StatsService;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись хитов и чтение статистики через {@link StatsService} на встроенном PostgreSQL.
+ * <p>
+ * Поднимает контекст stats-server без веб-сервера; схема создаётся тем же schema.sql, что и в работе.
+ * Перед замерами в БД записываются все {@code rows} хитов. Запись измеряется пачками по {@code batchSize}
+ * хитов, которые берутся из набора по кругу; чтение — запросом /stats за последний час.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IngestionBenchmark {
+    @Param("500")
+    public int batchSize;
+
+    private EmbeddedPostgres postgres;
+    private ConfigurableApplicationContext context;
+    private StatsService statsService;
+    private int offset;
+
+    @Setup
+    public void setup(HitData data) throws IOException {
+        postgres = EmbeddedPostgres.start();
+        context = new SpringApplicationBuilder(StatsServer.class)
+                .web(WebApplicationType.NONE)
+                // аргументы командной строки, чтобы перекрыть настройки из application.yml сервера
+                .run("--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                        "--spring.datasource.username=postgres",
+                        "--spring.datasource.password=postgres",
+                        "--stats.ingestion.mode=SYNC");
+        statsService = context.getBean(StatsService.class);
+        for (int from = 0; from < data.hits.size(); from += batchSize) {
+            statsService.addHits(data.hits.subList(from, Math.min(from + batchSize, data.hits.size())));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        postgres.close();
+    }
+
+    @Benchmark
+    public HitBatchResultDto addHits(HitData data) {
+        List<EndpointHitDto> hits = data.hits;
+        if (offset + batchSize > hits.size()) {
+            offset = 0;
+        }
+        List<EndpointHitDto> batch = hits.subList(offset, Math.min(offset + batchSize, hits.size()));
+        offset += batchSize;
+        return statsService.addHits(batch);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> getStats(HitData data) {
+        LocalDateTime now = LocalDateTime.now();
+        return statsService.getStats(now.minusHours(1), now, data.uriList, false, Precision.EXACT);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> getUniqueStats(HitData data) {
+        LocalDateTime now = LocalDateTime.now();
+        return statsService.getStats(now.minusHours(1), now, data.uriList, true, Precision.EXACT);
+    }
+}
@@ -0,0 +1,65 @@
+package ru.practicum.stats.bench;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.stats.client.ViewStatsReader;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.mapper.ViewStatsMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор ответа /stats на стороне клиента: одна операция — ответ из {@code uris} строк.
+ * <p>
+ * {@link #objectThenConvert} повторяет прежний путь: тело ответа разбирается в дерево
+ * из LinkedHashMap (как {@code getStats} с типом Object), затем новый ObjectMapper конвертирует его в DTO.
+ * {@link #typedList} и {@link #hitsByUri} — разбор через {@link ViewStatsReader}.
+ * Аллокации на операцию видны при запуске с {@code -prof gc} (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatsClientBenchmark {
+    private static final ObjectMapper RESPONSE_MAPPER = new ObjectMapper();
+
+    private byte[] body;
+
+    @Setup
+    public void serialize(HitData data) throws IOException {
+        body = new ObjectMapper().writeValueAsBytes(ViewStatsMapper.toViewStatsDtos(data.projections));
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> objectThenConvert() throws IOException {
+        Object tree = RESPONSE_MAPPER.readValue(body, Object.class);
+        return new ObjectMapper().convertValue(tree, new TypeReference<>() {
+        });
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> typedList() throws IOException {
+        return ViewStatsReader.readList(new ByteArrayInputStream(body));
+    }
+
+    @Benchmark
+    public Map<String, Long> hitsByUri() throws IOException {
+        return ViewStatsReader.readHitsByUri(new ByteArrayInputStream(body));
+    }
+}
@@ -0,0 +1,66 @@
+package ru.practicum.stats.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import ru.practicum.stats.controller.StatsController;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.mapper.ViewStatsMapper;
+import ru.practicum.stats.service.StatsService;
+
+import java.lang.reflect.Proxy;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обработка запроса /stats в контроллере без БД: декодирование и разбор дат и вызов сервиса,
+ * который возвращает заранее подготовленный результат из {@code uris} строк.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsControllerBenchmark {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private StatsController controller;
+    private String start;
+    private String end;
+
+    @Setup
+    public void setup(HitData data) {
+        List<ViewStatsDto> result = ViewStatsMapper.toViewStatsDtos(data.projections);
+        StatsService service = (StatsService) Proxy.newProxyInstance(StatsService.class.getClassLoader(),
+                new Class<?>[]{StatsService.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getStats")) {
+                        return result;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        controller = new StatsController(service, new ObjectMapper().findAndRegisterModules());
+
+        LocalDateTime now = LocalDateTime.now();
+        start = URLEncoder.encode(now.minusDays(1).format(FORMATTER), StandardCharsets.UTF_8);
+        end = URLEncoder.encode(now.format(FORMATTER), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ResponseEntity<List<ViewStatsDto>> getStats(HitData data) {
+        return controller.getStats(start, end, data.uriList, false, "exact");
+    }
+}
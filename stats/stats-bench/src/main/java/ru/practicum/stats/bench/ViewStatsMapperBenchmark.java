@@ -0,0 +1,30 @@
+package ru.practicum.stats.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.mapper.ViewStatsMapper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Преобразование строк статистики из хранилища в DTO ответа /stats: одна операция — {@code uris} строк.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ViewStatsMapperBenchmark {
+
+    @Benchmark
+    public List<ViewStatsDto> toViewStatsDtos(HitData data) {
+        return ViewStatsMapper.toViewStatsDtos(data.projections);
+    }
+}
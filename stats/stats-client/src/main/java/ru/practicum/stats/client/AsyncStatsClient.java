@@ -0,0 +1,211 @@
+package ru.practicum.stats.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Клиент статистики с асинхронной отправкой хитов.
+ * <p>
+ * {@link #addHit(String, String)} только помещает хит с текущим временем в ограниченный буфер в памяти
+ * и сразу возвращает 202 (Accepted), поэтому время ответа вызывающего эндпоинта не зависит от сервера
+ * статистики. Фоновые отправители забирают хиты пачками до {@code batchSize} штук, ожидая набора пачки
+ * не дольше {@code flushIntervalMs}, и отправляют их через {@link StatsClient#addHits(List)} основного клиента.
+ * Если буфер заполнен, хит записывается в {@link HitSpool}, если он задан, иначе отбрасывается
+ * и возвращается 503 (Service Unavailable); пачка, которую не удалось отправить, не повторяется
+ * (повтор обеспечивает {@link SpoolingStatsClient} в качестве основного клиента). Отброшенные
+ * и неотправленные хиты считаются в метриках stats.client.hits.dropped и stats.client.hits.failed.
+ * <p>
+ * Хит учитывается в статистике с задержкой до {@code flushIntervalMs} и времени отправки.
+ * Остальные методы выполняются основным клиентом синхронно. При закрытии клиента буфер дописывается.
+ */
+@Slf4j
+public class AsyncStatsClient implements StatsClient, AutoCloseable {
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+
+    private final StatsClient delegate;
+    private final String applicationName;
+    private final BlockingQueue<EndpointHitDto> buffer;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final List<Thread> senders = new ArrayList<>();
+    private final Counter sentCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+    private final HitSpool overflow;
+    private volatile boolean running = true;
+
+    /**
+     * @param delegate        основной клиент, через который отправляются пачки и выполняются запросы статистики
+     * @param applicationName название сервиса в отправляемых хитах
+     * @param capacity        максимальное количество хитов в буфере
+     * @param sendersCount    количество фоновых отправителей
+     * @param batchSize       максимальное количество хитов в одной пачке
+     * @param flushIntervalMs максимальное время ожидания набора пачки
+     * @param overflow        спул для хитов, не поместившихся в буфер, или null
+     * @param meterRegistry   реестр метрик
+     */
+    public AsyncStatsClient(StatsClient delegate, String applicationName, int capacity, int sendersCount,
+                            int batchSize, long flushIntervalMs, @Nullable HitSpool overflow,
+                            MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.overflow = overflow;
+        this.applicationName = applicationName;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.sentCounter = meterRegistry.counter("stats.client.hits.sent");
+        this.droppedCounter = meterRegistry.counter("stats.client.hits.dropped");
+        this.failedCounter = meterRegistry.counter("stats.client.hits.failed");
+        Gauge.builder("stats.client.hits.buffer.size", buffer, BlockingQueue::size).register(meterRegistry);
+
+        for (int i = 0; i < sendersCount; i++) {
+            Thread sender = new Thread(this::sendLoop, "stats-hit-sender-" + i);
+            sender.setDaemon(true);
+            sender.start();
+            senders.add(sender);
+        }
+        log.info("Асинхронная отправка хитов: буфер {}, отправителей {}, пачка до {}", capacity, sendersCount,
+                batchSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Помещает хит в буфер отправки, не дожидаясь ответа сервера статистики.
+     *
+     * @return 202 (Accepted), если хит помещён в буфер или спул, или 503 (Service Unavailable), если буфер
+     * заполнен и хит отброшен
+     */
+    @Override
+    public ResponseEntity<Void> addHit(String uri, String ip) {
+        EndpointHitDto hit = EndpointHitDto.builder()
+                .app(applicationName)
+                .timestamp(LocalDateTime.now())
+                .uri(uri)
+                .ip(ip)
+                .build();
+
+        if (running && buffer.offer(hit)) {
+            return ResponseEntity.accepted().build();
+        }
+        if (running && overflow != null && overflow.append(List.of(hit))) {
+            return ResponseEntity.accepted().build();
+        }
+        droppedCounter.increment();
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
+    @Override
+    public ResponseEntity<HitBatchResultDto> addHits(List<EndpointHitDto> endpointHitDtos) {
+        return delegate.addHits(endpointHitDtos);
+    }
+
+    @Override
+    public ResponseEntity<Object> getStats(String start, String end, List<String> uris, Boolean unique) {
+        return delegate.getStats(start, end, uris, unique);
+    }
+
+    @Override
+    public List<ViewStatsDto> getViewStats(String start, String end, List<String> uris, Boolean unique) {
+        return delegate.getViewStats(start, end, uris, unique);
+    }
+
+    @Override
+    public Map<String, Long> getViewsByUri(String start, String end, List<String> uris, Boolean unique) {
+        return delegate.getViewsByUri(start, end, uris, unique);
+    }
+
+    /**
+     * Останавливает приём хитов, дожидается отправки буфера и закрывает основной клиент.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Thread sender : senders) {
+            try {
+                sender.join(SHUTDOWN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!buffer.isEmpty()) {
+            log.warn("При остановке не отправлено {} хитов", buffer.size());
+            failedCounter.increment(buffer.size());
+        }
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("Ошибка закрытия клиента статистики", e);
+            }
+        }
+    }
+
+    private void sendLoop() {
+        List<EndpointHitDto> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!batch.isEmpty()) {
+                send(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    // набирает пачку: ждёт первый хит, затем добирает до batchSize, но не дольше flushIntervalMs
+    private void collect(List<EndpointHitDto> batch) throws InterruptedException {
+        EndpointHitDto first = buffer.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (batch.size() < batchSize) {
+            buffer.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                return;
+            }
+            EndpointHitDto next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void send(List<EndpointHitDto> batch) {
+        try {
+            HitBatchResultDto result = delegate.addHits(List.copyOf(batch)).getBody();
+            int rejected = result != null ? result.getRejected() : 0;
+            sentCounter.increment(batch.size() - rejected);
+            // записи, отклонённые сервером при валидации, считаются неотправленными
+            failedCounter.increment(rejected);
+        } catch (RuntimeException e) {
+            failedCounter.increment(batch.size());
+            log.warn("Не удалось отправить {} хитов в сервис статистики: {}", batch.size(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package ru.practicum.stats.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.client.HttpClientErrorException;
+import ru.practicum.stats.dto.EndpointHitDto;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Локальная очередь хитов на диске на время недоступности сервера статистики.
+ * <p>
+ * Хиты дописываются строками NDJSON в файлы-сегменты {@code hits-<номер>.ndjson} каталога спула;
+ * сегмент закрывается, когда его размер превышает {@code segmentBytes}. Суммарный размер сегментов
+ * не превышает {@code maxBytes}: хиты сверх бюджета отбрасываются. Один фоновый поток отправляет
+ * хиты из самого старого сегмента пачками до {@code batchSize} через {@link StatsClient#addHits(List)}
+ * в порядке записи; при ошибке отправка той же пачки повторяется через {@code retryIntervalMs}.
+ * Хиты, которые сервер отклоняет ответом 4xx (кроме 429), не повторяются: они переносятся в файл
+ * dead-letter.ndjson каталога спула и считаются в метрике stats.client.spool.hits.dead-lettered.
+ * Позиция отправки сохраняется в файле replay.pos после каждой пачки, поэтому после перезапуска
+ * приложения отправка продолжается с неё. Доставка — не менее одного раза: пачка, отправленная перед
+ * остановкой, но не отмеченная в позиции, будет отправлена повторно.
+ * <p>
+ * Каталог спула должен принадлежать одному экземпляру приложения.
+ */
+@Slf4j
+public class HitSpool implements AutoCloseable {
+    private static final ObjectMapper MAPPER = JsonMapper.builder().findAndAddModules().build();
+    private static final String PREFIX = "hits-";
+    private static final String SUFFIX = ".ndjson";
+    private static final String POSITION = "replay.pos";
+    private static final String DEAD_LETTER = "dead-letter.ndjson";
+    private static final long SHUTDOWN_TIMEOUT_MS = 5_000;
+
+    private final Path dir;
+    private final long maxBytes;
+    private final long segmentBytes;
+    private final int batchSize;
+    private final long retryIntervalMs;
+    private final Counter spooledCounter;
+    private final Counter replayedCounter;
+    private final Counter droppedCounter;
+    private final Counter deadLetterCounter;
+
+    private final Object lock = new Object();
+    // сегменты от старого к новому; последний может быть открыт на запись
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextNumber;
+    private long totalBytes;
+    private long replayOffset;
+    private OutputStream out;
+    private volatile long pendingBytes;
+    private volatile boolean running = true;
+    private Thread replayer;
+
+    /**
+     * @param dir             каталог спула
+     * @param maxBytes        максимальный суммарный размер сегментов
+     * @param segmentBytes    размер, после которого сегмент закрывается
+     * @param batchSize       максимальное количество хитов в отправляемой пачке
+     * @param retryIntervalMs интервал повтора отправки после ошибки
+     * @param meterRegistry   реестр метрик
+     * @throws UncheckedIOException если каталог спула недоступен
+     */
+    public HitSpool(Path dir, long maxBytes, long segmentBytes, int batchSize, long retryIntervalMs,
+                    MeterRegistry meterRegistry) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+        this.batchSize = batchSize;
+        this.retryIntervalMs = retryIntervalMs;
+        this.spooledCounter = meterRegistry.counter("stats.client.spool.hits.spooled");
+        this.replayedCounter = meterRegistry.counter("stats.client.spool.hits.replayed");
+        this.droppedCounter = meterRegistry.counter("stats.client.spool.hits.dropped");
+        this.deadLetterCounter = meterRegistry.counter("stats.client.spool.hits.dead-lettered");
+        Gauge.builder("stats.client.spool.bytes", this, spool -> spool.pendingBytes).register(meterRegistry);
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть спул хитов " + dir, e);
+        }
+    }
+
+    /**
+     * Запускает отправку хитов из спула.
+     *
+     * @param target клиент, через который отправляются хиты; сам не должен писать в этот спул
+     */
+    public void start(StatsClient target) {
+        replayer = new Thread(() -> replayLoop(target), "stats-hit-spool-replay");
+        replayer.setDaemon(true);
+        replayer.start();
+    }
+
+    /**
+     * @return true, если в спуле нет неотправленных хитов
+     */
+    public boolean isEmpty() {
+        return pendingBytes == 0;
+    }
+
+    /**
+     * Дописывает хиты в спул.
+     *
+     * @param hits хиты
+     * @return false, если хиты отброшены: бюджет диска исчерпан или запись не удалась
+     */
+    public boolean append(List<EndpointHitDto> hits) {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        try {
+            for (EndpointHitDto hit : hits) {
+                MAPPER.writeValue(lines, hit);
+                lines.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] bytes = lines.toByteArray();
+
+        synchronized (lock) {
+            if (!running || totalBytes + bytes.length > maxBytes) {
+                droppedCounter.increment(hits.size());
+                return false;
+            }
+            try {
+                if (out == null || segments.getLast().size >= segmentBytes) {
+                    openSegment();
+                }
+                out.write(bytes);
+                out.flush();
+            } catch (IOException e) {
+                log.warn("Не удалось записать {} хитов в спул: {}", hits.size(), e.getMessage());
+                droppedCounter.increment(hits.size());
+                return false;
+            }
+            segments.getLast().size += bytes.length;
+            totalBytes += bytes.length;
+            pendingBytes = totalBytes - replayOffset;
+            lock.notifyAll();
+        }
+        spooledCounter.increment(hits.size());
+        return true;
+    }
+
+    /**
+     * Останавливает отправку и закрывает текущий сегмент. Неотправленные хиты остаются на диске.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        if (replayer != null) {
+            try {
+                replayer.join(SHUTDOWN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (lock) {
+            closeOutput();
+            if (pendingBytes > 0) {
+                log.warn("В спуле остались неотправленные хиты: {} байт в {}", pendingBytes, dir);
+            }
+        }
+    }
+
+    private void replayLoop(StatsClient target) {
+        while (running) {
+            Batch batch;
+            try {
+                batch = nextBatch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                log.warn("Не удалось прочитать спул хитов: {}", e.getMessage());
+                pause();
+                continue;
+            }
+            if (batch == null) {
+                return;
+            }
+            if (!batch.hits().isEmpty()) {
+                try {
+                    send(target, batch.hits());
+                } catch (RuntimeException e) {
+                    log.debug("Сервер статистики недоступен, отправка спула повторится: {}", e.getMessage());
+                    pause();
+                    continue;
+                }
+            }
+            try {
+                commit(batch);
+            } catch (IOException e) {
+                log.warn("Не удалось сохранить позицию спула хитов: {}", e.getMessage());
+            }
+        }
+    }
+
+    // отправляет пачку; если сервер отклонил её целиком (4xx, кроме 429), хиты отправляются по одному,
+    // и отклонённые хиты переносятся в dead-letter.ndjson, чтобы не блокировать отправку следующих
+    private void send(StatsClient target, List<EndpointHitDto> hits) {
+        try {
+            target.addHits(hits);
+            replayedCounter.increment(hits.size());
+            return;
+        } catch (HttpClientErrorException e) {
+            if (!isRejected(e)) {
+                throw e;
+            }
+            if (hits.size() == 1) {
+                deadLetter(hits.getFirst(), e);
+                return;
+            }
+            log.warn("Сервер статистики отклонил пачку спула из {} хитов ({}), хиты отправляются по одному",
+                    hits.size(), e.getStatusCode());
+        }
+        for (EndpointHitDto hit : hits) {
+            try {
+                target.addHits(List.of(hit));
+                replayedCounter.increment();
+            } catch (HttpClientErrorException e) {
+                if (!isRejected(e)) {
+                    throw e;
+                }
+                deadLetter(hit, e);
+            }
+        }
+    }
+
+    private static boolean isRejected(HttpClientErrorException e) {
+        return !(e instanceof HttpClientErrorException.TooManyRequests);
+    }
+
+    private void deadLetter(EndpointHitDto hit, HttpClientErrorException e) {
+        log.warn("Сервер статистики отклонил хит спула {} ({}), хит перенесён в {}", hit, e.getStatusCode(),
+                DEAD_LETTER);
+        deadLetterCounter.increment();
+        try {
+            byte[] line = (MAPPER.writeValueAsString(hit) + "\n").getBytes(StandardCharsets.UTF_8);
+            Files.write(dir.resolve(DEAD_LETTER), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException ex) {
+            log.warn("Не удалось записать хит в {}: {}", DEAD_LETTER, ex.getMessage());
+        }
+    }
+
+    // ждёт неотправленные хиты и читает пачку из самого старого сегмента; null — спул закрыт
+    private Batch nextBatch() throws InterruptedException, IOException {
+        Segment segment;
+        long from;
+        boolean sealed;
+        synchronized (lock) {
+            while (running && pendingBytes == 0) {
+                lock.wait();
+            }
+            if (!running) {
+                return null;
+            }
+            segment = segments.getFirst();
+            from = replayOffset;
+            sealed = segment != segments.getLast() || out == null;
+        }
+        // сегмент только дописывается, поэтому уже записанная часть читается без блокировки
+        long to = from;
+        List<EndpointHitDto> hits = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(segment.path))) {
+            in.skipNBytes(from);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while (hits.size() < batchSize && (b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                to += line.size() + 1;
+                parse(line.toString(StandardCharsets.UTF_8), segment, hits);
+                line.reset();
+            }
+            if (sealed && line.size() > 0 && hits.size() < batchSize) {
+                // строка без перевода строки в конце закрытого сегмента больше не будет дописана
+                to += line.size();
+                parse(line.toString(StandardCharsets.UTF_8), segment, hits);
+            }
+        }
+        return new Batch(segment, to, hits);
+    }
+
+    private void parse(String line, Segment segment, List<EndpointHitDto> hits) {
+        if (line.isBlank()) {
+            return;
+        }
+        try {
+            hits.add(MAPPER.readValue(line, EndpointHitDto.class));
+        } catch (IOException e) {
+            // недописанная строка после аварийной остановки
+            log.warn("Пропущена повреждённая запись спула {}: {}", segment.path.getFileName(), e.getMessage());
+        }
+    }
+
+    // сдвигает позицию отправки; полностью отправленный сегмент удаляется
+    private void commit(Batch batch) throws IOException {
+        synchronized (lock) {
+            replayOffset = batch.to();
+            Segment segment = batch.segment();
+            if (replayOffset >= segment.size) {
+                if (segment == segments.getLast()) {
+                    closeOutput();
+                }
+                segments.removeFirst();
+                totalBytes -= segment.size;
+                replayOffset = 0;
+                Files.deleteIfExists(segment.path);
+            }
+            pendingBytes = totalBytes - replayOffset;
+            Path position = dir.resolve(POSITION + ".tmp");
+            String current = segments.isEmpty() ? "" : segments.getFirst().path.getFileName() + " " + replayOffset;
+            Files.writeString(position, current);
+            Files.move(position, dir.resolve(POSITION), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    // восстанавливает сегменты и позицию отправки после перезапуска
+    private void recover() throws IOException {
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(path -> path.getFileName().toString().startsWith(PREFIX)
+                            && path.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .forEach(path -> segments.addLast(new Segment(path, size(path))));
+        }
+        for (Segment segment : segments) {
+            totalBytes += segment.size;
+            nextNumber = Math.max(nextNumber, number(segment.path) + 1);
+        }
+        Path position = dir.resolve(POSITION);
+        if (!segments.isEmpty() && Files.exists(position)) {
+            String[] saved = Files.readString(position).trim().split(" ");
+            if (saved.length == 2 && segments.getFirst().path.getFileName().toString().equals(saved[0])) {
+                replayOffset = Math.min(Long.parseLong(saved[1]), segments.getFirst().size);
+            }
+        }
+        pendingBytes = totalBytes - replayOffset;
+        if (pendingBytes > 0) {
+            log.info("В спуле хитов {} байт неотправленных хитов, отправка продолжится", pendingBytes);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        closeOutput();
+        Path path = dir.resolve(PREFIX + "%020d".formatted(nextNumber++) + SUFFIX);
+        out = Files.newOutputStream(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.APPEND);
+        segments.addLast(new Segment(path, 0));
+    }
+
+    private void closeOutput() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warn("Не удалось закрыть сегмент спула хитов: {}", e.getMessage());
+        }
+        out = null;
+    }
+
+    // ждёт retryIntervalMs; записи в спул ожидание не прерывают, закрытие спула — прерывает
+    private void pause() {
+        long deadline = System.currentTimeMillis() + retryIntervalMs;
+        synchronized (lock) {
+            long remaining;
+            while (running && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+        }
+    }
+
+    private static long size(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long number(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private long size;
+
+        private Segment(Path path, long size) {
+            this.path = path;
+            this.size = size;
+        }
+    }
+
+    private record Batch(Segment segment, long to, List<EndpointHitDto> hits) {
+    }
+}
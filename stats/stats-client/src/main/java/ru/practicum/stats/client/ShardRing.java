@@ -0,0 +1,57 @@
+package ru.practicum.stats.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Кольцо консистентного хеширования шардов.
+ * <p>
+ * Каждый шард занимает на кольце {@code virtualNodes} точек; ключ принадлежит шарду первой точки
+ * по часовой стрелке от хеша ключа. При добавлении или удалении шарда к другому шарду переходит
+ * только доля ключей, приходившаяся на изменившийся шард. Хеш не зависит от JVM,
+ * поэтому все экземпляры клиента распределяют ключи одинаково.
+ *
+ * @param <T> тип шарда
+ */
+final class ShardRing<T> {
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+
+    /**
+     * @param shards       шарды
+     * @param names        имена шардов в том же порядке; от них зависят точки шардов на кольце
+     * @param virtualNodes количество точек на кольце для каждого шарда
+     */
+    ShardRing(List<T> shards, List<String> names, int virtualNodes) {
+        if (shards.isEmpty() || shards.size() != names.size()) {
+            throw new IllegalArgumentException("Список шардов пуст или не совпадает со списком имён");
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                ring.put(hash(names.get(i) + "#" + node), shards.get(i));
+            }
+        }
+    }
+
+    /**
+     * @param key ключ
+     * @return шард, которому принадлежит ключ
+     */
+    T shardFor(String key) {
+        Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    // FNV-1a по байтам UTF-8 с перемешиванием SplitMix64 для равномерного распределения точек
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
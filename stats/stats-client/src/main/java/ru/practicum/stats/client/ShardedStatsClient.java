@@ -0,0 +1,197 @@
+package ru.practicum.stats.client;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.HitErrorDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Клиент шардированной службы статистики: несколько серверов статистики, у каждого своя БД.
+ * <p>
+ * Хит отправляется на шард, выбранный консистентным хешированием URI ({@link ShardRing}), поэтому
+ * все хиты одного URI хранятся на одном шарде, и каждый шард считает статистику своих URI полностью,
+ * в том числе уникальные посещения. Запрос статистики со списком URI отправляется только на шарды
+ * этих URI, без списка или с шаблонами URI ({@code /events/*}) — на все шарды. Запросы к шардам
+ * выполняются параллельно, результаты объединяются и сортируются по количеству просмотров.
+ * Если какой-либо шард недоступен, запрос завершается ошибкой.
+ * <p>
+ * Изменение списка шардов переносит часть URI на другие шарды. Просмотры таких URI за время до
+ * изменения остаются на старом шарде и при объединении складываются, но уникальные посещения
+ * одного IP, записанные на двух шардах, будут посчитаны дважды.
+ */
+@Slf4j
+public class ShardedStatsClient implements StatsClient, AutoCloseable {
+    private static final String WILDCARD = "*";
+
+    private final List<StatsClientImpl> shards;
+    private final ShardRing<StatsClientImpl> ring;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param shards       клиенты шардов
+     * @param names        адреса шардов в том же порядке
+     * @param virtualNodes количество точек на кольце хеширования для каждого шарда
+     */
+    public ShardedStatsClient(List<StatsClientImpl> shards, List<String> names, int virtualNodes) {
+        this.shards = List.copyOf(shards);
+        this.ring = new ShardRing<>(this.shards, names, virtualNodes);
+        log.info("Клиент статистики работает с шардами {}", names);
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        executor.shutdown();
+        shards.forEach(StatsClientImpl::close);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Отправляет хит на шард URI.
+     */
+    @Override
+    public ResponseEntity<Void> addHit(String uri, String ip) {
+        return ring.shardFor(uri).addHit(uri, ip);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Разбивает пакет по шардам URI и отправляет части параллельно. Индексы ошибок в отчёте
+     * соответствуют позициям записей в исходном пакете.
+     */
+    @Override
+    public ResponseEntity<HitBatchResultDto> addHits(List<EndpointHitDto> endpointHitDtos) {
+        Map<StatsClientImpl, List<Integer>> indexes = new LinkedHashMap<>();
+        for (int i = 0; i < endpointHitDtos.size(); i++) {
+            EndpointHitDto dto = endpointHitDtos.get(i);
+            // записи без URI отклонит любой шард, они отправляются туда же, куда пустой URI
+            String uri = dto != null && dto.getUri() != null ? dto.getUri() : "";
+            indexes.computeIfAbsent(ring.shardFor(uri), shard -> new ArrayList<>()).add(i);
+        }
+
+        Map<StatsClientImpl, HitBatchResultDto> results = scatter(indexes.keySet(), shard -> {
+            List<EndpointHitDto> part = indexes.get(shard).stream().map(endpointHitDtos::get).toList();
+            return shard.addHits(part).getBody();
+        });
+
+        HitBatchResultDto merged = new HitBatchResultDto(0, 0, new ArrayList<>());
+        results.forEach((shard, result) -> {
+            if (result == null) {
+                return;
+            }
+            merged.setAccepted(merged.getAccepted() + result.getAccepted());
+            merged.setRejected(merged.getRejected() + result.getRejected());
+            if (result.getErrors() != null) {
+                List<Integer> original = indexes.get(shard);
+                for (HitErrorDto error : result.getErrors()) {
+                    merged.getErrors().add(new HitErrorDto(original.get(error.getIndex()), error.getMessage()));
+                }
+            }
+        });
+        merged.getErrors().sort(Comparator.comparingInt(HitErrorDto::getIndex));
+        return ResponseEntity.status(HttpStatus.CREATED).body(merged);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Опрашивает шарды URI из запроса (или все шарды) и возвращает объединённый список {@link ViewStatsDto}.
+     */
+    @Override
+    public ResponseEntity<Object> getStats(String start, String end, List<String> uris, Boolean unique) {
+        return ResponseEntity.ok(getViewStats(start, end, uris, unique));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Опрашивает шарды URI из запроса (или все шарды) и объединяет их результаты.
+     */
+    @Override
+    public List<ViewStatsDto> getViewStats(String start, String end, List<String> uris, Boolean unique) {
+        Map<StatsClientImpl, List<String>> targets = targets(uris);
+        Map<StatsClientImpl, List<ViewStatsDto>> results = scatter(targets.keySet(),
+                shard -> shard.getViewStats(start, end, targets.get(shard), unique));
+        return merge(results.values());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Опрашивает шарды URI из запроса (или все шарды) и складывает просмотры по URI.
+     */
+    @Override
+    public Map<String, Long> getViewsByUri(String start, String end, List<String> uris, Boolean unique) {
+        Map<StatsClientImpl, List<String>> targets = targets(uris);
+        Map<StatsClientImpl, Map<String, Long>> results = scatter(targets.keySet(),
+                shard -> shard.getViewsByUri(start, end, targets.get(shard), unique));
+        Map<String, Long> hits = new HashMap<>();
+        results.values().forEach(part -> part.forEach((uri, count) -> hits.merge(uri, count, Long::sum)));
+        return hits;
+    }
+
+    // шарды, которые нужно опросить, и список URI для каждого
+    private Map<StatsClientImpl, List<String>> targets(List<String> uris) {
+        Map<StatsClientImpl, List<String>> targets = new LinkedHashMap<>();
+        if (uris == null || uris.isEmpty() || uris.stream().anyMatch(uri -> uri.contains(WILDCARD))) {
+            shards.forEach(shard -> targets.put(shard, uris));
+        } else {
+            for (String uri : uris) {
+                targets.computeIfAbsent(ring.shardFor(uri), shard -> new ArrayList<>()).add(uri);
+            }
+        }
+        return targets;
+    }
+
+    // строки одного URI с разных шардов бывают только после изменения списка шардов и складываются
+    private static List<ViewStatsDto> merge(Iterable<List<ViewStatsDto>> parts) {
+        Map<List<String>, ViewStatsDto> rows = new HashMap<>();
+        for (List<ViewStatsDto> part : parts) {
+            for (ViewStatsDto row : part) {
+                rows.merge(List.of(row.getApp(), row.getUri()), row, (a, b) ->
+                        new ViewStatsDto(a.getApp(), a.getUri(), a.getHits() + b.getHits()));
+            }
+        }
+        List<ViewStatsDto> result = new ArrayList<>(rows.values());
+        result.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+        return result;
+    }
+
+    // выполняет запросы к шардам параллельно; ошибка любого шарда пробрасывается вызывающему
+    private <T> Map<StatsClientImpl, T> scatter(Iterable<StatsClientImpl> targets,
+                                                Function<StatsClientImpl, T> request) {
+        Map<StatsClientImpl, CompletableFuture<T>> futures = new LinkedHashMap<>();
+        for (StatsClientImpl shard : targets) {
+            futures.put(shard, CompletableFuture.supplyAsync(() -> request.apply(shard), executor));
+        }
+
+        Map<StatsClientImpl, T> results = new LinkedHashMap<>();
+        try {
+            futures.forEach((shard, future) -> results.put(shard, future.join()));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+}
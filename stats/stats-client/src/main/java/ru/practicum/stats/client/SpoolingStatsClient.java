@@ -0,0 +1,129 @@
+package ru.practicum.stats.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Клиент статистики, сохраняющий хиты в {@link HitSpool}, пока сервер статистики недоступен.
+ * <p>
+ * Хит или пакет, который не удалось отправить из-за недоступности сервера (ошибка соединения,
+ * 5xx или 429), записывается в спул, и вызывающий получает 202 (Accepted). Пока в спуле есть
+ * неотправленные хиты, новые хиты тоже пишутся в спул, не обгоняя записанные ранее: спул отправляет
+ * их на сервер в порядке записи, когда сервер снова доступен. Хит, отклонённый сервером как
+ * некорректный, в спул не попадает. Если бюджет диска спула исчерпан, {@link #addHit} возвращает
+ * 503 (Service Unavailable), а {@link #addHits} пробрасывает ошибку отправки.
+ * <p>
+ * Запросы статистики выполняются основным клиентом.
+ */
+@Slf4j
+public class SpoolingStatsClient implements StatsClient, AutoCloseable {
+    private final StatsClient delegate;
+    private final String applicationName;
+    private final HitSpool spool;
+
+    /**
+     * @param delegate        основной клиент; через него же спул отправляет записанные хиты
+     * @param applicationName название сервиса в записываемых хитах
+     * @param spool           спул хитов, ещё не запущенный
+     */
+    public SpoolingStatsClient(StatsClient delegate, String applicationName, HitSpool spool) {
+        this.delegate = delegate;
+        this.applicationName = applicationName;
+        this.spool = spool;
+        spool.start(delegate);
+    }
+
+    @Override
+    public ResponseEntity<Void> addHit(String uri, String ip) {
+        EndpointHitDto hit = EndpointHitDto.builder()
+                .app(applicationName)
+                .timestamp(LocalDateTime.now())
+                .uri(uri)
+                .ip(ip)
+                .build();
+
+        if (spool.isEmpty()) {
+            try {
+                return delegate.addHit(uri, ip);
+            } catch (RestClientException e) {
+                if (!isUnavailable(e)) {
+                    throw e;
+                }
+                log.debug("Сервер статистики недоступен, хит записан в спул: {}", e.getMessage());
+            }
+        }
+        return spool.append(List.of(hit))
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
+    @Override
+    public ResponseEntity<HitBatchResultDto> addHits(List<EndpointHitDto> endpointHitDtos) {
+        RestClientException failure = null;
+        if (spool.isEmpty()) {
+            try {
+                return delegate.addHits(endpointHitDtos);
+            } catch (RestClientException e) {
+                if (!isUnavailable(e)) {
+                    throw e;
+                }
+                log.debug("Сервер статистики недоступен, {} хитов записаны в спул: {}", endpointHitDtos.size(),
+                        e.getMessage());
+                failure = e;
+            }
+        }
+        if (!spool.append(endpointHitDtos)) {
+            throw failure != null ? failure : new ResourceAccessException("Спул хитов заполнен");
+        }
+        // записи спула проверяются сервером при отправке, до неё все они считаются принятыми
+        return ResponseEntity.accepted().body(new HitBatchResultDto(endpointHitDtos.size(), 0, List.of()));
+    }
+
+    @Override
+    public ResponseEntity<Object> getStats(String start, String end, List<String> uris, Boolean unique) {
+        return delegate.getStats(start, end, uris, unique);
+    }
+
+    @Override
+    public List<ViewStatsDto> getViewStats(String start, String end, List<String> uris, Boolean unique) {
+        return delegate.getViewStats(start, end, uris, unique);
+    }
+
+    @Override
+    public Map<String, Long> getViewsByUri(String start, String end, List<String> uris, Boolean unique) {
+        return delegate.getViewsByUri(start, end, uris, unique);
+    }
+
+    /**
+     * Останавливает отправку спула и закрывает основной клиент. Неотправленные хиты остаются на диске
+     * и будут отправлены после следующего запуска.
+     */
+    @Override
+    public void close() {
+        spool.close();
+        if (delegate instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("Ошибка закрытия клиента статистики", e);
+            }
+        }
+    }
+
+    private static boolean isUnavailable(RestClientException e) {
+        return e instanceof ResourceAccessException || e instanceof HttpServerErrorException
+                || e instanceof HttpClientErrorException.TooManyRequests;
+    }
+}
@@ -4,8 +4,12 @@ import jakarta.annotation.Nullable;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import org.springframework.http.ResponseEntity;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.ViewStatsDto;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Клиент для взаимодействия со службой статистики.
@@ -25,6 +29,15 @@ public interface StatsClient {
      */
     ResponseEntity<Void> addHit(@NotBlank String uri, @NotBlank String ip);
 
+    /**
+     * Отправляет пакет запросов к эндпоинтам в службу статистики одним HTTP запросом.
+     *
+     * @param endpointHitDtos пакет данных о запросах к эндпоинтам
+     * @return отчёт о количестве сохранённых и отклонённых записей
+     * @throws org.springframework.web.client.RestClientException при ошибках HTTP запроса
+     */
+    ResponseEntity<HitBatchResultDto> addHits(@NotNull List<EndpointHitDto> endpointHitDtos);
+
     /**
      * Получает статистику по посещениям с заданными параметрами фильтрации.
      *
@@ -38,4 +51,33 @@ public interface StatsClient {
     ResponseEntity<Object> getStats(@NotNull String start, @NotNull String end,
                                     @Nullable List<String> uris,
                                     @Nullable Boolean unique);
-}
\ No newline at end of file
+
+    /**
+     * Получает статистику по посещениям в виде списка DTO, разбирая ответ сразу в {@link ViewStatsDto}.
+     *
+     * @param start  дата и время начала диапазона (включительно)
+     * @param end    дата и время конца диапазона (включительно)
+     * @param uris   список URI для фильтрации (может быть null или пустым)
+     * @param unique флаг учета только уникальных посещений по IP
+     * @return список статистики по посещениям, отсортированный по количеству просмотров по убыванию
+     * @throws org.springframework.web.client.RestClientException при ошибках HTTP запроса
+     */
+    List<ViewStatsDto> getViewStats(@NotNull String start, @NotNull String end,
+                                    @Nullable List<String> uris,
+                                    @Nullable Boolean unique);
+
+    /**
+     * Получает количество просмотров по URI без создания DTO для строк ответа.
+     * Просмотры одного URI из разных сервисов складываются.
+     *
+     * @param start  дата и время начала диапазона (включительно)
+     * @param end    дата и время конца диапазона (включительно)
+     * @param uris   список URI для фильтрации (может быть null или пустым)
+     * @param unique флаг учета только уникальных посещений по IP
+     * @return количество просмотров по URI; URI без просмотров в результате нет
+     * @throws org.springframework.web.client.RestClientException при ошибках HTTP запроса
+     */
+    Map<String, Long> getViewsByUri(@NotNull String start, @NotNull String end,
+                                    @Nullable List<String> uris,
+                                    @Nullable Boolean unique);
+}
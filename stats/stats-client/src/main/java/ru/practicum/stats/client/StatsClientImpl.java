@@ -1,35 +1,105 @@
 package ru.practicum.stats.client;
 
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
-import org.springframework.stereotype.Component;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
 import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.ViewStatsDto;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 
 /**
  * Реализация клиента для взаимодействия с сервисом статистики через REST API.
  * <p>
  * Использует {@link RestTemplate} для выполнения HTTP запросов к сервису статистики.
  * Обеспечивает сериализацию/десериализацию DTO и обработку параметров запросов.
+ * Создаётся в {@link ru.practicum.stats.config.ClientConfig} для одного сервера статистики,
+ * а в шардированном режиме — для каждого шарда {@link ShardedStatsClient}.
+ * <p>
+ * Если задано окно объединения, одновременные {@link #getViewStats} и {@link #getViewsByUri}
+ * с одинаковым диапазоном объединяются в один HTTP запрос ({@link StatsRequestCoalescer}).
+ * Запросы со списком URI, содержащим префиксы ({@code /events/*}), выполняются без объединения.
+ * <p>
+ * Список URI, который в закодированном виде длиннее {@code uriChunkLength} символов, разбивается
+ * на части не длиннее этого значения. Части запрашиваются параллельно, не более {@code parallelism}
+ * запросов одновременно, а результаты объединяются. Так длинный список не упирается
+ * в ограничение длины URL запроса на сервере.
+ * Списки с префиксами URI ({@code /events/*}) не разбиваются, так как префикс может пересекаться
+ * с другими URI списка.
  *
  * @see StatsClient
  * @see RestTemplate
  */
 @Slf4j
-@RequiredArgsConstructor
-@Component
-public class StatsClientImpl implements StatsClient {
+public class StatsClientImpl implements StatsClient, AutoCloseable {
+    private static final int DEFAULT_URI_CHUNK_LENGTH = 6000;
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final String WILDCARD = "*";
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final RequestCallback ACCEPT_JSON = request ->
+            request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON));
     private final RestTemplate rest;
-    @Value("${spring.application.name}")
-    private String applicationName;
+    private final String applicationName;
+    private final StatsRequestCoalescer<List<ViewStatsDto>> viewStatsCoalescer;
+    private final StatsRequestCoalescer<Map<String, Long>> viewsByUriCoalescer;
+    private final int uriChunkLength;
+    private final Semaphore chunkPermits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Клиент без объединения запросов статистики, с частями списка URI по умолчанию.
+     */
+    public StatsClientImpl(RestTemplate rest, String applicationName) {
+        this(rest, applicationName, null, DEFAULT_URI_CHUNK_LENGTH, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param rest             RestTemplate с адресом сервера статистики
+     * @param applicationName  название сервиса в отправляемых хитах
+     * @param coalescingWindow время сбора одновременных запросов статистики в один
+     *                         или null, если запросы не объединяются
+     * @param uriChunkLength   максимальная длина закодированного списка URI в одном запросе статистики
+     * @param parallelism      максимальное количество одновременных запросов частей списка URI
+     */
+    public StatsClientImpl(RestTemplate rest, String applicationName, @Nullable Duration coalescingWindow,
+                           int uriChunkLength, int parallelism) {
+        this.rest = rest;
+        this.applicationName = applicationName;
+        this.uriChunkLength = uriChunkLength;
+        this.chunkPermits = new Semaphore(parallelism);
+        if (coalescingWindow == null) {
+            this.viewStatsCoalescer = null;
+            this.viewsByUriCoalescer = null;
+        } else {
+            this.viewStatsCoalescer = new StatsRequestCoalescer<>(this::fetchViewStats,
+                    (rows, uris) -> rows.stream().filter(row -> uris.contains(row.getUri())).toList(),
+                    coalescingWindow);
+            this.viewsByUriCoalescer = new StatsRequestCoalescer<>(this::fetchViewsByUri,
+                    StatsClientImpl::selectUris, coalescingWindow);
+        }
+    }
 
     /**
      * {@inheritDoc}
@@ -56,6 +126,24 @@ public class StatsClientImpl implements StatsClient {
         return rest.exchange("/hit", HttpMethod.POST, request, Void.class);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Выполняет POST запрос к эндпоинту /hit/batch сервиса статистики.
+     *
+     * @param endpointHitDtos пакет данных о запросах к эндпоинтам
+     * @return отчёт о количестве сохранённых и отклонённых записей
+     * @throws org.springframework.web.client.RestClientException при ошибках HTTP запроса
+     */
+    @Override
+    public ResponseEntity<HitBatchResultDto> addHits(List<EndpointHitDto> endpointHitDtos) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<List<EndpointHitDto>> request = new HttpEntity<>(endpointHitDtos, headers);
+
+        return rest.exchange("/hit/batch", HttpMethod.POST, request, HitBatchResultDto.class);
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -71,7 +159,146 @@ public class StatsClientImpl implements StatsClient {
      */
     @Override
     public ResponseEntity<Object> getStats(String start, String end, List<String> uris, Boolean unique) {
+        if (chunks(uris).size() > 1) {
+            return ResponseEntity.ok(fetchViewStats(start, end, uris, unique));
+        }
+        return rest.exchange(statsUri(start, end, uris, unique), HttpMethod.GET, null, Object.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Тело ответа разбирается из потока общим {@link ViewStatsReader}.
+     */
+    @Override
+    public List<ViewStatsDto> getViewStats(String start, String end, List<String> uris, Boolean unique) {
+        if (viewStatsCoalescer != null && coalescible(uris)) {
+            return viewStatsCoalescer.get(start, end, uris, unique);
+        }
+        return fetchViewStats(start, end, uris, unique);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Тело ответа разбирается потоковым парсером {@link ViewStatsReader#readHitsByUri}.
+     */
+    @Override
+    public Map<String, Long> getViewsByUri(String start, String end, List<String> uris, Boolean unique) {
+        if (viewsByUriCoalescer != null && coalescible(uris)) {
+            return viewsByUriCoalescer.get(start, end, uris, unique);
+        }
+        return fetchViewsByUri(start, end, uris, unique);
+    }
+
+    /**
+     * Останавливает выполнение запросов частей списка URI.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private List<ViewStatsDto> fetchViewStats(String start, String end, List<String> uris, Boolean unique) {
+        List<List<String>> chunks = chunks(uris);
+        if (chunks.size() == 1) {
+            return fetchViewStatsChunk(start, end, uris, unique);
+        }
+        List<ViewStatsDto> rows = new ArrayList<>();
+        fanOut(chunks, chunk -> fetchViewStatsChunk(start, end, chunk, unique)).forEach(rows::addAll);
+        rows.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+        return rows;
+    }
+
+    private Map<String, Long> fetchViewsByUri(String start, String end, List<String> uris, Boolean unique) {
+        List<List<String>> chunks = chunks(uris);
+        if (chunks.size() == 1) {
+            return fetchViewsByUriChunk(start, end, uris, unique);
+        }
+        Map<String, Long> hits = new HashMap<>();
+        fanOut(chunks, chunk -> fetchViewsByUriChunk(start, end, chunk, unique)).forEach(hits::putAll);
+        return hits;
+    }
+
+    private List<ViewStatsDto> fetchViewStatsChunk(String start, String end, List<String> uris, Boolean unique) {
+        List<ViewStatsDto> rows = rest.execute(statsUri(start, end, uris, unique), HttpMethod.GET, ACCEPT_JSON,
+                response -> ViewStatsReader.readList(response.getBody()));
+        return rows != null ? rows : List.of();
+    }
+
+    private Map<String, Long> fetchViewsByUriChunk(String start, String end, List<String> uris, Boolean unique) {
+        Map<String, Long> hits = rest.execute(statsUri(start, end, uris, unique), HttpMethod.GET, ACCEPT_JSON,
+                response -> ViewStatsReader.readHitsByUri(response.getBody()));
+        return hits != null ? hits : Map.of();
+    }
+
+    // ответ объединённого запроса делится по точному совпадению URI, поэтому запросы с префиксами
+    // URI (/events/*), строки которых не совпадают с префиксом, не объединяются
+    private static boolean coalescible(List<String> uris) {
+        return uris != null && !uris.isEmpty() && uris.stream().noneMatch(uri -> uri.contains(WILDCARD));
+    }
+
+    // части списка URI; список без разбиения — одна часть
+    private List<List<String>> chunks(List<String> uris) {
+        if (uris == null || uris.stream().anyMatch(uri -> uri.contains(WILDCARD))) {
+            return Collections.singletonList(uris);
+        }
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        int length = 0;
+        // повтор URI в разных частях продублировал бы его строку в объединённом ответе
+        for (String uri : new LinkedHashSet<>(uris)) {
+            // URI в списке разделяются запятой
+            int uriLength = UriUtils.encodeQueryParam(uri, StandardCharsets.UTF_8).length() + 1;
+            if (!chunk.isEmpty() && length + uriLength > uriChunkLength) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                length = 0;
+            }
+            chunk.add(uri);
+            length += uriLength;
+        }
+        if (chunks.isEmpty()) {
+            return Collections.singletonList(uris);
+        }
+        chunks.add(chunk);
+        return chunks;
+    }
+
+    // запрашивает части параллельно; ошибка любой части пробрасывается вызывающему
+    private <T> List<T> fanOut(List<List<String>> chunks, Function<List<String>, T> request) {
+        List<CompletableFuture<T>> futures = chunks.stream()
+                .map(chunk -> CompletableFuture.supplyAsync(() -> {
+                    chunkPermits.acquireUninterruptibly();
+                    try {
+                        return request.apply(chunk);
+                    } finally {
+                        chunkPermits.release();
+                    }
+                }, executor))
+                .toList();
+        try {
+            return futures.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Map<String, Long> selectUris(Map<String, Long> hits, Set<String> uris) {
+        Map<String, Long> selected = new HashMap<>();
+        for (String uri : uris) {
+            Long count = hits.get(uri);
+            if (count != null) {
+                selected.put(uri, count);
+            }
+        }
+        return selected;
+    }
 
+    private String statsUri(String start, String end, List<String> uris, Boolean unique) {
         UriComponentsBuilder builder = UriComponentsBuilder.fromPath("/stats")
                 .queryParam("start", start)
                 .queryParam("end", end);
@@ -84,6 +311,6 @@ public class StatsClientImpl implements StatsClient {
             builder.queryParam("unique", unique);
         }
 
-        return rest.exchange(builder.toUriString(), HttpMethod.GET, null, Object.class);
+        return builder.toUriString();
     }
 }
@@ -0,0 +1,146 @@
+package ru.practicum.stats.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Объединение одновременных запросов /stats с одинаковыми start, end и unique в один HTTP запрос.
+ * <p>
+ * Первый вызов становится ведущим: он ждёт {@code window}, собирая URI вызовов, пришедших за это время,
+ * затем выполняет один запрос по объединению URI, и каждый участник получает из ответа свою часть.
+ * Вызов, все URI которого уже входят в выполняющийся запрос, дожидается его ответа без нового запроса.
+ * При нулевом окне объединяются только такие вызовы. Ошибку запроса получают все его участники.
+ *
+ * @param <R> тип ответа
+ */
+@Slf4j
+final class StatsRequestCoalescer<R> {
+    private final Loader<R> loader;
+    private final Splitter<R> splitter;
+    private final long windowNanos;
+    private final ConcurrentMap<Key, Batch<R>> gathering = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Key, Batch<R>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param loader   выполняет запрос по объединённому списку URI
+     * @param splitter выделяет из ответа часть, относящуюся к URI одного участника
+     * @param window   время сбора вызовов ведущим
+     */
+    StatsRequestCoalescer(Loader<R> loader, Splitter<R> splitter, Duration window) {
+        this.loader = loader;
+        this.splitter = splitter;
+        this.windowNanos = window.toNanos();
+    }
+
+    /**
+     * @param start  дата и время начала диапазона
+     * @param end    дата и время конца диапазона
+     * @param uris   непустой список URI без префиксов: ответ делится между участниками по точному совпадению URI
+     * @param unique флаг учета только уникальных посещений по IP
+     * @return ответ по запрошенным URI
+     */
+    R get(String start, String end, List<String> uris, Boolean unique) {
+        Key key = new Key(start, end, unique);
+        Batch<R> running = inFlight.get(key);
+        if (running != null && running.uris.containsAll(uris)) {
+            log.debug("Запрос статистики по {} URI присоединён к выполняющемуся", uris.size());
+            return running.await(uris, splitter);
+        }
+        while (true) {
+            Batch<R> batch = gathering.computeIfAbsent(key, k -> new Batch<>());
+            Boolean leader = batch.join(uris);
+            if (leader == null) {
+                // пачка уже закрыта ведущим, но ещё не удалена из ожидающих
+                gathering.remove(key, batch);
+                continue;
+            }
+            if (leader) {
+                lead(key, batch);
+            }
+            return batch.await(uris, splitter);
+        }
+    }
+
+    private void lead(Key key, Batch<R> batch) {
+        if (windowNanos > 0) {
+            LockSupport.parkNanos(windowNanos);
+        }
+        batch.close();
+        inFlight.put(key, batch);
+        gathering.remove(key, batch);
+        try {
+            if (batch.members > 1) {
+                log.debug("{} запросов статистики объединены в один по {} URI", batch.members, batch.uris.size());
+            }
+            batch.result.complete(loader.load(key.start(), key.end(), List.copyOf(batch.uris), key.unique()));
+        } catch (Throwable e) {
+            // участники получают ошибку через результат пачки, в том числе сам ведущий в await
+            batch.result.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, batch);
+        }
+    }
+
+    /**
+     * Запрос статистики по списку URI.
+     */
+    @FunctionalInterface
+    interface Loader<R> {
+        R load(String start, String end, List<String> uris, Boolean unique);
+    }
+
+    /**
+     * Выделение из ответа части, относящейся к заданным URI.
+     */
+    @FunctionalInterface
+    interface Splitter<R> {
+        R split(R response, Set<String> uris);
+    }
+
+    private record Key(String start, String end, Boolean unique) {
+    }
+
+    // вызовы, объединённые в один запрос; после закрытия список URI не меняется
+    private static final class Batch<R> {
+        private final Set<String> uris = new LinkedHashSet<>();
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        private int members;
+        private boolean closed;
+
+        // null — пачка закрыта, true — вызов стал ведущим
+        synchronized Boolean join(List<String> callerUris) {
+            if (closed) {
+                return null;
+            }
+            uris.addAll(callerUris);
+            return members++ == 0;
+        }
+
+        synchronized void close() {
+            closed = true;
+        }
+
+        R await(List<String> callerUris, Splitter<R> splitter) {
+            try {
+                return splitter.split(result.join(), Set.copyOf(callerUris));
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e;
+            }
+        }
+    }
+}
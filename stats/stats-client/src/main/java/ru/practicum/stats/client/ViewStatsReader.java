@@ -0,0 +1,78 @@
+package ru.practicum.stats.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import ru.practicum.stats.dto.ViewStatsDto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Разбор ответа /stats сервиса статистики прямо из потока тела ответа.
+ * <p>
+ * Используются общие потокобезопасные {@link ObjectReader} и {@link JsonFactory}, созданные один раз:
+ * ответ не разбирается в промежуточное дерево из {@link java.util.LinkedHashMap} и не конвертируется
+ * повторно. {@link #readHitsByUri(InputStream)} читает только поля uri и hits потоковым парсером,
+ * не создавая DTO.
+ */
+public final class ViewStatsReader {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader LIST_READER = MAPPER.readerFor(new TypeReference<List<ViewStatsDto>>() {
+    });
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+
+    private ViewStatsReader() {
+    }
+
+    /**
+     * @param body тело ответа /stats — JSON-массив {@link ViewStatsDto}
+     * @return строки статистики в порядке ответа
+     * @throws IOException если тело ответа не удалось прочитать или разобрать
+     */
+    public static List<ViewStatsDto> readList(InputStream body) throws IOException {
+        List<ViewStatsDto> rows = LIST_READER.readValue(body);
+        return rows != null ? rows : List.of();
+    }
+
+    /**
+     * Читает количество просмотров по URI. Просмотры одного URI из разных сервисов складываются.
+     *
+     * @param body тело ответа /stats — JSON-массив {@link ViewStatsDto}
+     * @return количество просмотров по URI
+     * @throws IOException если тело ответа не удалось прочитать или разобрать
+     */
+    public static Map<String, Long> readHitsByUri(InputStream body) throws IOException {
+        Map<String, Long> hits = new HashMap<>();
+        try (JsonParser parser = FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Ожидается JSON-массив статистики");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String uri = null;
+                long count = 0;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if ("uri".equals(field)) {
+                        uri = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    } else if ("hits".equals(field)) {
+                        count = value == JsonToken.VALUE_NULL ? 0 : parser.getLongValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (uri != null) {
+                    hits.merge(uri, count, Long::sum);
+                }
+            }
+        }
+        return hits;
+    }
+}
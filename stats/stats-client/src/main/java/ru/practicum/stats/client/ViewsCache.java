@@ -0,0 +1,128 @@
+package ru.practicum.stats.client;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Кэш количества просмотров по URI поверх {@link StatsClient}.
+ * <p>
+ * Просмотры считаются с начала диапазона, заданного вызывающим, до момента загрузки; начало диапазона
+ * входит в ключ кэша вместе с URI и признаком уникальности, поэтому результат совпадает с запросом
+ * {@link StatsClient#getViewsByUri} с тем же началом и концом в момент загрузки. Значение
+ * хранится не дольше {@code expireAfterWrite}, при превышении {@code maximumSize} записей
+ * вытесняются редко используемые. {@link #getViews(String, Collection, boolean)} запрашивает у сервера
+ * статистики одним запросом только отсутствующие в кэше URI; URI без просмотров кэшируются с нулём.
+ * <p>
+ * Метрики кэша публикуются под именем cache=stats.client.views (попадания и промахи, вытеснения,
+ * загрузки), время загрузки промахов — таймером stats.client.views.load.
+ * Если кэш выключен, каждый вызов выполняет запрос к серверу статистики с тем же диапазоном.
+ */
+@Slf4j
+public class ViewsCache {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String CACHE_NAME = "stats.client.views";
+
+    private final StatsClient statsClient;
+    private final LoadingCache<Key, Long> cache;
+    private final Timer loadTimer;
+
+    /**
+     * @param statsClient      клиент, через который загружаются промахи
+     * @param enabled          false — кэш не используется, каждый вызов идёт на сервер статистики
+     * @param expireAfterWrite максимальное время жизни значения
+     * @param maximumSize      максимальное количество записей (URI с началом диапазона и признаком уникальности)
+     * @param meterRegistry    реестр метрик
+     */
+    public ViewsCache(StatsClient statsClient, boolean enabled, Duration expireAfterWrite, long maximumSize,
+                      MeterRegistry meterRegistry) {
+        this.statsClient = statsClient;
+        this.loadTimer = meterRegistry.timer("stats.client.views.load");
+        if (!enabled) {
+            this.cache = null;
+            return;
+        }
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(expireAfterWrite)
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build(new ViewsLoader());
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        log.info("Кэш просмотров: до {} записей, время жизни {}", maximumSize, expireAfterWrite);
+    }
+
+    /**
+     * Возвращает количество просмотров с {@code start} до текущего момента.
+     *
+     * @param start  дата и время начала диапазона в формате yyyy-MM-dd HH:mm:ss
+     * @param uris   URI, для которых нужны просмотры
+     * @param unique флаг учета только уникальных посещений по IP
+     * @return количество просмотров по каждому из запрошенных URI, 0 — если просмотров нет
+     * @throws org.springframework.web.client.RestClientException при ошибках HTTP запроса
+     */
+    public Map<String, Long> getViews(String start, Collection<String> uris, boolean unique) {
+        if (uris.isEmpty()) {
+            return Map.of();
+        }
+        if (cache == null) {
+            return load(start, new LinkedHashSet<>(uris), unique);
+        }
+        List<Key> keys = uris.stream().map(uri -> new Key(uri, start, unique)).toList();
+        Map<String, Long> views = new HashMap<>();
+        cache.getAll(keys).forEach((key, count) -> views.put(key.uri(), count));
+        return views;
+    }
+
+    private Map<String, Long> load(String start, Set<String> uris, boolean unique) {
+        String end = LocalDateTime.now().format(FORMATTER);
+        Map<String, Long> found = loadTimer.record(() ->
+                statsClient.getViewsByUri(start, end, new ArrayList<>(uris), unique));
+        Map<String, Long> views = new HashMap<>();
+        for (String uri : uris) {
+            views.put(uri, found.getOrDefault(uri, 0L));
+        }
+        return views;
+    }
+
+    private record Key(String uri, String start, boolean unique) {
+    }
+
+    private record Range(String start, boolean unique) {
+    }
+
+    // загружает промахи одним запросом на каждое начало диапазона и значение признака уникальности
+    private final class ViewsLoader implements CacheLoader<Key, Long> {
+        @Override
+        public Long load(Key key) {
+            return ViewsCache.this.load(key.start(), Set.of(key.uri()), key.unique()).get(key.uri());
+        }
+
+        @Override
+        public Map<Key, Long> loadAll(Set<? extends Key> keys) {
+            Map<Range, Set<String>> byRange = new HashMap<>();
+            for (Key key : keys) {
+                byRange.computeIfAbsent(new Range(key.start(), key.unique()), r -> new LinkedHashSet<>())
+                        .add(key.uri());
+            }
+            Map<Key, Long> loaded = new HashMap<>();
+            byRange.forEach((range, uris) -> ViewsCache.this.load(range.start(), uris, range.unique())
+                    .forEach((uri, count) -> loaded.put(new Key(uri, range.start(), range.unique()), count)));
+            return loaded;
+        }
+    }
+}
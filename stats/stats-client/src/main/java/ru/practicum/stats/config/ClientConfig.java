@@ -1,25 +1,144 @@
 package ru.practicum.stats.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.DefaultUriBuilderFactory;
+import ru.practicum.stats.client.AsyncStatsClient;
+import ru.practicum.stats.client.HitSpool;
+import ru.practicum.stats.client.ShardedStatsClient;
+import ru.practicum.stats.client.SpoolingStatsClient;
+import ru.practicum.stats.client.StatsClient;
+import ru.practicum.stats.client.StatsClientImpl;
+import ru.practicum.stats.client.ViewsCache;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 
 /**
  * Конфигурационный класс для настройки REstTemplate
+ * <p>
+ * Если задан {@code stats-server.shards} — адреса серверов статистики через запятую, — клиентом
+ * становится {@link ShardedStatsClient}, иначе {@link StatsClientImpl} для {@code stats-server.url}.
+ * <p>
+ * Если включён {@code stats-server.async.enabled}, клиент оборачивается в {@link AsyncStatsClient}:
+ * хиты отправляются фоновыми потоками пачками, не задерживая ответ вызывающего эндпоинта.
+ * <p>
+ * Если включён {@code stats-server.spool.enabled}, клиент оборачивается в {@link SpoolingStatsClient}:
+ * хиты, которые не удалось отправить или которые не поместились в буфер асинхронной отправки,
+ * сохраняются в каталоге {@code stats-server.spool.dir} и отправляются, когда сервер статистики снова доступен.
+ * <p>
+ * Одновременные запросы статистики с одинаковым диапазоном объединяются в один HTTP запрос, если не выключен
+ * {@code stats-server.coalescing.enabled}; {@code stats-server.coalescing.window-ms} — время сбора запросов.
+ * Длинные списки URI запрашиваются частями не длиннее {@code stats-server.uri-chunk-length} символов,
+ * не более {@code stats-server.uri-chunk-parallelism} частей одновременно.
+ * <p>
+ * {@link ViewsCache} кэширует просмотры по URI, если включён {@code stats-server.views-cache.enabled}.
  */
 @Configuration
 public class ClientConfig {
-    @Value("${stats-server.url}")
+    private static final String SHARDED = "!'${stats-server.shards:}'.isBlank()";
+
+    @Value("${stats-server.url:}")
     private String serverUrl;
+    @Value("${spring.application.name}")
+    private String applicationName;
+    @Value("${stats-server.async.enabled:false}")
+    private boolean async;
+    @Value("${stats-server.async.buffer-capacity:10000}")
+    private int asyncCapacity;
+    @Value("${stats-server.async.senders:1}")
+    private int asyncSenders;
+    @Value("${stats-server.async.batch-size:500}")
+    private int asyncBatchSize;
+    @Value("${stats-server.async.flush-interval-ms:200}")
+    private long asyncFlushIntervalMs;
+    @Value("${stats-server.spool.enabled:false}")
+    private boolean spoolEnabled;
+    @Value("${stats-server.spool.dir:${java.io.tmpdir}/stats-hit-spool}")
+    private String spoolDir;
+    @Value("${stats-server.spool.max-bytes:104857600}")
+    private long spoolMaxBytes;
+    @Value("${stats-server.spool.segment-bytes:8388608}")
+    private long spoolSegmentBytes;
+    @Value("${stats-server.spool.replay-batch-size:500}")
+    private int spoolBatchSize;
+    @Value("${stats-server.spool.retry-interval-ms:5000}")
+    private long spoolRetryIntervalMs;
+    @Value("${stats-server.uri-chunk-length:6000}")
+    private int uriChunkLength;
+    @Value("${stats-server.uri-chunk-parallelism:4}")
+    private int uriChunkParallelism;
+    @Value("${stats-server.coalescing.enabled:true}")
+    private boolean coalescing;
+    @Value("${stats-server.coalescing.window-ms:0}")
+    private long coalescingWindowMs;
+
+    @Bean
+    public ViewsCache viewsCache(StatsClient statsClient, ObjectProvider<MeterRegistry> meterRegistry,
+                                 @Value("${stats-server.views-cache.enabled:false}") boolean enabled,
+                                 @Value("${stats-server.views-cache.expire-after-write-ms:5000}") long expireMs,
+                                 @Value("${stats-server.views-cache.maximum-size:10000}") long maximumSize) {
+        return new ViewsCache(statsClient, enabled, Duration.ofMillis(expireMs), maximumSize,
+                meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
 
     @Bean
     public RestTemplate restTemplate(RestTemplateBuilder builder) {
+        return restTemplate(builder, serverUrl);
+    }
+
+    @Bean
+    @ConditionalOnExpression("!(" + SHARDED + ")")
+    public StatsClient statsClient(RestTemplate restTemplate, ObjectProvider<MeterRegistry> meterRegistry) {
+        return decorate(statsClientImpl(restTemplate), meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnExpression(SHARDED)
+    public StatsClient shardedStatsClient(RestTemplateBuilder builder,
+                                          @Value("${stats-server.shards}") List<String> shardUrls,
+                                          @Value("${stats-server.shard-virtual-nodes:128}") int virtualNodes,
+                                          ObjectProvider<MeterRegistry> meterRegistry) {
+        List<String> urls = shardUrls.stream().map(String::trim).toList();
+        List<StatsClientImpl> shards = urls.stream()
+                .map(url -> statsClientImpl(restTemplate(builder, url)))
+                .toList();
+        return decorate(new ShardedStatsClient(shards, urls, virtualNodes), meterRegistry);
+    }
+
+    private StatsClientImpl statsClientImpl(RestTemplate restTemplate) {
+        Duration coalescingWindow = coalescing ? Duration.ofMillis(coalescingWindowMs) : null;
+        return new StatsClientImpl(restTemplate, applicationName, coalescingWindow, uriChunkLength,
+                uriChunkParallelism);
+    }
+
+    private StatsClient decorate(StatsClient client, ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry registry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+        HitSpool spool = null;
+        if (spoolEnabled) {
+            spool = new HitSpool(Path.of(spoolDir), spoolMaxBytes, spoolSegmentBytes, spoolBatchSize,
+                    spoolRetryIntervalMs, registry);
+            client = new SpoolingStatsClient(client, applicationName, spool);
+        }
+        if (!async) {
+            return client;
+        }
+        return new AsyncStatsClient(client, applicationName, asyncCapacity, asyncSenders, asyncBatchSize,
+                asyncFlushIntervalMs, spool, registry);
+    }
+
+    private static RestTemplate restTemplate(RestTemplateBuilder builder, String url) {
         return builder
-                .uriTemplateHandler(new DefaultUriBuilderFactory(serverUrl))
+                .uriTemplateHandler(new DefaultUriBuilderFactory(url))
                 .requestFactory(() -> new HttpComponentsClientHttpRequestFactory())
                 .build();
     }
@@ -3,6 +3,7 @@ package ru.practicum.stats.dto;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -30,16 +31,18 @@ public class EndpointHitDto {
 
     /**
      * Идентификатор сервиса, для которого записывается информация.
-     * Не должен быть пустым.
+     * Не должен быть пустым и длиннее 255 символов.
      */
     @NotBlank
+    @Size(max = 255)
     private String app;
 
     /**
      * URI, для которого был осуществлен запрос.
-     * Не должен быть пустым.
+     * Не должен быть пустым и длиннее 255 символов.
      */
     @NotBlank
+    @Size(max = 255)
     private String uri;
 
     /**
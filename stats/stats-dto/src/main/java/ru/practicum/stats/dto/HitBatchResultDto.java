@@ -0,0 +1,36 @@
+package ru.practicum.stats.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO с результатом пакетного сохранения запросов к эндпоинтам.
+ * <p>
+ * Содержит количество сохранённых и отклонённых записей,
+ * а также отчёт об ошибках по каждой отклонённой записи.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class HitBatchResultDto {
+
+    /**
+     * Количество записей, сохранённых в БД.
+     */
+    private int accepted;
+
+    /**
+     * Количество записей, не прошедших валидацию.
+     */
+    private int rejected;
+
+    /**
+     * Ошибки по отклонённым записям.
+     */
+    private List<HitErrorDto> errors;
+}
@@ -0,0 +1,27 @@
+package ru.practicum.stats.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO с описанием ошибки для одной записи из пакета запросов.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class HitErrorDto {
+
+    /**
+     * Порядковый номер записи в пакете (начиная с 0).
+     */
+    private int index;
+
+    /**
+     * Описание ошибки.
+     * Например: "uri: must not be blank".
+     */
+    private String message;
+}
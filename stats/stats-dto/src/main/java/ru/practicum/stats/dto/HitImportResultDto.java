@@ -0,0 +1,52 @@
+package ru.practicum.stats.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO с состоянием массового импорта хитов.
+ * <p>
+ * Счётчики накапливаются по всем запросам импорта с одним идентификатором:
+ * повторный запрос продолжает импорт с первой необработанной записи.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class HitImportResultDto {
+
+    /**
+     * Идентификатор импорта, заданный клиентом.
+     */
+    private String importId;
+
+    /**
+     * Количество обработанных записей файла (сохранённых и отклонённых), зафиксированных в БД.
+     */
+    private long processed;
+
+    /**
+     * Количество записей, сохранённых в БД.
+     */
+    private long stored;
+
+    /**
+     * Количество записей, не прошедших валидацию.
+     */
+    private long rejected;
+
+    /**
+     * true, если файл импортирован до конца.
+     */
+    private boolean completed;
+
+    /**
+     * Ошибки по отклонённым записям текущего запроса (не более первых 100).
+     * Номер записи считается от начала файла, начиная с 0.
+     */
+    private List<HitErrorDto> errors;
+}
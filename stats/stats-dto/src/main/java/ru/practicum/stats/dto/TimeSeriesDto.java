@@ -0,0 +1,37 @@
+package ru.practicum.stats.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO временного ряда просмотров для URI конкретного сервиса.
+ * <p>
+ * Бакеты без просмотров в ряд не включаются.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TimeSeriesDto {
+
+    /**
+     * Название сервиса.
+     * Например: "ewm-main-service".
+     */
+    private String app;
+
+    /**
+     * URI сервиса.
+     * Например: "/events/1".
+     */
+    private String uri;
+
+    /**
+     * Бакеты ряда в порядке возрастания времени.
+     */
+    private List<TimeSeriesPointDto> points;
+}
@@ -0,0 +1,31 @@
+package ru.practicum.stats.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO с количеством просмотров за один бакет временного ряда.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class TimeSeriesPointDto {
+
+    /**
+     * Начало бакета.
+     * Формат: "yyyy-MM-dd HH:mm:ss".
+     */
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime bucket;
+
+    /**
+     * Количество просмотров в бакете (всех или уникальных, в зависимости от параметров запроса).
+     */
+    private Long hits;
+}
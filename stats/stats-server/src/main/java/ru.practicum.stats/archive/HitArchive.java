@@ -0,0 +1,289 @@
+package ru.practicum.stats.archive;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.storage.TimeRange;
+import ru.practicum.stats.storage.ViewStatsProjection;
+import ru.practicum.stats.storage.ViewStatsRow;
+import ru.practicum.stats.storage.VisitorRow;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Архив старых хитов в сегментах на локальном диске ({@code stats.archive.dir}).
+ * <p>
+ * Хранит в памяти индекс сегментов — минимальное и максимальное время хитов каждого — и отвечает
+ * на запросы статистики по той части диапазона, хиты которой перенесены в архив {@link HitArchiver}.
+ * <p>
+ * Перенос удаляет хиты из БД и добавляет сегмент в индекс без общих блокировок с запросами:
+ * перед фиксацией транзакции переноса переносимый день помечается как публикуемый
+ * ({@link #beginPublish(TimeRange)}), а после фиксации сегмент добавляется в индекс и версия индекса
+ * увеличивается ({@link #publish(HitArchiveSegment)}). Чтение статистики из БД и архива
+ * ({@link #read(Supplier)}) ждёт окончания публикации и повторяется, если за время чтения версия изменилась,
+ * поэтому запрос не может посчитать хиты дважды или пропустить их во время переноса, а долгий запрос
+ * не задерживает перенос.
+ * <p>
+ * Сегменты загружаются при старте приложения по списку из таблицы hit_archive_segment: файлы,
+ * перенос которых не был зафиксирован в БД, удаляются.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HitArchive {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${stats.archive.enabled:false}")
+    private boolean enabled;
+    @Value("${stats.archive.dir:hit-archive}")
+    private Path dir;
+
+    private final List<HitArchiveSegment> segments = new CopyOnWriteArrayList<>();
+    // версия индекса и публикуемый день изменяются только под блокировкой монитора
+    private final Object monitor = new Object();
+    private volatile long version;
+    private volatile TimeRange publishing;
+
+    @PostConstruct
+    void init() {
+        if (enabled) {
+            Gauge.builder("stats.archive.segments", segments, List::size).register(meterRegistry);
+        }
+    }
+
+    /**
+     * @return true, если архив включён
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Выполняет чтение статистики так, чтобы его результат не захватил перенос хитов в архив частично:
+     * чтение начинается после публикации переносимого дня и повторяется, если за время чтения индекс изменился.
+     *
+     * @param action чтение статистики из БД и архива
+     * @param <T>    тип результата
+     * @return результат чтения
+     */
+    public <T> T read(Supplier<T> action) {
+        while (true) {
+            long before = awaitPublished();
+            T result = action.get();
+            if (publishing == null && version == before) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @param range интервал времени
+     * @return true, если часть интервала может быть в архиве или переносится в него
+     */
+    public boolean overlaps(TimeRange range) {
+        TimeRange day = publishing;
+        if (day != null && !day.getFrom().isAfter(range.getTo()) && range.getFrom().isBefore(day.getTo())) {
+            return true;
+        }
+        for (HitArchiveSegment segment : segments) {
+            if (segment.overlaps(range)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return начало дня, следующего за последним днём с хитами в архиве или переносимым в него,
+     * или пустой Optional, если архив пуст
+     */
+    public Optional<LocalDateTime> getCutoff() {
+        Optional<LocalDateTime> archived = segments.stream()
+                .map(segment -> segment.getMaxTime().toLocalDate().plusDays(1).atStartOfDay())
+                .max(Comparator.naturalOrder());
+        TimeRange day = publishing;
+        if (day == null) {
+            return archived;
+        }
+        return Optional.of(archived.filter(cutoff -> cutoff.isAfter(day.getTo())).orElse(day.getTo()));
+    }
+
+    /**
+     * Считает хиты из архива за интервал.
+     *
+     * @param range интервал времени
+     * @param uris  список URI для фильтрации (пустой — без фильтра)
+     * @return статистика, отсортированная по количеству просмотров по убыванию
+     */
+    public List<ViewStatsProjection> getStats(TimeRange range, List<String> uris) {
+        Set<String> uriFilter = new HashSet<>(uris);
+        Map<HitArchiveSegment.AppUri, Long> counts = new HashMap<>();
+        for (HitArchiveSegment segment : segments) {
+            if (segment.overlaps(range)) {
+                try {
+                    segment.count(range, uriFilter, counts);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Ошибка чтения сегмента архива " + segment.getName(), e);
+                }
+            }
+        }
+
+        List<ViewStatsProjection> result = new ArrayList<>(counts.size());
+        counts.forEach((key, hits) -> result.add(new ViewStatsRow(key.app(), key.uri(), hits)));
+        result.sort(Comparator.comparingLong(ViewStatsProjection::getHits).reversed());
+        return result;
+    }
+
+    /**
+     * Передаёт посетителей каждого URI из архива за интервал; один посетитель может быть передан несколько раз.
+     *
+     * @param range    интервал времени
+     * @param uris     список URI для фильтрации (пустой — без фильтра)
+     * @param consumer обработчик посетителей
+     */
+    public void forEachVisitor(TimeRange range, List<String> uris, Consumer<VisitorRow> consumer) {
+        Set<String> uriFilter = new HashSet<>(uris);
+        for (HitArchiveSegment segment : segments) {
+            if (segment.overlaps(range)) {
+                try {
+                    segment.forEachVisitor(range, uriFilter, consumer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Ошибка чтения сегмента архива " + segment.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return каталог сегментов
+     */
+    Path getDir() {
+        return dir;
+    }
+
+    /**
+     * Помечает день как публикуемый: до {@link #publish} или {@link #cancelPublish} чтения статистики ждут.
+     * Вызывается перед фиксацией транзакции, удаляющей хиты дня из БД.
+     *
+     * @param day интервал переносимого дня
+     */
+    void beginPublish(TimeRange day) {
+        synchronized (monitor) {
+            publishing = day;
+        }
+    }
+
+    /**
+     * Добавляет в индекс сегмент, перенос которого зафиксирован в БД, и завершает публикацию.
+     *
+     * @param segment сегмент; null, если за день не было хитов
+     */
+    void publish(HitArchiveSegment segment) {
+        synchronized (monitor) {
+            if (segment != null) {
+                segments.add(segment);
+            }
+            finishPublish();
+        }
+    }
+
+    /**
+     * Завершает публикацию, транзакция которой не зафиксирована.
+     */
+    void cancelPublish() {
+        synchronized (monitor) {
+            if (publishing != null) {
+                finishPublish();
+            }
+        }
+    }
+
+    /**
+     * Загружает сегменты из каталога и удаляет файлы, не записанные в БД.
+     *
+     * @param committed имена сегментов из таблицы hit_archive_segment
+     * @throws IOException при ошибке чтения каталога
+     */
+    void load(Collection<String> committed) throws IOException {
+        Files.createDirectories(dir);
+        Set<String> missing = new HashSet<>(committed);
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (committed.contains(name)) {
+                    segments.add(HitArchiveSegment.open(file));
+                    missing.remove(name);
+                } else if (name.endsWith(HitArchiveSegment.FILE_SUFFIX) || name.endsWith(".tmp")) {
+                    Files.delete(file);
+                    log.warn("Удалён сегмент архива {}, перенос которого не был завершён", name);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            log.error("Не найдены файлы сегментов архива {}: эти хиты не попадут в статистику", missing);
+        }
+        log.info("Загружено сегментов архива: {}", segments.size());
+    }
+
+    /**
+     * Удаляет из индекса и с диска сегменты.
+     *
+     * @param names имена сегментов
+     */
+    void remove(Collection<String> names) {
+        synchronized (monitor) {
+            segments.removeIf(segment -> names.contains(segment.getName()));
+            version++;
+        }
+        for (String name : names) {
+            try {
+                Files.deleteIfExists(dir.resolve(name));
+            } catch (IOException e) {
+                log.warn("Не удалось удалить сегмент архива {}: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    // вызывается под блокировкой монитора
+    private void finishPublish() {
+        publishing = null;
+        version++;
+        monitor.notifyAll();
+    }
+
+    // ждёт окончания публикации и возвращает версию индекса
+    private long awaitPublished() {
+        synchronized (monitor) {
+            while (publishing != null) {
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Чтение статистики прервано во время публикации архива", e);
+                }
+            }
+            return version;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package ru.practicum.stats.archive;
+
+import ru.practicum.stats.storage.TimeRange;
+import ru.practicum.stats.storage.VisitorRow;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Сегмент архива: хиты одного дня в сжатом колоночном файле.
+ * <p>
+ * Хиты в сегменте отсортированы по сервису, URI и времени и разбиты на группы — подряд идущие хиты
+ * одной пары (сервис, URI). Файл состоит из несжатого заголовка (минимальное и максимальное время хита,
+ * количество хитов) и трёх секций, сжатых Deflate:
+ * - словари сервисов и URI и таблица групп с количеством хитов в каждой;
+ * - колонка времени: по группам, первое значение в микросекундах, далее разности с предыдущим;
+ * - словарь IP-адресов и колонка индексов в нём.
+ * Числа в колонках записаны в формате varint. Запрос, покрывающий сегмент целиком, читает только
+ * таблицу групп; запрос по части дня читает колонку времени, запрос уникальных посещений — ещё и колонку IP.
+ */
+class HitArchiveSegment {
+    static final String FILE_SUFFIX = ".seg";
+
+    private static final int MAGIC = 0x48534547;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + 3 * Long.BYTES;
+
+    private final Path path;
+    private final long minMicros;
+    private final long maxMicros;
+    private final long hits;
+    private volatile Groups groups;
+
+    private HitArchiveSegment(Path path, long minMicros, long maxMicros, long hits) {
+        this.path = path;
+        this.minMicros = minMicros;
+        this.maxMicros = maxMicros;
+        this.hits = hits;
+    }
+
+    /**
+     * Открывает сегмент, читая только заголовок.
+     *
+     * @param path файл сегмента
+     * @return сегмент
+     * @throws IOException при ошибке чтения или неизвестном формате файла
+     */
+    static HitArchiveSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Неизвестный формат сегмента архива " + path);
+            }
+            return new HitArchiveSegment(path, header.getLong(), header.getLong(), header.getLong());
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    String getName() {
+        return path.getFileName().toString();
+    }
+
+    LocalDateTime getMinTime() {
+        return fromMicros(minMicros);
+    }
+
+    LocalDateTime getMaxTime() {
+        return fromMicros(maxMicros);
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    /**
+     * @param range интервал времени
+     * @return true, если в сегменте могут быть хиты из интервала
+     */
+    boolean overlaps(TimeRange range) {
+        return firstMicros(range) <= maxMicros && lastMicros(range) >= minMicros;
+    }
+
+    /**
+     * Добавляет к счётчикам количество хитов из интервала.
+     *
+     * @param range  интервал времени
+     * @param uris   URI для фильтрации (пустой — без фильтра)
+     * @param counts счётчики по паре (сервис, URI)
+     * @throws IOException при ошибке чтения файла
+     */
+    void count(TimeRange range, Set<String> uris, Map<AppUri, Long> counts) throws IOException {
+        Groups groups = groups();
+        long from = firstMicros(range);
+        long to = lastMicros(range);
+        if (from <= minMicros && maxMicros <= to) {
+            for (int g = 0; g < groups.size(); g++) {
+                if (groups.matches(g, uris)) {
+                    counts.merge(groups.key(g), groups.hits[g], Long::sum);
+                }
+            }
+            return;
+        }
+
+        try (DataInputStream times = section(groups.timesOffset)) {
+            for (int g = 0; g < groups.size(); g++) {
+                boolean matches = groups.matches(g, uris);
+                long count = 0;
+                long time = 0;
+                for (long i = 0; i < groups.hits[g]; i++) {
+                    time = i == 0 ? readVarLong(times) : time + readVarLong(times);
+                    if (matches && time >= from && time <= to) {
+                        count++;
+                    }
+                }
+                if (count > 0) {
+                    counts.merge(groups.key(g), count, Long::sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * Передаёт посетителей каждого URI за интервал; один IP может быть передан несколько раз.
+     *
+     * @param range    интервал времени
+     * @param uris     URI для фильтрации (пустой — без фильтра)
+     * @param consumer обработчик посетителей
+     * @throws IOException при ошибке чтения файла
+     */
+    void forEachVisitor(TimeRange range, Set<String> uris, Consumer<VisitorRow> consumer) throws IOException {
+        Groups groups = groups();
+        long from = firstMicros(range);
+        long to = lastMicros(range);
+        try (DataInputStream times = section(groups.timesOffset);
+             DataInputStream ips = section(groups.ipsOffset)) {
+            String[] ipDictionary = new String[readVarInt(ips)];
+            for (int i = 0; i < ipDictionary.length; i++) {
+                ipDictionary[i] = readString(ips);
+            }
+            for (int g = 0; g < groups.size(); g++) {
+                boolean matches = groups.matches(g, uris);
+                long time = 0;
+                for (long i = 0; i < groups.hits[g]; i++) {
+                    time = i == 0 ? readVarLong(times) : time + readVarLong(times);
+                    int ip = readVarInt(ips);
+                    if (matches && time >= from && time <= to) {
+                        consumer.accept(new VisitorRow(groups.apps[groups.app[g]], groups.uris[groups.uri[g]],
+                                ipDictionary[ip]));
+                    }
+                }
+            }
+        }
+    }
+
+    // первая и последняя микросекунда интервала: хиты в БД хранятся с точностью до микросекунды
+    private static long firstMicros(TimeRange range) {
+        return toMicros(range.getFrom());
+    }
+
+    private static long lastMicros(TimeRange range) {
+        return range.isToInclusive() ? toMicros(range.getTo()) : toMicros(range.getTo()) - 1;
+    }
+
+    static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    // таблица групп читается при первом обращении и остаётся в памяти
+    private Groups groups() throws IOException {
+        Groups result = groups;
+        if (result == null) {
+            result = readGroups();
+            groups = result;
+        }
+        return result;
+    }
+
+    private Groups readGroups() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int groupsLength = sectionLength(channel, HEADER_SIZE);
+            long timesOffset = HEADER_SIZE + Integer.BYTES + groupsLength;
+            long ipsOffset = timesOffset + Integer.BYTES + sectionLength(channel, timesOffset);
+
+            try (DataInputStream in = section(HEADER_SIZE)) {
+                String[] apps = readStrings(in);
+                String[] uris = readStrings(in);
+                int size = readVarInt(in);
+                Groups result = new Groups(apps, uris, new int[size], new int[size], new long[size], timesOffset,
+                        ipsOffset);
+                for (int g = 0; g < size; g++) {
+                    result.app[g] = readVarInt(in);
+                    result.uri[g] = readVarInt(in);
+                    result.hits[g] = readVarLong(in);
+                }
+                return result;
+            }
+        }
+    }
+
+    private DataInputStream section(long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer data = ByteBuffer.allocate(sectionLength(channel, offset));
+            readFully(channel, data, offset + Integer.BYTES);
+            return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data.array())));
+        }
+    }
+
+    private static int sectionLength(FileChannel channel, long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(channel, length, offset);
+        return length.getInt();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Сегмент архива обрезан");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] values = new String[readVarInt(in)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(in);
+        }
+        return values;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] value = new byte[readVarInt(in)];
+        in.readFully(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        return Math.toIntExact(readVarLong(in));
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Таблица групп сегмента.
+     */
+    private record Groups(String[] apps, String[] uris, int[] app, int[] uri, long[] hits, long timesOffset,
+                          long ipsOffset) {
+
+        int size() {
+            return hits.length;
+        }
+
+        boolean matches(int group, Set<String> filter) {
+            return filter.isEmpty() || filter.contains(uris[uri[group]]);
+        }
+
+        AppUri key(int group) {
+            return new AppUri(apps[app[group]], uris[uri[group]]);
+        }
+    }
+
+    /**
+     * Построитель сегмента. Хиты должны добавляться в порядке сервиса, URI и времени.
+     */
+    static class Writer {
+        private final Map<String, Integer> apps = new LinkedHashMap<>();
+        private final Map<String, Integer> uris = new LinkedHashMap<>();
+        private final Map<String, Integer> ips = new LinkedHashMap<>();
+        private final List<long[]> groups = new ArrayList<>();
+        private final ByteArrayOutputStream times = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream ipColumn = new ByteArrayOutputStream();
+        private long[] group;
+        private long previousTime;
+        private long minMicros = Long.MAX_VALUE;
+        private long maxMicros = Long.MIN_VALUE;
+        private long hits;
+
+        /**
+         * Добавляет хит.
+         *
+         * @param app  сервис
+         * @param uri  URI
+         * @param ip   IP-адрес
+         * @param time время хита
+         */
+        void add(String app, String uri, String ip, LocalDateTime time) {
+            int appIndex = apps.computeIfAbsent(app, a -> apps.size());
+            int uriIndex = uris.computeIfAbsent(uri, u -> uris.size());
+            long micros = toMicros(time);
+            try {
+                if (group == null || group[0] != appIndex || group[1] != uriIndex) {
+                    group = new long[]{appIndex, uriIndex, 0};
+                    groups.add(group);
+                    writeVarLong(times, micros);
+                } else {
+                    writeVarLong(times, micros - previousTime);
+                }
+                writeVarLong(ipColumn, ips.computeIfAbsent(ip, i -> ips.size()));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            group[2]++;
+            previousTime = micros;
+            minMicros = Math.min(minMicros, micros);
+            maxMicros = Math.max(maxMicros, micros);
+            hits++;
+        }
+
+        long getHits() {
+            return hits;
+        }
+
+        /**
+         * Записывает сегмент во временный файл, сбрасывает его на диск и переименовывает в итоговый.
+         *
+         * @param target итоговый файл сегмента
+         * @return открытый сегмент
+         * @throws IOException при ошибке записи
+         */
+        HitArchiveSegment write(Path target) throws IOException {
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel)));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(minMicros);
+                out.writeLong(maxMicros);
+                out.writeLong(hits);
+                writeSection(out, groupsSection());
+                writeSection(out, times.toByteArray());
+                writeSection(out, ipsSection());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            return new HitArchiveSegment(target, minMicros, maxMicros, hits);
+        }
+
+        private byte[] groupsSection() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeStrings(out, apps.keySet());
+            writeStrings(out, uris.keySet());
+            writeVarLong(out, groups.size());
+            for (long[] g : groups) {
+                writeVarLong(out, g[0]);
+                writeVarLong(out, g[1]);
+                writeVarLong(out, g[2]);
+            }
+            return bytes.toByteArray();
+        }
+
+        private byte[] ipsSection() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeStrings(out, ips.keySet());
+            ipColumn.writeTo(out);
+            return bytes.toByteArray();
+        }
+
+        private static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+            writeVarLong(out, values.size());
+            for (String value : values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarLong(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        private static void writeSection(DataOutputStream out, byte[] data) throws IOException {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+                deflater.write(data);
+            }
+            out.writeInt(compressed.size());
+            compressed.writeTo(out);
+        }
+    }
+
+    /**
+     * Пара (сервис, URI).
+     */
+    record AppUri(String app, String uri) {
+    }
+}
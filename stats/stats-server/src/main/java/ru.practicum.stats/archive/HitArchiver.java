@@ -0,0 +1,191 @@
+package ru.practicum.stats.archive;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.storage.HitArchiveRepository;
+import ru.practicum.stats.storage.HitBitmapRepository;
+import ru.practicum.stats.storage.HitPartitionRepository;
+import ru.practicum.stats.storage.HitRollupRepository;
+import ru.practicum.stats.storage.HitSketchRepository;
+import ru.practicum.stats.storage.TimeRange;
+import ru.practicum.stats.topk.HeavyHitters;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Перенос старых хитов из БД в архив {@link HitArchive}.
+ * <p>
+ * При старте и затем по расписанию {@code stats.archive.cron} каждая дневная секция таблицы hit
+ * старше {@code stats.archive.after-days} дней переносится в сегмент архива одной транзакцией:
+ * секция блокируется от записи, хиты читаются в порядке сервиса, URI и времени и записываются в файл,
+ * после чего секция удаляется вместе с агрегатами, скетчами и битовыми картами за тот же день, а сегмент регистрируется
+ * в таблице hit_archive_segment. Если транзакция не зафиксирована, файл сегмента удаляется.
+ * Блокировка таблицы hit для удаления секции ожидается не дольше {@code stats.partition.lock-timeout-ms},
+ * иначе перенос откладывается до следующего запуска. Сегмент добавляется в индекс архива после фиксации
+ * (см. {@link HitArchive#publish}), без блокировок, общих с запросами статистики.
+ * <p>
+ * После переноса запросы /stats по этим дням отвечает архив. Остальные эндпоинты статистики
+ * (/stats/stream, /stats/top, /stats/timeseries) читают только БД, поэтому диапазоны, затрагивающие
+ * перенесённые дни, они отклоняют с ответом 400 и границей архива в сообщении
+ * (см. {@link ru.practicum.stats.service.StatsService#requireLiveRange}), а не возвращают неполный результат.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HitArchiver {
+    private final HitArchive hitArchive;
+    private final HitArchiveRepository archiveRepository;
+    private final HitPartitionRepository partitionRepository;
+    private final HitRollupRepository rollupRepository;
+    private final HitSketchRepository sketchRepository;
+    private final HitBitmapRepository bitmapRepository;
+    private final HeavyHitters heavyHitters;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${stats.archive.after-days:30}")
+    private int afterDays;
+    @Value("${stats.partition.lock-timeout-ms:5000}")
+    private long lockTimeoutMs;
+
+    private boolean loaded;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        archive();
+    }
+
+    @Scheduled(cron = "${stats.archive.cron:0 30 * * * *}")
+    public synchronized void archive() {
+        if (!hitArchive.isEnabled()) {
+            return;
+        }
+        try {
+            if (!loaded) {
+                hitArchive.load(archiveRepository.findSegmentNames());
+                loaded = true;
+            }
+            LocalDate cutoff = LocalDate.now().minusDays(afterDays);
+            for (LocalDate day : new TreeSet<>(partitionRepository.findPartitionDays())) {
+                if (day.isBefore(cutoff)) {
+                    archiveDay(day);
+                }
+            }
+        } catch (PessimisticLockingFailureException e) {
+            log.warn("Перенос хитов в архив отложен до следующего запуска: таблица hit занята дольше {} мс",
+                    lockTimeoutMs);
+        } catch (IOException | RuntimeException e) {
+            log.error("Ошибка переноса хитов в архив", e);
+        }
+    }
+
+    /**
+     * Удаляет сегменты архива с хитами только раньше границы хранения. Вызывается в транзакции
+     * применения срока хранения; файлы удаляются после её фиксации.
+     *
+     * @param cutoff граница хранения
+     */
+    public void deleteBefore(LocalDateTime cutoff) {
+        if (!hitArchive.isEnabled()) {
+            return;
+        }
+        List<String> names = archiveRepository.deleteSegmentsBefore(cutoff);
+        if (names.isEmpty()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                hitArchive.remove(names);
+                log.info("Удалены сегменты архива старше {}: {}", cutoff, names);
+            }
+        });
+    }
+
+    private void archiveDay(LocalDate day) {
+        LocalDateTime from = day.atStartOfDay();
+        LocalDateTime to = day.plusDays(1).atStartOfDay();
+        Path file = hitArchive.getDir().resolve("hits-" + day + "-" + System.currentTimeMillis() +
+                HitArchiveSegment.FILE_SUFFIX);
+        HitArchiveSegment segment;
+        try {
+            segment = new TransactionTemplate(transactionManager).execute(status -> {
+                partitionRepository.lockMaintenance();
+                archiveRepository.lockPartition(day);
+                HitArchiveSegment.Writer writer = new HitArchiveSegment.Writer();
+                archiveRepository.forEachHit(day, row -> writer.add(row.app(), row.uri(), row.ip(), row.timestamp()));
+
+                HitArchiveSegment written = null;
+                if (writer.getHits() > 0) {
+                    written = write(writer, file);
+                    archiveRepository.saveSegment(written.getName(), written.getMinTime(), written.getMaxTime(),
+                            written.getHits());
+                }
+                partitionRepository.setLockTimeout(lockTimeoutMs);
+                partitionRepository.dropPartition(day);
+                rollupRepository.deleteRange(from, to);
+                sketchRepository.deleteRange(from, to);
+                bitmapRepository.deleteRange(from, to);
+                registerPublication(new TimeRange(from, to, false), written);
+                return written;
+            });
+        } catch (RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+        heavyHitters.evictBefore(to);
+        log.info("Хиты за {} перенесены в архив: {}", day, segment != null ? segment.getHits() : 0);
+    }
+
+    // публикация сегмента в индексе архива: запросы статистики ждут её от фиксации транзакции до добавления
+    // сегмента, поэтому не видят день ни в БД, ни в архиве только в этом коротком окне и повторяют чтение
+    private void registerPublication(TimeRange range, HitArchiveSegment segment) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                hitArchive.beginPublish(range);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    hitArchive.publish(segment);
+                } else {
+                    hitArchive.cancelPublish();
+                }
+            }
+        });
+    }
+
+    private static HitArchiveSegment write(HitArchiveSegment.Writer writer, Path file) {
+        try {
+            return writer.write(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать сегмент архива " + file, e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить незавершённый сегмент архива {}: {}", file, e.getMessage());
+        }
+    }
+}
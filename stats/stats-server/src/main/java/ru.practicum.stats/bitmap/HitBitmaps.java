@@ -0,0 +1,130 @@
+package ru.practicum.stats.bitmap;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.storage.HitBitmapRepository;
+import ru.practicum.stats.storage.RollupPlan;
+import ru.practicum.stats.storage.ViewStatsProjection;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Точный подсчёт уникальных посещений по дневным битовым картам Roaring с id IP.
+ * <p>
+ * Включается настройкой {@code stats.bitmap.enabled}. Карты обновляются при каждой записи хитов
+ * через {@link ru.practicum.stats.ingestion.HitWriter}; запрос уникальной статистики читает целые дни
+ * из карт, а края диапазона — из таблицы hit, поэтому результат совпадает с COUNT(DISTINCT ip).
+ * <p>
+ * Хиты, сохранённые до включения карт, добавляются в них фоновым потоком по одному дню, от последних
+ * дней к первым. Граница полноты карт хранится в БД, так что прерванное заполнение продолжается
+ * после перезапуска, а дни до границы до тех пор читаются из таблицы hit.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HitBitmaps {
+    private final HitBitmapRepository repository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${stats.bitmap.enabled:true}")
+    private boolean enabled;
+
+    @PostConstruct
+    void initCoverage() {
+        if (enabled) {
+            repository.initCoverage(LocalDate.now());
+        } else {
+            repository.resetCoverage();
+        }
+    }
+
+    /**
+     * @return true, если уникальные посещения считаются по битовым картам
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Добавляет хиты в битовые карты. Должен вызываться в транзакции записи хитов.
+     *
+     * @param hits хиты с проставленными id сервиса, URI и IP
+     */
+    public void addHits(List<Hit> hits) {
+        if (enabled) {
+            repository.addHits(hits);
+        }
+    }
+
+    /**
+     * Точная статистика уникальных посещений за диапазон [start, end].
+     *
+     * @param start начало диапазона
+     * @param end   конец диапазона
+     * @param uris  список URI для фильтрации (пустой — без фильтра)
+     * @return статистика, отсортированная по убыванию количества уникальных посещений
+     */
+    public List<ViewStatsProjection> getUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        RollupPlan plan = RollupPlan.of(start, end, HitBitmapRepository.GRANULARITIES);
+        LocalDate coveredFrom = repository.findCoveredFrom().orElse(LocalDate.MAX);
+        return repository.getUniqueStats(plan, uris, coveredFrom.atStartOfDay());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfNeeded() {
+        if (!enabled || repository.findCoveredFrom().filter(HitBitmapRepository.COVERED_ALL::equals).isPresent()) {
+            return;
+        }
+
+        Thread thread = new Thread(this::backfill, "bitmap-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void backfill() {
+        log.info("Построение битовых карт уникальных посещений по сохранённым хитам");
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        try {
+            while (true) {
+                Optional<LocalDate> coveredFrom = repository.findCoveredFrom();
+                if (coveredFrom.isEmpty() || coveredFrom.get().equals(HitBitmapRepository.COVERED_ALL)) {
+                    break;
+                }
+                LocalDate expected = coveredFrom.get();
+                Optional<LocalDate> day = repository.findLastHitDayBefore(expected);
+                if (day.isEmpty()) {
+                    tx.executeWithoutResult(status -> {
+                        if (repository.lockCoveredFrom().filter(expected::equals).isPresent()) {
+                            repository.setCoveredFrom(HitBitmapRepository.COVERED_ALL);
+                        }
+                    });
+                    break;
+                }
+
+                // словарь IP пополняется отдельной транзакцией, как и при записи хитов
+                repository.addDayIps(day.get());
+                tx.executeWithoutResult(status -> {
+                    if (repository.lockCoveredFrom().filter(expected::equals).isPresent()) {
+                        repository.backfillDay(day.get());
+                        repository.setCoveredFrom(day.get());
+                    }
+                });
+                log.debug("Битовые карты построены за {}", day.get());
+            }
+            log.info("Битовые карты уникальных посещений построены");
+        } catch (RuntimeException e) {
+            log.error("Ошибка построения битовых карт уникальных посещений", e);
+        }
+    }
+}
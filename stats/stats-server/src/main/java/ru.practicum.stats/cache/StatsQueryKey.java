@@ -0,0 +1,41 @@
+package ru.practicum.stats.cache;
+
+import ru.practicum.stats.model.Precision;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Нормализованный ключ запроса статистики для {@link StatsResultCache}.
+ * <p>
+ * URI сортируются и очищаются от повторов, чтобы запросы с тем же набором URI в другом порядке
+ * попадали в одну запись. Для записей-префиксов с открытым концом диапазона {@code end} равен null.
+ *
+ * @param start     начало диапазона
+ * @param end       конец диапазона (включительно) или null для префикса
+ * @param uris      отсортированные уникальные URI
+ * @param unique    флаг уникальных посещений
+ * @param precision точность подсчёта
+ */
+public record StatsQueryKey(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                            Precision precision) {
+
+    /**
+     * @return ключ закрытого диапазона [start, end]
+     */
+    public static StatsQueryKey closed(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                       Precision precision) {
+        return new StatsQueryKey(start, end, normalize(uris), unique, precision);
+    }
+
+    /**
+     * @return ключ префикса диапазона, начинающегося в start, с подвижным концом
+     */
+    public static StatsQueryKey prefix(LocalDateTime start, List<String> uris, boolean unique, Precision precision) {
+        return new StatsQueryKey(start, null, normalize(uris), unique, precision);
+    }
+
+    private static List<String> normalize(List<String> uris) {
+        return uris.stream().distinct().sorted().toList();
+    }
+}
@@ -0,0 +1,187 @@
+package ru.practicum.stats.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.storage.TimeRange;
+import ru.practicum.stats.storage.ViewStatsProjection;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Кэш результатов запросов статистики по закрытым интервалам времени.
+ * <p>
+ * Интервал считается закрытым, если он заканчивается до водяного знака — начала минуты,
+ * отстоящей от текущего времени на {@code stats.cache.watermark-lag-seconds}. Хранятся записи двух видов:
+ * - результат целиком закрытого диапазона [start, end];
+ * - префикс [start, водяной знак) для запросов с подвижным концом: сервис досчитывает только
+ * хвост после префикса и сдвигает префикс вперёд.
+ * <p>
+ * Хит, записанный после закрытия интервала, удаляет все записи, интервал которых его содержит.
+ * Записи, посчитанные до такого удаления, в кэш не попадают. Размер кэша ограничен
+ * {@code stats.cache.max-entries} записями (вытесняются давно не использованные),
+ * а результаты длиннее {@code stats.cache.max-entry-rows} строк не кэшируются.
+ */
+@Component
+@RequiredArgsConstructor
+public class StatsResultCache {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${stats.cache.enabled:true}")
+    private boolean enabled;
+    @Value("${stats.cache.max-entries:10000}")
+    private int maxEntries;
+    @Value("${stats.cache.max-entry-rows:10000}")
+    private int maxEntryRows;
+    @Value("${stats.cache.watermark-lag-seconds:10}")
+    private long watermarkLagSeconds;
+
+    // доступ только под блокировкой самого кэша
+    private final Map<StatsQueryKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StatsQueryKey, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    // увеличивается при каждом удалении записей из-за опоздавших хитов
+    private long version;
+
+    private Counter hitCounter;
+    private Counter partialCounter;
+    private Counter missCounter;
+    private Counter invalidatedCounter;
+
+    @PostConstruct
+    void init() {
+        hitCounter = meterRegistry.counter("stats.cache.requests", "result", "hit");
+        partialCounter = meterRegistry.counter("stats.cache.requests", "result", "partial");
+        missCounter = meterRegistry.counter("stats.cache.requests", "result", "miss");
+        invalidatedCounter = meterRegistry.counter("stats.cache.invalidated");
+        Gauge.builder("stats.cache.size", this, StatsResultCache::size).register(meterRegistry);
+    }
+
+    /**
+     * @return true, если кэш включён
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return граница закрытых интервалов: хиты раньше неё считаются уже записанными
+     */
+    public LocalDateTime watermark() {
+        return LocalDateTime.now().minusSeconds(watermarkLagSeconds).truncatedTo(ChronoUnit.MINUTES);
+    }
+
+    /**
+     * @return текущая версия кэша; передаётся в put, чтобы не сохранить результат,
+     * посчитанный до удаления записей опоздавшими хитами
+     */
+    public long version() {
+        synchronized (entries) {
+            return version;
+        }
+    }
+
+    /**
+     * @param key ключ закрытого диапазона или префикса
+     * @return сохранённый результат или null
+     */
+    public CachedStats get(StatsQueryKey key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            missCounter.increment();
+            return null;
+        }
+        (key.end() != null ? hitCounter : partialCounter).increment();
+        return entry.stats;
+    }
+
+    /**
+     * Сохраняет результат, если с момента получения версии не было опоздавших хитов.
+     *
+     * @param key     ключ закрытого диапазона или префикса
+     * @param range   интервал, по которому посчитан результат
+     * @param rows    результат
+     * @param version версия кэша на момент начала вычисления
+     */
+    public void put(StatsQueryKey key, TimeRange range, List<ViewStatsProjection> rows, long version) {
+        if (rows.size() > maxEntryRows) {
+            return;
+        }
+        synchronized (entries) {
+            if (this.version == version) {
+                entries.put(key, new Entry(key.start(), new CachedStats(range, List.copyOf(rows))));
+            }
+        }
+    }
+
+    /**
+     * Удаляет записи, интервалы которых содержат записанные хиты.
+     *
+     * @param hits хиты, транзакция записи которых зафиксирована
+     */
+    public void onHitsWritten(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime watermark = watermark();
+        List<LocalDateTime> late = hits.stream()
+                .map(Hit::getTimestamp)
+                .filter(timestamp -> timestamp.isBefore(watermark))
+                .toList();
+        if (late.isEmpty()) {
+            return;
+        }
+
+        synchronized (entries) {
+            version++;
+            int before = entries.size();
+            entries.values().removeIf(entry -> late.stream().anyMatch(entry.stats.range()::contains));
+            invalidatedCounter.increment(before - entries.size());
+        }
+    }
+
+    /**
+     * Удаляет записи, диапазоны которых начинаются раньше границы хранения.
+     *
+     * @param cutoff граница хранения
+     */
+    public void invalidateBefore(LocalDateTime cutoff) {
+        synchronized (entries) {
+            version++;
+            entries.values().removeIf(entry -> entry.start.isBefore(cutoff));
+        }
+    }
+
+    private int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Сохранённый результат запроса.
+     *
+     * @param range интервал, по которому посчитан результат
+     * @param rows  строки статистики
+     */
+    public record CachedStats(TimeRange range, List<ViewStatsProjection> rows) {
+    }
+
+    private record Entry(LocalDateTime start, CachedStats stats) {
+    }
+}
@@ -4,8 +4,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import ru.practicum.stats.exceptions.ConflictException;
 import ru.practicum.stats.exceptions.ErrorResponse;
 import ru.practicum.stats.exceptions.InvalidDateException;
+import ru.practicum.stats.exceptions.InvalidParameterException;
 
 @RestControllerAdvice
 public class GlobalExceptionController {
@@ -14,4 +16,16 @@ public class GlobalExceptionController {
     public ErrorResponse handleInvalidDateException(InvalidDateException e) {
         return new ErrorResponse("Ошибка формата даты", e.getMessage());
     }
+
+    @ExceptionHandler(InvalidParameterException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleInvalidParameterException(InvalidParameterException e) {
+        return new ErrorResponse("Некорректный параметр запроса", e.getMessage());
+    }
+
+    @ExceptionHandler(ConflictException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ErrorResponse handleConflictException(ConflictException e) {
+        return new ErrorResponse("Конфликт состояния", e.getMessage());
+    }
 }
@@ -0,0 +1,60 @@
+package ru.practicum.stats.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.practicum.stats.dto.HitImportResultDto;
+import ru.practicum.stats.importer.HitImportFormat;
+import ru.practicum.stats.importer.HitImporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * REST контроллер массового импорта хитов из выгруженного архива.
+ * <p>
+ * Пример: {@code curl -T hits.ndjson -X POST "http://stats-server:9090/hit/import/2026-10?format=ndjson"}.
+ * Если загрузка прервалась, тот же запрос с тем же файлом продолжит импорт с места остановки.
+ *
+ * @see HitImporter
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+public class HitImportController {
+    private final HitImporter hitImporter;
+
+    /**
+     * Импортирует хиты из тела запроса или продолжает прерванный импорт.
+     *
+     * @param importId идентификатор импорта: повторный запрос с ним пропускает уже сохранённые записи
+     * @param format   формат тела запроса: ndjson (по умолчанию) или csv
+     * @param body     содержимое файла в UTF-8
+     * @return состояние импорта и ошибки по отклонённым записям с HTTP статусом 200 (OK)
+     * @throws IOException если не удалось прочитать тело запроса
+     */
+    @PostMapping("/hit/import/{importId}")
+    public HitImportResultDto importHits(@PathVariable String importId,
+                                         @RequestParam(defaultValue = "ndjson") String format,
+                                         InputStream body) throws IOException {
+        HitImportFormat importFormat = HitImportFormat.from(format);
+        log.info("Импорт хитов {} в формате {}", importId, importFormat);
+        return hitImporter.importHits(importId, importFormat, body);
+    }
+
+    /**
+     * Возвращает состояние импорта.
+     *
+     * @param importId идентификатор импорта
+     * @return состояние импорта с HTTP статусом 200 (OK) или 404 (Not Found), если импорт не начинался
+     */
+    @GetMapping("/hit/import/{importId}")
+    public ResponseEntity<HitImportResultDto> getImportStatus(@PathVariable String importId) {
+        return ResponseEntity.of(hitImporter.getStatus(importId));
+    }
+}
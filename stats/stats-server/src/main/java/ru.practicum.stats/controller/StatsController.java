@@ -1,19 +1,31 @@
 package ru.practicum.stats.controller;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.validation.Valid;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.TimeSeriesDto;
 import ru.practicum.stats.dto.ViewStatsDto;
 import ru.practicum.stats.exceptions.InvalidDateException;
+import ru.practicum.stats.ingestion.IngestionStatus;
+import ru.practicum.stats.model.Interval;
+import ru.practicum.stats.model.Precision;
 import ru.practicum.stats.service.StatsService;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
@@ -26,32 +38,72 @@ import java.util.List;
  * <p>
  * Предоставляет API для:
  * - Сохранения информации о запросах к эндпоинтам ({@link #hit(EndpointHitDto)})
- * - Получения агрегированной статистики по посещениям ({@link #getStats(LocalDateTime, LocalDateTime, List, boolean)})
+ * - Пакетного сохранения информации о запросах ({@link #hitBatch(List)})
+ * - Получения агрегированной статистики по посещениям ({@link #getStats(String, String, List, Boolean, String)})
+ * - Получения самых посещаемых URI ({@link #getTopStats(String, String, Integer, String, Boolean, String)})
+ * - Получения временных рядов просмотров ({@link #getTimeSeries(String, String, List, Boolean, String)})
+ * - Потоковой выдачи статистики в формате NDJSON ({@link #streamStats(String, String, List, Boolean)})
  *
  * @see StatsService
  */
 
 @Slf4j
-@RequiredArgsConstructor
 @RestController
 @Validated
 public class StatsController {
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int RETRY_AFTER_SECONDS = 1;
+
     private final StatsService statsService;
+    private final ObjectWriter viewStatsWriter;
+
+    public StatsController(StatsService statsService, ObjectMapper objectMapper) {
+        this.statsService = statsService;
+        this.viewStatsWriter = objectMapper.writerFor(ViewStatsDto.class);
+    }
 
     /**
      * Сохраняет информацию о запросе к эндпоинту.
      *
      * @param endpointHitDto данные о запросе к эндпоинту
-     * @return ResponseEntity с HTTP статусом 201 (Created)
+     * @return ResponseEntity с HTTP статусом 201 (Created), если запрос сохранён,
+     * или 202 (Accepted), если запрос принят асинхронной очередью записи или журналом на диске
+     * либо схлопнут как повтор недавнего, или 503 (Service Unavailable) с заголовком Retry-After,
+     * если хит отброшен из-за переполнения очереди записи
      * @throws jakarta.validation.ConstraintViolationException если данные запроса не прошли валидацию
      */
     @PostMapping("/hit")
-    @ResponseStatus(HttpStatus.CREATED)
-    public void hit(@RequestBody @Valid EndpointHitDto endpointHitDto) {
+    public ResponseEntity<Void> hit(@RequestBody @Valid EndpointHitDto endpointHitDto) {
         log.info("Попытка добавления запроса: {}", endpointHitDto);
-        statsService.addHit(endpointHitDto);
-        log.info("Запрос на {} от {} сохранён", endpointHitDto.getUri(), endpointHitDto.getIp());
+        IngestionStatus status = statsService.addHit(endpointHitDto);
+        log.info("Запрос на {} от {} обработан: {}", endpointHitDto.getUri(), endpointHitDto.getIp(), status);
+        return switch (status) {
+            case STORED -> ResponseEntity.status(HttpStatus.CREATED).build();
+            // клиент может повторить отправку позже или сохранить хит у себя
+            case DROPPED -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS))
+                    .build();
+            default -> ResponseEntity.status(HttpStatus.ACCEPTED).build();
+        };
+    }
+
+    /**
+     * Сохраняет пакет запросов к эндпоинтам одной транзакцией.
+     * <p>
+     * Записи, не прошедшие валидацию, не сохраняются и возвращаются в отчёте об ошибках
+     * с указанием их порядкового номера в пакете.
+     *
+     * @param endpointHitDtos пакет данных о запросах к эндпоинтам
+     * @return отчёт о количестве сохранённых и отклонённых записей с HTTP статусом 201 (Created)
+     */
+    @PostMapping("/hit/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public HitBatchResultDto hitBatch(@RequestBody List<EndpointHitDto> endpointHitDtos) {
+        log.info("Попытка пакетного добавления {} запросов", endpointHitDtos.size());
+        HitBatchResultDto result = statsService.addHits(endpointHitDtos);
+        log.info("Пакет запросов обработан: сохранено {}, отклонено {}", result.getAccepted(), result.getRejected());
+        return result;
     }
 
     /**
@@ -59,11 +111,15 @@ public class StatsController {
      * <p>
      * Обратите внимание: значение даты и времени нужно закодировать
      * (например используя {@link java.net.URLEncoder#encode(String, String)})
+     * <p>
+     * URI можно задать префиксом: {@code uris=/events/*} — статистика по всем известным URI,
+     * начинающимся с /events/.
      *
-     * @param start  дата и время начала диапазона (в формате "yyyy-MM-dd HH:mm:ss")
-     * @param end    дата и время конца диапазона (в формате "yyyy-MM-dd HH:mm:ss")
-     * @param uris   список URI для фильтрации (опциональный параметр)
-     * @param unique флаг учета только уникальных посещений по IP (по умолчанию false)
+     * @param start     дата и время начала диапазона (в формате "yyyy-MM-dd HH:mm:ss")
+     * @param end       дата и время конца диапазона (в формате "yyyy-MM-dd HH:mm:ss")
+     * @param uris      список URI для фильтрации (опциональный параметр); URI с * на конце — префикс
+     * @param unique    флаг учета только уникальных посещений по IP (по умолчанию false)
+     * @param precision точность подсчёта уникальных посещений: exact (по умолчанию) или approximate
      * @return список статистики по посещениям, отсортированный по количеству просмотров по убыванию
      * @throws jakarta.validation.ConstraintViolationException если параметры даты некорректны
      */
@@ -71,19 +127,120 @@ public class StatsController {
     public ResponseEntity<List<ViewStatsDto>> getStats(@RequestParam @NonNull String start,
                                                        @RequestParam @NonNull String end,
                                                        @RequestParam(required = false, defaultValue = "") List<String> uris,
-                                                       @RequestParam(defaultValue = "false") Boolean unique) {
-        LocalDateTime startDateTime;
-        LocalDateTime endDateTime;
+                                                       @RequestParam(defaultValue = "false") Boolean unique,
+                                                       @RequestParam(defaultValue = "exact") String precision) {
+        LocalDateTime startDateTime = parseDate(start);
+        LocalDateTime endDateTime = parseDate(end);
+        log.info("Запрошена статистика от {} до {}", start, end);
+        List<ViewStatsDto> results = statsService.getStats(startDateTime, endDateTime, uris, unique,
+                Precision.from(precision));
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Получает статистику по посещениям в формате NDJSON: по одному JSON-объекту на строку.
+     * <p>
+     * Строки читаются из БД курсором и пишутся в ответ по мере чтения, поэтому
+     * потребление памяти не зависит от размера результата. Уникальные посещения считаются точно.
+     * Если ошибка БД произойдёт после начала передачи, ответ будет оборван.
+     * Диапазон, затрагивающий дни, перенесённые в архив, отклоняется с ответом 400.
+     *
+     * @param start  дата и время начала диапазона (в формате "yyyy-MM-dd HH:mm:ss")
+     * @param end    дата и время конца диапазона (в формате "yyyy-MM-dd HH:mm:ss")
+     * @param uris   список URI для фильтрации (опциональный параметр); URI с * на конце — префикс
+     * @param unique флаг учета только уникальных посещений по IP (по умолчанию false)
+     * @return поток строк статистики, отсортированных по количеству просмотров по убыванию
+     */
+    @GetMapping(value = "/stats/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamStats(@RequestParam @NonNull String start,
+                                                             @RequestParam @NonNull String end,
+                                                             @RequestParam(required = false, defaultValue = "")
+                                                             List<String> uris,
+                                                             @RequestParam(defaultValue = "false") Boolean unique) {
+        LocalDateTime startDateTime = parseDate(start);
+        LocalDateTime endDateTime = parseDate(end);
+        // диапазон проверяется до начала ответа: после отправки заголовков вернуть 400 уже нельзя
+        if (startDateTime.isAfter(endDateTime)) {
+            throw new InvalidDateException("Диапазон статистики указан некорректно");
+        }
+        statsService.requireLiveRange(startDateTime, endDateTime);
+        log.info("Запрошена потоковая статистика от {} до {}", start, end);
+
+        StreamingResponseBody body = out -> statsService.streamStats(startDateTime, endDateTime, uris, unique,
+                dto -> writeLine(out, dto));
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(body);
+    }
+
+    /**
+     * Получает самые посещаемые URI за диапазон.
+     *
+     * @param start     дата и время начала диапазона (в формате "yyyy-MM-dd HH:mm:ss")
+     * @param end       дата и время конца диапазона (в формате "yyyy-MM-dd HH:mm:ss")
+     * @param limit     количество строк (по умолчанию 10)
+     * @param app       название сервиса (опциональный параметр)
+     * @param unique    флаг учета только уникальных посещений по IP (по умолчанию false)
+     * @param precision exact (по умолчанию) — точный подсчёт с LIMIT в БД,
+     *                  approximate — оценка по сводкам Space-Saving или скетчам HyperLogLog;
+     *                  диапазон, затрагивающий дни, перенесённые в архив, отклоняется с ответом 400
+     * @return не больше limit строк статистики, отсортированных по количеству просмотров по убыванию
+     */
+    @GetMapping("/stats/top")
+    public ResponseEntity<List<ViewStatsDto>> getTopStats(@RequestParam @NonNull String start,
+                                                          @RequestParam @NonNull String end,
+                                                          @RequestParam(defaultValue = "10") Integer limit,
+                                                          @RequestParam(required = false) String app,
+                                                          @RequestParam(defaultValue = "false") Boolean unique,
+                                                          @RequestParam(defaultValue = "exact") String precision) {
+        LocalDateTime startDateTime = parseDate(start);
+        LocalDateTime endDateTime = parseDate(end);
+        log.info("Запрошены {} самых посещаемых URI от {} до {}", limit, start, end);
+        List<ViewStatsDto> results = statsService.getTopStats(startDateTime, endDateTime, app, limit, unique,
+                Precision.from(precision));
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Получает временные ряды просмотров с количеством за каждый бакет диапазона.
+     *
+     * @param start    дата и время начала диапазона (в формате "yyyy-MM-dd HH:mm:ss")
+     * @param end      дата и время конца диапазона (в формате "yyyy-MM-dd HH:mm:ss")
+     * @param uris     список URI для фильтрации (опциональный параметр); URI с * на конце — префикс
+     * @param unique   флаг учета только уникальных посещений по IP в каждом бакете (по умолчанию false)
+     * @param interval размер бакета: minute, hour (по умолчанию) или day;
+     *                 диапазон, затрагивающий дни, перенесённые в архив, отклоняется с ответом 400
+     * @return ряды по сервисам и URI; бакеты без просмотров не включаются
+     */
+    @GetMapping("/stats/timeseries")
+    public ResponseEntity<List<TimeSeriesDto>> getTimeSeries(@RequestParam @NonNull String start,
+                                                             @RequestParam @NonNull String end,
+                                                             @RequestParam(required = false, defaultValue = "")
+                                                             List<String> uris,
+                                                             @RequestParam(defaultValue = "false") Boolean unique,
+                                                             @RequestParam(defaultValue = "hour") String interval) {
+        LocalDateTime startDateTime = parseDate(start);
+        LocalDateTime endDateTime = parseDate(end);
+        log.info("Запрошены временные ряды от {} до {} с интервалом {}", start, end, interval);
+        List<TimeSeriesDto> results = statsService.getTimeSeries(startDateTime, endDateTime, uris, unique,
+                Interval.from(interval));
+        return ResponseEntity.ok(results);
+    }
+
+    private LocalDateTime parseDate(String value) {
         try {
-            String decodedStart = URLDecoder.decode(start, StandardCharsets.UTF_8);
-            String decodedEnd = URLDecoder.decode(end, StandardCharsets.UTF_8);
-            startDateTime = LocalDateTime.parse(decodedStart, FORMATTER);
-            endDateTime = LocalDateTime.parse(decodedEnd, FORMATTER);
+            return LocalDateTime.parse(URLDecoder.decode(value, StandardCharsets.UTF_8), FORMATTER);
         } catch (DateTimeParseException e) {
             throw new InvalidDateException("неправильный формат даты: " + e.getMessage());
         }
-        log.info("Запрошена статистика от {} до {}", start, end);
-        List<ViewStatsDto> results = statsService.getStats(startDateTime, endDateTime, uris, unique);
-        return ResponseEntity.ok(results);
+    }
+
+    private void writeLine(OutputStream out, ViewStatsDto dto) {
+        try {
+            out.write(viewStatsWriter.writeValueAsBytes(dto));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
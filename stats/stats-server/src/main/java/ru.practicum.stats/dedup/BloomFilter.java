@@ -0,0 +1,68 @@
+package ru.practicum.stats.dedup;
+
+/**
+ * Фильтр Блума по 64-битным хешам значений.
+ * <p>
+ * Размер битового массива и число хеш-функций подбираются по ожидаемому числу значений
+ * и допустимой вероятности ложного срабатывания. Позиции битов получаются двойным хешированием
+ * из старшей и младшей половин хеша. Не потокобезопасен.
+ */
+final class BloomFilter {
+    private final long[] bits;
+    private final long size;
+    private final int hashes;
+
+    /**
+     * @param expectedValues    ожидаемое число значений
+     * @param falsePositiveRate допустимая вероятность ложного срабатывания, (0, 1)
+     */
+    BloomFilter(long expectedValues, double falsePositiveRate) {
+        if (expectedValues <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Некорректные параметры фильтра Блума: " +
+                    expectedValues + ", " + falsePositiveRate);
+        }
+        long bitCount = (long) Math.ceil(-expectedValues * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = new long[(int) Math.max(1, (bitCount + 63) >>> 6)];
+        this.size = (long) bits.length << 6;
+        this.hashes = Math.max(1, (int) Math.round((double) size / expectedValues * Math.log(2)));
+    }
+
+    /**
+     * Добавляет значение в фильтр.
+     *
+     * @param hash хеш значения
+     * @return true, если значения в фильтре ещё не было (с точностью до ложного срабатывания)
+     */
+    boolean put(long hash) {
+        boolean added = false;
+        for (int i = 0; i < hashes; i++) {
+            long index = index(hash, i);
+            long mask = 1L << index;
+            int word = (int) (index >>> 6);
+            if ((bits[word] & mask) == 0) {
+                bits[word] |= mask;
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * @param hash хеш значения
+     * @return true, если значение, возможно, есть в фильтре; false, если его точно нет
+     */
+    boolean mightContain(long hash) {
+        for (int i = 0; i < hashes; i++) {
+            long index = index(hash, i);
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long index(long hash, int i) {
+        long combined = (hash >>> 32) + i * (hash & 0xffffffffL);
+        return Long.remainderUnsigned(combined, size);
+    }
+}
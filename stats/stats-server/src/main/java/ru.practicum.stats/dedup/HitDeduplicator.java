@@ -0,0 +1,137 @@
+package ru.practicum.stats.dedup;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.sketch.HyperLogLog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Схлопывание повторов хитов при приёме.
+ * <p>
+ * Если включено ({@code stats.dedup.enabled}), хит с теми же сервисом, URI и IP, что и уже принятый
+ * не раньше чем {@code stats.dedup.window-seconds} секунд назад, не записывается. Окно отсчитывается
+ * от первого принятого хита, поэтому непрерывный поток повторов пропускается раз в окно.
+ * <p>
+ * Принятые ключи хранятся в двух фильтрах Блума — текущем и предыдущем, — которые сменяются
+ * каждые {@code stats.dedup.window-seconds} секунд: ключ помнится от одного до двух окон.
+ * Каждый фильтр рассчитан на {@code stats.dedup.expected-hits} ключей за окно с вероятностью ложного
+ * срабатывания {@code stats.dedup.false-positive-rate}; при ложном срабатывании уникальный хит будет отброшен.
+ * <p>
+ * Количество хитов до и после схлопывания публикуется метриками stats.hits.raw и stats.hits.deduplicated.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HitDeduplicator {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${stats.dedup.enabled:false}")
+    private boolean enabled;
+    @Value("${stats.dedup.window-seconds:10}")
+    private long windowSeconds;
+    @Value("${stats.dedup.expected-hits:100000}")
+    private long expectedHits;
+    @Value("${stats.dedup.false-positive-rate:0.001}")
+    private double falsePositiveRate;
+
+    private Counter rawCounter;
+    private Counter deduplicatedCounter;
+
+    private BloomFilter current;
+    private BloomFilter previous;
+    private long windowStart;
+
+    @PostConstruct
+    void init() {
+        rawCounter = meterRegistry.counter("stats.hits.raw");
+        deduplicatedCounter = meterRegistry.counter("stats.hits.deduplicated");
+        if (!enabled) {
+            return;
+        }
+
+        current = new BloomFilter(expectedHits, falsePositiveRate);
+        previous = new BloomFilter(expectedHits, falsePositiveRate);
+        windowStart = System.nanoTime();
+        log.info("Включено схлопывание повторов хитов: окно {} с, до {} хитов за окно", windowSeconds, expectedHits);
+    }
+
+    /**
+     * @return true, если схлопывание повторов включено
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Проверяет, повторяет ли хит недавно принятый, и запоминает его, если нет.
+     *
+     * @param hit хит с заполненными названиями сервиса и URI и IP
+     * @return true, если хит — повтор и записывать его не нужно
+     */
+    public boolean isDuplicate(Hit hit) {
+        rawCounter.increment();
+        if (enabled && !accept(hash(hit))) {
+            return true;
+        }
+        deduplicatedCounter.increment();
+        return false;
+    }
+
+    /**
+     * Убирает из пачки повторы недавно принятых хитов и повторы внутри самой пачки.
+     *
+     * @param hits хиты с заполненными названиями сервиса и URI и IP
+     * @return хиты, которые нужно записать, в исходном порядке
+     */
+    public List<Hit> deduplicate(List<Hit> hits) {
+        rawCounter.increment(hits.size());
+        if (!enabled) {
+            deduplicatedCounter.increment(hits.size());
+            return hits;
+        }
+
+        List<Hit> accepted = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            if (accept(hash(hit))) {
+                accepted.add(hit);
+            }
+        }
+        deduplicatedCounter.increment(accepted.size());
+        return accepted;
+    }
+
+    // true, если ключа не было ни в одном из фильтров; ключ добавляется в текущий фильтр
+    private synchronized boolean accept(long hash) {
+        rotate();
+        if (previous.mightContain(hash)) {
+            return false;
+        }
+        return current.put(hash);
+    }
+
+    private void rotate() {
+        long windowNanos = windowSeconds * 1_000_000_000L;
+        long elapsed = System.nanoTime() - windowStart;
+        if (elapsed < windowNanos) {
+            return;
+        }
+        // если прошло больше двух окон, оба фильтра устарели
+        previous = elapsed < 2 * windowNanos ? current : new BloomFilter(expectedHits, falsePositiveRate);
+        current = new BloomFilter(expectedHits, falsePositiveRate);
+        windowStart += elapsed / windowNanos * windowNanos;
+    }
+
+    private static long hash(Hit hit) {
+        String key = hit.getApp() + '\n' + hit.getUri() + '\n' + hit.getIp();
+        return HyperLogLog.hash64(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
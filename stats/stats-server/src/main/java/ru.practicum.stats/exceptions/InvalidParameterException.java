@@ -0,0 +1,7 @@
+package ru.practicum.stats.exceptions;
+
+public class InvalidParameterException extends RuntimeException {
+    public InvalidParameterException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,232 @@
+package ru.practicum.stats.hot;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.storage.HitJdbcRepository;
+import ru.practicum.stats.storage.ViewStatsProjection;
+import ru.practicum.stats.storage.ViewStatsRow;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики хитов за последние {@code stats.hot-window.size-seconds} секунд в памяти.
+ * <p>
+ * Хиты раскладываются по посекундным бакетам кольцевого буфера; в каждом бакете
+ * для пары (app, uri) хранится {@link LongAdder}, поэтому параллельные писатели не блокируют друг друга.
+ * Бакет секунды, вышедшей из окна, заменяется новым при первой записи в его ячейку
+ * или удаляется фоновой очисткой.
+ * <p>
+ * Счётчики пополняются после фиксации транзакции в {@link ru.practicum.stats.ingestion.HitWriter},
+ * поэтому совпадают с таблицей hit только для хитов, записанных этим экземпляром после его старта.
+ * Запрос обслуживается из памяти, если весь диапазон лежит внутри окна и позже момента старта
+ * и самого позднего хита, сохранённого до старта;
+ * иначе сервис читает статистику из БД. Уникальные посещения в памяти не считаются.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HotWindowCounters {
+    // на сколько секунд вперёд от текущего времени принимаются хиты с опережающими часами клиента
+    private static final int FUTURE_SLACK_SECONDS = 60;
+    // приблизительный размер записи бакета без строк: узел ConcurrentHashMap, ключ и LongAdder
+    private static final long ENTRY_OVERHEAD_BYTES = 120;
+
+    private final MeterRegistry meterRegistry;
+    private final HitJdbcRepository hitJdbcRepository;
+
+    @Value("${stats.hot-window.enabled:true}")
+    private boolean enabled;
+    @Value("${stats.hot-window.size-seconds:3600}")
+    private int windowSeconds;
+
+    private AtomicReferenceArray<Bucket> buckets;
+    // секунды, хиты за которые пришли слишком далеко в будущем и не попали в буфер
+    private final ConcurrentSkipListSet<Long> skippedSeconds = new ConcurrentSkipListSet<>();
+    private volatile long coveredFrom;
+
+    private Counter servedCounter;
+    private Counter fallbackCounter;
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        buckets = new AtomicReferenceArray<>(windowSeconds + FUTURE_SLACK_SECONDS + 1);
+        // хиты текущей секунды, как и хиты с опережающим временем, могли быть записаны до запуска счётчиков
+        LocalDateTime lastStored = hitJdbcRepository.findMaxTimestamp();
+        coveredFrom = Math.max(now(), lastStored == null ? Long.MIN_VALUE : toSecond(lastStored)) + 1;
+
+        servedCounter = meterRegistry.counter("stats.hot-window.queries", "result", "served");
+        fallbackCounter = meterRegistry.counter("stats.hot-window.queries", "result", "fallback");
+        Gauge.builder("stats.hot-window.memory", this, HotWindowCounters::estimateMemoryBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        log.info("Включены счётчики хитов в памяти за последние {} с", windowSeconds);
+    }
+
+    /**
+     * Учитывает записанные в БД хиты.
+     *
+     * @param hits хиты, транзакция записи которых зафиксирована
+     */
+    public void add(List<Hit> hits) {
+        if (!enabled) {
+            return;
+        }
+        long now = now();
+        for (Hit hit : hits) {
+            long second = toSecond(hit.getTimestamp());
+            if (second < now - windowSeconds) {
+                continue;
+            }
+            if (second > now + FUTURE_SLACK_SECONDS) {
+                skippedSeconds.add(second);
+                continue;
+            }
+            bucketFor(second).counts
+                    .computeIfAbsent(new AppUri(hit.getApp(), hit.getUri()), k -> new LongAdder())
+                    .increment();
+        }
+    }
+
+    /**
+     * Считает количество хитов за диапазон, если он целиком покрыт счётчиками в памяти.
+     *
+     * @param start начало диапазона (включительно)
+     * @param end   конец диапазона (включительно)
+     * @param uris  список URI для фильтрации (пустой — без фильтра)
+     * @return статистика, отсортированная по количеству просмотров по убыванию,
+     * или пустой Optional, если диапазон нужно считать по БД
+     */
+    public Optional<List<ViewStatsProjection>> getStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        long now = now();
+        long from = toSecond(start);
+        long to = Math.min(toSecond(end), now + FUTURE_SLACK_SECONDS);
+        if (from < coveredFrom || from <= now - windowSeconds || hasSkippedSeconds(from, toSecond(end))) {
+            fallbackCounter.increment();
+            return Optional.empty();
+        }
+
+        Set<String> uriFilter = new HashSet<>(uris);
+        Map<AppUri, Long> totals = new HashMap<>();
+        for (long second = from; second <= to; second++) {
+            Bucket bucket = buckets.get(index(second));
+            if (bucket == null || bucket.second != second) {
+                continue;
+            }
+            bucket.counts.forEach((key, count) -> {
+                if (uriFilter.isEmpty() || uriFilter.contains(key.uri())) {
+                    totals.merge(key, count.sum(), Long::sum);
+                }
+            });
+        }
+
+        List<ViewStatsProjection> result = new ArrayList<>(totals.size());
+        totals.forEach((key, hits) -> result.add(new ViewStatsRow(key.app(), key.uri(), hits)));
+        result.sort(Comparator.comparing(ViewStatsProjection::getHits).reversed());
+        servedCounter.increment();
+        return Optional.of(result);
+    }
+
+    /**
+     * Удаляет бакеты секунд, вышедших из окна, чтобы они не занимали память при отсутствии новых хитов.
+     */
+    @Scheduled(fixedDelayString = "${stats.hot-window.eviction-interval-ms:10000}")
+    public void evictExpired() {
+        if (!enabled) {
+            return;
+        }
+        long oldest = now() - windowSeconds;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.second < oldest) {
+                buckets.compareAndSet(i, bucket, null);
+            }
+        }
+        skippedSeconds.removeIf(second -> second < oldest);
+    }
+
+    // бакет секунды; устаревший бакет в той же ячейке заменяется новым
+    private Bucket bucketFor(long second) {
+        int index = index(second);
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            if (bucket != null && bucket.second >= second) {
+                // более новый бакет в ячейке означает, что секунда уже вышла из окна — такой хит не нужен
+                return bucket.second == second ? bucket : new Bucket(second);
+            }
+            Bucket created = new Bucket(second);
+            if (buckets.compareAndSet(index, bucket, created)) {
+                return created;
+            }
+        }
+    }
+
+    private boolean hasSkippedSeconds(long from, long to) {
+        Long second = skippedSeconds.ceiling(from);
+        return second != null && second <= to;
+    }
+
+    private long estimateMemoryBytes() {
+        long bytes = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket == null) {
+                continue;
+            }
+            for (AppUri key : bucket.counts.keySet()) {
+                bytes += ENTRY_OVERHEAD_BYTES + 2L * (key.app().length() + key.uri().length());
+            }
+        }
+        return bytes;
+    }
+
+    private int index(long second) {
+        return (int) Math.floorMod(second, (long) buckets.length());
+    }
+
+    private static long now() {
+        return toSecond(LocalDateTime.now());
+    }
+
+    private static long toSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private record AppUri(String app, String uri) {
+    }
+
+    private static final class Bucket {
+        private final long second;
+        private final Map<AppUri, LongAdder> counts = new ConcurrentHashMap<>();
+
+        private Bucket(long second) {
+            this.second = second;
+        }
+    }
+}
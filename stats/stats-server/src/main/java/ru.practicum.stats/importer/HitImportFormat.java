@@ -0,0 +1,32 @@
+package ru.practicum.stats.importer;
+
+import ru.practicum.stats.exceptions.InvalidParameterException;
+
+/**
+ * Формат файла массового импорта хитов.
+ */
+public enum HitImportFormat {
+    /**
+     * Один JSON-объект {@link ru.practicum.stats.dto.EndpointHitDto} на строку.
+     */
+    NDJSON,
+    /**
+     * Строки app,uri,ip,timestamp с необязательной строкой заголовка; значения с запятыми
+     * и кавычками заключаются в двойные кавычки.
+     */
+    CSV;
+
+    /**
+     * @param value название формата без учёта регистра
+     * @return формат
+     * @throws InvalidParameterException если формат неизвестен
+     */
+    public static HitImportFormat from(String value) {
+        for (HitImportFormat format : values()) {
+            if (format.name().equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        throw new InvalidParameterException("Неизвестный формат импорта: " + value);
+    }
+}
@@ -0,0 +1,261 @@
+package ru.practicum.stats.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitErrorDto;
+import ru.practicum.stats.dto.HitImportResultDto;
+import ru.practicum.stats.exceptions.ConflictException;
+import ru.practicum.stats.exceptions.InvalidParameterException;
+import ru.practicum.stats.ingestion.HitWriter;
+import ru.practicum.stats.mapper.EndpointHitMapper;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.storage.HitImportRepository;
+import ru.practicum.stats.storage.HitImportRepository.ImportState;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Массовый импорт хитов из файла NDJSON или CSV.
+ * <p>
+ * Файл читается потоком и записывается частями по {@code stats.import.chunk-size} записей:
+ * каждая часть сохраняется протоколом COPY через {@link HitWriter#copy(List, Runnable)} одной транзакцией
+ * вместе с агрегатами, скетчами, битовыми картами и состоянием импорта в таблице hit_import.
+ * Если импорт прерван, повторный запрос с тем же идентификатором и тем же файлом пропускает
+ * уже зафиксированные записи и продолжает с первой незафиксированной. Завершённый импорт
+ * повторно не выполняется.
+ * <p>
+ * Пустые строки и строка заголовка CSV записями не считаются. Записи, не прошедшие валидацию,
+ * не сохраняются и учитываются как отклонённые. Схлопывание повторов к импорту не применяется.
+ */
+@Slf4j
+@Component
+public class HitImporter {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String CSV_HEADER = "app,uri,ip,timestamp";
+    private static final int MAX_ID_LENGTH = 255;
+    private static final int MAX_ERRORS = 100;
+
+    private final HitWriter hitWriter;
+    private final HitImportRepository importRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final Validator validator;
+    private final ObjectReader hitReader;
+
+    @Value("${stats.import.chunk-size:50000}")
+    private int chunkSize;
+
+    public HitImporter(HitWriter hitWriter, HitImportRepository importRepository,
+                       PlatformTransactionManager transactionManager, Validator validator, ObjectMapper objectMapper) {
+        this.hitWriter = hitWriter;
+        this.importRepository = importRepository;
+        this.transactionManager = transactionManager;
+        this.validator = validator;
+        this.hitReader = objectMapper.readerFor(EndpointHitDto.class);
+    }
+
+    /**
+     * Импортирует хиты из файла или продолжает прерванный импорт.
+     *
+     * @param importId идентификатор импорта, заданный клиентом
+     * @param format   формат файла
+     * @param body     содержимое файла в UTF-8
+     * @return состояние импорта после обработки файла
+     * @throws InvalidParameterException если идентификатор импорта некорректен
+     * @throws ConflictException         если тот же импорт одновременно выполняется другим запросом
+     * @throws IOException               если не удалось прочитать файл
+     */
+    public HitImportResultDto importHits(String importId, HitImportFormat format, InputStream body) throws IOException {
+        if (importId.isBlank() || importId.length() > MAX_ID_LENGTH) {
+            throw new InvalidParameterException("Идентификатор импорта должен содержать от 1 до " +
+                    MAX_ID_LENGTH + " символов");
+        }
+        ImportState state = importRepository.findOrCreate(importId);
+        if (state.completed()) {
+            log.info("Импорт {} уже завершён", importId);
+            return toDto(importId, state, List.of());
+        }
+        if (state.processed() > 0) {
+            log.info("Импорт {} продолжается с записи {}", importId, state.processed());
+        }
+
+        Chunk chunk = new Chunk();
+        List<HitErrorDto> errors = new ArrayList<>();
+        long index = 0;
+        boolean firstLine = true;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            boolean header = firstLine && format == HitImportFormat.CSV
+                    && line.strip().equalsIgnoreCase(CSV_HEADER);
+            firstLine = false;
+            if (header) {
+                continue;
+            }
+            if (index++ < state.processed()) {
+                continue;
+            }
+
+            chunk.records++;
+            try {
+                chunk.hits.add(parse(line, format));
+            } catch (InvalidParameterException e) {
+                chunk.rejected++;
+                if (errors.size() < MAX_ERRORS) {
+                    errors.add(new HitErrorDto((int) Math.min(index - 1, Integer.MAX_VALUE), e.getMessage()));
+                }
+            }
+            if (chunk.records >= chunkSize) {
+                state = flush(importId, state, chunk, false);
+                chunk = new Chunk();
+            }
+        }
+        state = flush(importId, state, chunk, true);
+        log.info("Импорт {} завершён: обработано {}, сохранено {}, отклонено {}",
+                importId, state.processed(), state.stored(), state.rejected());
+        return toDto(importId, state, errors);
+    }
+
+    /**
+     * @param importId идентификатор импорта
+     * @return состояние импорта или пустой Optional, если импорт не начинался
+     */
+    public Optional<HitImportResultDto> getStatus(String importId) {
+        return importRepository.find(importId).map(state -> toDto(importId, state, List.of()));
+    }
+
+    // фиксирует часть файла вместе с состоянием импорта
+    private ImportState flush(String importId, ImportState state, Chunk chunk, boolean completed) {
+        ImportState next = new ImportState(state.processed() + chunk.records, state.stored() + chunk.hits.size(),
+                state.rejected() + chunk.rejected, completed);
+        Runnable advance = () -> {
+            if (!importRepository.advance(importId, state, next)) {
+                throw new ConflictException("Импорт " + importId + " изменён другим запросом");
+            }
+        };
+        if (chunk.hits.isEmpty()) {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> advance.run());
+        } else {
+            hitWriter.copy(chunk.hits, advance);
+        }
+        log.info("Импорт {}: обработано {}, сохранено {}, отклонено {}",
+                importId, next.processed(), next.stored(), next.rejected());
+        return next;
+    }
+
+    private Hit parse(String line, HitImportFormat format) {
+        EndpointHitDto dto = format == HitImportFormat.NDJSON ? parseJson(line) : parseCsv(line);
+        Set<ConstraintViolation<EndpointHitDto>> violations = validator.validate(dto);
+        if (!violations.isEmpty()) {
+            throw new InvalidParameterException(violations.stream()
+                    .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        }
+        try {
+            return EndpointHitMapper.toEndpointHit(dto);
+        } catch (InvalidParameterException e) {
+            throw new InvalidParameterException("ip: " + e.getMessage());
+        }
+    }
+
+    private EndpointHitDto parseJson(String line) {
+        try {
+            return hitReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            throw new InvalidParameterException("некорректный JSON: " + e.getOriginalMessage());
+        }
+    }
+
+    private EndpointHitDto parseCsv(String line) {
+        List<String> fields = splitCsv(line);
+        if (fields.size() != 4) {
+            throw new InvalidParameterException("ожидается 4 поля " + CSV_HEADER + ", получено " + fields.size());
+        }
+        LocalDateTime timestamp;
+        try {
+            timestamp = fields.get(3).isEmpty() ? null : LocalDateTime.parse(fields.get(3), FORMATTER);
+        } catch (DateTimeParseException e) {
+            throw new InvalidParameterException("timestamp: ожидается формат yyyy-MM-dd HH:mm:ss");
+        }
+        return EndpointHitDto.builder()
+                .app(fields.get(0))
+                .uri(fields.get(1))
+                .ip(fields.get(2))
+                .timestamp(timestamp)
+                .build();
+    }
+
+    // разбор строки CSV: поля через запятую, в двойных кавычках допускаются запятые и удвоенные кавычки
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new InvalidParameterException("незакрытая кавычка");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static HitImportResultDto toDto(String importId, ImportState state, List<HitErrorDto> errors) {
+        return HitImportResultDto.builder()
+                .importId(importId)
+                .processed(state.processed())
+                .stored(state.stored())
+                .rejected(state.rejected())
+                .completed(state.completed())
+                .errors(errors)
+                .build();
+    }
+
+    // часть файла, фиксируемая одной транзакцией
+    private static final class Chunk {
+        private final List<Hit> hits = new ArrayList<>();
+        private long records;
+        private long rejected;
+    }
+}
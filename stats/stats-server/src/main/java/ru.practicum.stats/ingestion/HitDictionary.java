@@ -0,0 +1,89 @@
+package ru.practicum.stats.ingestion;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.bitmap.HitBitmaps;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.storage.HitDictionaryRepository;
+import ru.practicum.stats.storage.HitDictionaryRepository.Dictionary;
+import ru.practicum.stats.uri.UriIndex;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Кэш словарей сервисов, URI и IP для записи хитов.
+ * <p>
+ * Id известных значений берутся из памяти, в БД обращаются только за новыми значениями —
+ * одним запросом на пачку хитов. Id в словаре не меняются, поэтому кэш не требует инвалидации;
+ * при превышении {@code stats.dictionary.cache-size} записей он просто очищается.
+ * URI, за которыми пришлось обратиться в БД, добавляются в индекс {@link UriIndex}.
+ * Id IP нужны только битовым картам {@link HitBitmaps} и проставляются, если карты включены.
+ */
+@Component
+@RequiredArgsConstructor
+public class HitDictionary {
+    private final HitDictionaryRepository repository;
+    private final UriIndex uriIndex;
+    private final HitBitmaps hitBitmaps;
+    private final Map<String, Integer> appIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> uriIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> ipIds = new ConcurrentHashMap<>();
+
+    @Value("${stats.dictionary.cache-size:100000}")
+    private int cacheSize;
+
+    /**
+     * Проставляет хитам id сервиса, URI и, если включены битовые карты, IP, добавляя в словари новые значения.
+     * Должен вызываться до начала транзакции записи хитов.
+     *
+     * @param hits хиты с заполненными названиями сервиса, URI и IP
+     */
+    public void resolve(List<Hit> hits) {
+        Map<String, Integer> apps = lookup(Dictionary.APP, appIds, hits, Hit::getApp);
+        Map<String, Integer> uris = lookup(Dictionary.URI, uriIds, hits, Hit::getUri);
+        for (Hit hit : hits) {
+            hit.setAppId(apps.get(hit.getApp()));
+            hit.setUriId(uris.get(hit.getUri()));
+        }
+        if (hitBitmaps.isEnabled()) {
+            Map<String, Integer> ips = lookup(Dictionary.IP, ipIds, hits, Hit::getIp);
+            hits.forEach(hit -> hit.setIpId(ips.get(hit.getIp())));
+        }
+    }
+
+    private Map<String, Integer> lookup(Dictionary dictionary, Map<String, Integer> cache, List<Hit> hits,
+                                        Function<Hit, String> value) {
+        Map<String, Integer> ids = new HashMap<>();
+        SortedSet<String> missing = new TreeSet<>();
+        for (Hit hit : hits) {
+            String key = value.apply(hit);
+            Integer id = cache.get(key);
+            if (id != null) {
+                ids.put(key, id);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return ids;
+        }
+
+        Map<String, Integer> found = repository.findOrCreate(dictionary, missing);
+        if (dictionary == Dictionary.URI) {
+            uriIndex.add(found.keySet());
+        }
+        if (cache.size() + found.size() > cacheSize) {
+            cache.clear();
+        }
+        cache.putAll(found);
+        ids.putAll(found);
+        return ids;
+    }
+}
@@ -0,0 +1,250 @@
+package ru.practicum.stats.ingestion;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.model.Hit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Очередь отложенной записи хитов (write-behind).
+ * <p>
+ * В режиме {@link IngestionMode#ASYNC} хиты помещаются в ограниченную очередь в памяти,
+ * а фоновые писатели забирают их пачками и записывают через {@link HitWriter}.
+ * Пачка сбрасывается в БД, когда набрано {@code stats.ingestion.batch-size} хитов
+ * или с момента первого хита в пачке прошло {@code stats.ingestion.flush-interval-ms}.
+ * Пачка, которую не удалось записать за {@code stats.ingestion.max-retries} повторов, записывается
+ * по частям делением пополам, и отбрасываются только хиты, которые не записываются по отдельности;
+ * они считаются в метрике stats.ingestion.failed.
+ * При остановке приложения очередь дописывается в БД до конца.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HitIngestionQueue {
+    private final HitWriter hitWriter;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${stats.ingestion.mode:SYNC}")
+    private IngestionMode mode;
+    @Value("${stats.ingestion.queue-capacity:10000}")
+    private int capacity;
+    @Value("${stats.ingestion.overflow-policy:BLOCK}")
+    private OverflowPolicy overflowPolicy;
+    @Value("${stats.ingestion.writers:2}")
+    private int writersCount;
+    @Value("${stats.ingestion.batch-size:500}")
+    private int batchSize;
+    @Value("${stats.ingestion.flush-interval-ms:200}")
+    private long flushIntervalMs;
+    @Value("${stats.ingestion.max-retries:3}")
+    private int maxRetries;
+    @Value("${stats.ingestion.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMs;
+
+    private BlockingQueue<Hit> queue;
+    private final List<Thread> writers = new ArrayList<>();
+    private volatile boolean running;
+
+    private Counter droppedCounter;
+    private Counter spilledCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    void start() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        queue = new ArrayBlockingQueue<>(capacity);
+        droppedCounter = meterRegistry.counter("stats.ingestion.dropped");
+        spilledCounter = meterRegistry.counter("stats.ingestion.spilled");
+        failedCounter = meterRegistry.counter("stats.ingestion.failed");
+        Gauge.builder("stats.ingestion.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+
+        running = true;
+        for (int i = 0; i < writersCount; i++) {
+            Thread writer = new Thread(this::drainLoop, "hit-writer-" + i);
+            writer.start();
+            writers.add(writer);
+        }
+        log.info("Запущена асинхронная запись хитов: очередь {}, писателей {}, политика переполнения {}",
+                capacity, writersCount, overflowPolicy);
+    }
+
+    /**
+     * @return true, если включён асинхронный режим приёма хитов
+     */
+    public boolean isEnabled() {
+        return mode == IngestionMode.ASYNC;
+    }
+
+    /**
+     * Помещает хит в очередь с учётом политики переполнения.
+     *
+     * @param hit хит для записи
+     * @return {@link IngestionStatus#QUEUED}, если хит принят в очередь,
+     * {@link IngestionStatus#STORED}, если хит записан напрямую по политике {@link OverflowPolicy#SPILL},
+     * {@link IngestionStatus#DROPPED}, если хит отброшен
+     */
+    public IngestionStatus offer(Hit hit) {
+        if (queue.offer(hit)) {
+            return IngestionStatus.QUEUED;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                try {
+                    queue.put(hit);
+                    return IngestionStatus.QUEUED;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedCounter.increment();
+                    return IngestionStatus.DROPPED;
+                }
+            }
+            case SPILL -> {
+                spilledCounter.increment();
+                hitWriter.write(List.of(hit));
+                return IngestionStatus.STORED;
+            }
+            default -> {
+                droppedCounter.increment();
+                log.warn("Очередь хитов переполнена, хит на {} отброшен", hit.getUri());
+                return IngestionStatus.DROPPED;
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        log.info("Остановка асинхронной записи хитов, в очереди {} хитов", queue.size());
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMs);
+        for (Thread writer : writers) {
+            try {
+                writer.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!queue.isEmpty()) {
+            log.error("Не удалось дописать {} хитов при остановке", queue.size());
+        }
+    }
+
+    // цикл фонового писателя: собирает пачку и сбрасывает её в БД
+    private void drainLoop() {
+        List<Hit> batch = new ArrayList<>(batchSize);
+        boolean interrupted = false;
+        while (running || !queue.isEmpty()) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                // прерывание считается сигналом остановки, но очередь всё равно дописывается
+                interrupted = true;
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ждёт первый хит, затем добирает пачку до batchSize или до истечения flushIntervalMs
+    private void collectBatch(List<Hit> batch) throws InterruptedException {
+        Hit first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0) {
+                return;
+            }
+            Hit next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    // запись пачки с повторными попытками; если пачка так и не записана, она делится пополам,
+    // чтобы отбросить только хиты, которые не удаётся записать (например, с слишком длинным URI)
+    private void flush(List<Hit> batch) {
+        for (int attempt = 1; attempt <= maxRetries + 1; attempt++) {
+            try {
+                hitWriter.write(batch);
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Ошибка записи пачки из {} хитов (попытка {}): {}", batch.size(), attempt, e.getMessage());
+                if (attempt <= maxRetries && !sleepBeforeRetry(attempt)) {
+                    break;
+                }
+            }
+        }
+        if (batch.size() == 1) {
+            reject(batch.getFirst());
+            return;
+        }
+        log.error("Пачка из {} хитов не записана после {} попыток, запись по частям", batch.size(), maxRetries + 1);
+        bisect(batch);
+    }
+
+    // делит пачку пополам до отдельных хитов; каждая часть записывается одной попыткой
+    private void bisect(List<Hit> batch) {
+        int middle = batch.size() / 2;
+        for (List<Hit> part : List.of(batch.subList(0, middle), batch.subList(middle, batch.size()))) {
+            try {
+                hitWriter.write(part);
+            } catch (RuntimeException e) {
+                if (part.size() == 1) {
+                    reject(part.getFirst());
+                } else {
+                    bisect(part);
+                }
+            }
+        }
+    }
+
+    private void reject(Hit hit) {
+        failedCounter.increment();
+        log.error("Хит не записан и отброшен: app={}, uri={}, ip={}, timestamp={}",
+                hit.getApp(), hit.getUri(), hit.getIp(), hit.getTimestamp());
+    }
+
+    private boolean sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(flushIntervalMs * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package ru.practicum.stats.ingestion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.mapper.EndpointHitMapper;
+import ru.practicum.stats.model.Hit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Локальный журнал хитов (write-ahead log) для режима {@link IngestionMode#WAL}.
+ * <p>
+ * Хит дописывается в текущий сегмент — файл размером до {@code stats.wal.segment-size-mb} —
+ * и сбрасывается на диск до ответа клиенту. Потоки, дописавшие хиты
+ * одновременно, сбрасывают их на диск одним вызовом. Заполненный сегмент закрывается и создаётся новый.
+ * Номер сегмента не меньше времени его создания в миллисекундах, поэтому номера растут
+ * и после очистки каталога журнала.
+ * <p>
+ * Сегменты читает и удаляет после записи в БД {@link HitLogShipper}. Если неотгруженных сегментов
+ * накопилось {@code stats.wal.max-segments}, журнал перестаёт принимать хиты, и они записываются в БД напрямую.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HitLog {
+    private static final String ID_FILE = "log-id";
+    private static final String DEAD_LETTER = "dead-letter.ndjson";
+
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+
+    @Value("${stats.ingestion.mode:SYNC}")
+    private IngestionMode mode;
+    @Value("${stats.wal.dir:hit-log}")
+    private Path dir;
+    @Value("${stats.wal.segment-size-mb:64}")
+    private int segmentSizeMb;
+    @Value("${stats.wal.max-segments:64}")
+    private int maxSegments;
+    @Value("${stats.wal.log-id:}")
+    private String configuredId;
+
+    private final ConcurrentNavigableMap<Long, HitLogSegment> segments = new ConcurrentSkipListMap<>();
+    // текущий сегмент; заменяется только под блокировкой журнала
+    private volatile HitLogSegment active;
+    private String id;
+
+    private Counter appendedCounter;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+
+        Files.createDirectories(dir);
+        id = configuredId.isBlank() ? readOrCreateId() : configuredId;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(HitLogSegment.FILE_PREFIX) && name.endsWith(HitLogSegment.FILE_SUFFIX)) {
+                    long sequence = Long.parseLong(name.substring(HitLogSegment.FILE_PREFIX.length(),
+                            name.length() - HitLogSegment.FILE_SUFFIX.length()));
+                    segments.put(sequence, HitLogSegment.open(file, sequence));
+                }
+            }
+        }
+        // сегменты прошлого запуска только дочитываются: их конец мог быть оборван при падении
+        active = createSegment();
+
+        appendedCounter = meterRegistry.counter("stats.wal.appended");
+        rejectedCounter = meterRegistry.counter("stats.wal.rejected");
+        Gauge.builder("stats.wal.segments", segments, Map::size).register(meterRegistry);
+        log.info("Журнал хитов {} открыт в {}: сегментов от прошлых запусков {}", id, dir.toAbsolutePath(),
+                segments.size() - 1);
+    }
+
+    /**
+     * Идентификатор журнала, под которым в БД хранится его контрольная точка: {@code stats.wal.log-id}
+     * или, если он не задан, идентификатор, созданный при первом запуске и сохранённый в файле log-id
+     * каталога журнала. Так экземпляры сервера с разными каталогами журнала на одной БД
+     * не перезаписывают контрольные точки друг друга.
+     *
+     * @return идентификатор журнала
+     */
+    String getId() {
+        return id;
+    }
+
+    /**
+     * Дописывает в файл dead-letter.ndjson каталога журнала хит, который не удаётся записать в БД.
+     * Формат файла совпадает с NDJSON массового импорта, поэтому исправленные записи можно импортировать.
+     *
+     * @param hit хит
+     * @throws UncheckedIOException если файл не удалось дописать
+     */
+    void deadLetter(Hit hit) {
+        try {
+            String line = objectMapper.writeValueAsString(EndpointHitMapper.toEndpointHitDto(hit)) + "\n";
+            Files.writeString(dir.resolve(DEAD_LETTER), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return true, если хиты принимаются через журнал
+     */
+    public boolean isEnabled() {
+        return mode == IngestionMode.WAL;
+    }
+
+    /**
+     * Дописывает хит в журнал и сбрасывает его на диск.
+     *
+     * @param hit хит
+     * @return false, если журнал заполнен и хит нужно записать другим путём
+     */
+    public boolean append(Hit hit) {
+        return appendAll(List.of(hit)).isEmpty();
+    }
+
+    /**
+     * Дописывает хиты в журнал по порядку и сбрасывает их на диск одним вызовом.
+     *
+     * @param hits хиты
+     * @return хиты, не поместившиеся в заполненный журнал, — их нужно записать другим путём
+     */
+    public List<Hit> appendAll(List<Hit> hits) {
+        List<byte[]> payloads = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            payloads.add(HitLogSegment.encode(hit));
+        }
+        int appended = 0;
+        HitLogSegment segment;
+        synchronized (this) {
+            segment = active;
+            for (byte[] payload : payloads) {
+                if (!segment.append(payload)) {
+                    if (segments.size() >= maxSegments) {
+                        break;
+                    }
+                    segment = rotate();
+                    if (!segment.append(payload)) {
+                        throw new IllegalStateException("Хит размером " + payload.length +
+                                " байт больше сегмента журнала");
+                    }
+                }
+                appended++;
+            }
+        }
+        segment.force();
+        appendedCounter.increment(appended);
+        if (appended < hits.size()) {
+            rejectedCounter.increment(hits.size() - appended);
+        }
+        return hits.subList(appended, hits.size());
+    }
+
+    /**
+     * @param sequence номер сегмента
+     * @return номер первого сегмента, не меньшего указанного (существует всегда: текущий сегмент новее любого номера
+     * из контрольной точки)
+     */
+    long ceilingSequence(long sequence) {
+        Long ceiling = segments.ceilingKey(sequence);
+        return ceiling != null ? ceiling : active.getSequence();
+    }
+
+    /**
+     * @param sequence номер сегмента
+     * @return сегмент или null, если он уже удалён
+     */
+    HitLogSegment segment(long sequence) {
+        return segments.get(sequence);
+    }
+
+    /**
+     * @param sequence номер сегмента
+     * @return номер следующего сегмента или null, если сегмент последний
+     */
+    Long nextSequence(long sequence) {
+        return segments.higherKey(sequence);
+    }
+
+    /**
+     * @param segment сегмент
+     * @return true, если в сегмент больше не пишутся хиты
+     */
+    boolean isSealed(HitLogSegment segment) {
+        return segment != active;
+    }
+
+    /**
+     * Удаляет закрытые сегменты с номерами меньше указанного: все хиты из них уже записаны в БД.
+     *
+     * @param sequence номер первого неотгруженного сегмента
+     */
+    void deleteBefore(long sequence) {
+        for (HitLogSegment segment : segments.headMap(sequence).values()) {
+            if (!isSealed(segment)) {
+                continue;
+            }
+            segments.remove(segment.getSequence());
+            try {
+                segment.close();
+                Files.deleteIfExists(segment.getPath());
+            } catch (IOException e) {
+                log.warn("Не удалось удалить сегмент журнала {}: {}", segment.getPath(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (isEnabled()) {
+            active.force();
+            for (HitLogSegment segment : segments.values()) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    log.warn("Не удалось закрыть сегмент журнала {}: {}", segment.getPath(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private HitLogSegment rotate() {
+        HitLogSegment previous = active;
+        previous.force();
+        active = createSegment();
+        log.debug("Сегмент журнала {} заполнен, создан {}", previous.getSequence(), active.getSequence());
+        return active;
+    }
+
+    private HitLogSegment createSegment() {
+        long sequence = Math.max(System.currentTimeMillis(), segments.isEmpty() ? 0 : segments.lastKey() + 1);
+        try {
+            HitLogSegment segment = HitLogSegment.create(dir, sequence, segmentSizeMb * 1024 * 1024);
+            segments.put(sequence, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать сегмент журнала хитов в " + dir, e);
+        }
+    }
+
+    private String readOrCreateId() throws IOException {
+        Path file = dir.resolve(ID_FILE);
+        if (Files.exists(file)) {
+            return Files.readString(file).trim();
+        }
+        String created = "wal-" + UUID.randomUUID();
+        Files.writeString(file, created);
+        return created;
+    }
+}
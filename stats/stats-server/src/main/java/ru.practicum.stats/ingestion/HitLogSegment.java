@@ -0,0 +1,277 @@
+package ru.practicum.stats.ingestion;
+
+import ru.practicum.stats.model.Hit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Файл-сегмент журнала хитов размером не больше заданного.
+ * <p>
+ * Запись сегмента: длина данных (int), контрольная сумма CRC32C данных (int) и сами данные —
+ * время хита (секунды и наносекунды), сервис, URI и IP в UTF-8 с длиной перед каждой строкой.
+ * Записи дописываются в конец файла через {@link FileChannel}, поэтому конец файла или нулевая длина
+ * означает конец записей. Запись, оборванная при падении процесса, не проходит проверку контрольной суммы
+ * и вместе со всем, что после неё, при чтении отбрасывается.
+ * <p>
+ * Файл не отображается в память: после {@link #close()} и удаления файла его место на диске
+ * освобождается сразу, а не после сборки мусора.
+ * <p>
+ * Пишет в сегмент один поток (под блокировкой {@link HitLog}), читать можно параллельно:
+ * граница записанных данных публикуется через volatile-поле.
+ */
+class HitLogSegment {
+    static final String FILE_PREFIX = "hits-";
+    static final String FILE_SUFFIX = ".log";
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    // размер блока, которым записи читаются из файла
+    private static final int READ_CHUNK = 64 * 1024;
+
+    private final long sequence;
+    private final Path path;
+    private final FileChannel channel;
+    private final int capacity;
+    private volatile int written;
+    // доступ только под блокировкой сегмента
+    private int forced;
+
+    private HitLogSegment(long sequence, Path path, FileChannel channel, int capacity) {
+        this.sequence = sequence;
+        this.path = path;
+        this.channel = channel;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Создаёт пустой сегмент.
+     *
+     * @param dir      каталог журнала
+     * @param sequence номер сегмента
+     * @param size     размер файла в байтах
+     * @return новый сегмент
+     * @throws IOException при ошибке создания файла
+     */
+    static HitLogSegment create(Path dir, long sequence, int size) throws IOException {
+        Path path = dir.resolve(fileName(sequence));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new HitLogSegment(sequence, path, channel, size);
+    }
+
+    /**
+     * Открывает сегмент, оставшийся от предыдущего запуска; граница записанных данных
+     * определяется по последней целой записи.
+     *
+     * @param path     файл сегмента
+     * @param sequence номер сегмента
+     * @return открытый сегмент
+     * @throws IOException при ошибке чтения файла
+     */
+    static HitLogSegment open(Path path, long sequence) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            HitLogSegment segment = new HitLogSegment(sequence, path, channel, (int) channel.size());
+            int position = segment.parse(0, segment.capacity, Integer.MAX_VALUE, null);
+            segment.written = position;
+            segment.forced = position;
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param sequence номер сегмента
+     * @return имя файла сегмента; номера дополнены нулями, чтобы файлы сортировались по порядку записи
+     */
+    static String fileName(long sequence) {
+        return String.format("%s%019d%s", FILE_PREFIX, sequence, FILE_SUFFIX);
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return позиция, до которой в сегмент записаны целые записи
+     */
+    int getWritten() {
+        return written;
+    }
+
+    /**
+     * Дописывает хит в сегмент. Данные попадают в страничный кэш ОС; на диск их сбрасывает {@link #force()}.
+     *
+     * @param payload закодированный хит
+     * @return false, если запись не помещается в сегмент
+     */
+    boolean append(byte[] payload) {
+        int position = written;
+        if (capacity - position < HEADER_SIZE + payload.length) {
+            return false;
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt(checksum(ByteBuffer.wrap(payload))).put(payload).flip();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record, position + record.position());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось дописать сегмент журнала " + path, e);
+        }
+        written = position + record.limit();
+        return true;
+    }
+
+    /**
+     * Сбрасывает на диск всё записанное в сегмент. Вызовы из нескольких потоков объединяются:
+     * поток, пришедший позже, не делает ничего, если его запись уже сброшена другим потоком.
+     */
+    synchronized void force() {
+        int upTo = written;
+        if (upTo > forced) {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось сбросить на диск сегмент журнала " + path, e);
+            }
+            forced = upTo;
+        }
+    }
+
+    /**
+     * Читает хиты начиная с позиции.
+     *
+     * @param position позиция начала записи
+     * @param max      максимальное количество хитов
+     * @param out      список для прочитанных хитов
+     * @return позиция после последней прочитанной записи
+     */
+    int read(int position, int max, List<Hit> out) {
+        try {
+            return parse(position, written, max, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать сегмент журнала " + path, e);
+        }
+    }
+
+    /**
+     * Закрывает файл сегмента. После закрытия сегмент нельзя читать и дописывать.
+     *
+     * @throws IOException при ошибке закрытия файла
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Кодирует хит в данные записи сегмента.
+     *
+     * @param hit хит
+     * @return данные записи
+     */
+    static byte[] encode(Hit hit) {
+        byte[] app = hit.getApp().getBytes(StandardCharsets.UTF_8);
+        byte[] uri = hit.getUri().getBytes(StandardCharsets.UTF_8);
+        byte[] ip = hit.getIp().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(Long.BYTES + 4 * Integer.BYTES + app.length + uri.length + ip.length);
+        payload.putLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        payload.putInt(hit.getTimestamp().getNano());
+        putString(payload, app);
+        putString(payload, uri);
+        putString(payload, ip);
+        return payload.array();
+    }
+
+    // читает целые записи из [position, limit) блоками по READ_CHUNK; out == null — только найти конец записей
+    private int parse(int position, int limit, int max, List<Hit> out) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(0);
+        int chunkStart = position;
+        int count = 0;
+        while (count < max && position < limit) {
+            int offset = position - chunkStart;
+            if (chunk.limit() - offset < HEADER_SIZE) {
+                chunkStart = position;
+                chunk = load(position, Math.min(READ_CHUNK, limit - position));
+                offset = 0;
+                if (chunk.limit() < HEADER_SIZE) {
+                    break;
+                }
+            }
+            int length = chunk.getInt(offset);
+            if (length <= 0 || length > limit - position - HEADER_SIZE) {
+                break;
+            }
+            if (chunk.limit() - offset < HEADER_SIZE + length) {
+                chunkStart = position;
+                chunk = load(position, Math.min(Math.max(READ_CHUNK, HEADER_SIZE + length), limit - position));
+                offset = 0;
+                if (chunk.limit() < HEADER_SIZE + length) {
+                    break;
+                }
+            }
+            if (checksum(chunk.slice(offset + HEADER_SIZE, length)) != chunk.getInt(offset + Integer.BYTES)) {
+                break;
+            }
+            if (out != null) {
+                out.add(decode(chunk.slice(offset + HEADER_SIZE, length)));
+            }
+            position += HEADER_SIZE + length;
+            count++;
+        }
+        return position;
+    }
+
+    // читает из файла до length байт начиная с позиции; у конца файла прочитанных байт может быть меньше
+    private ByteBuffer load(int position, int length) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(length);
+        while (chunk.hasRemaining()) {
+            if (channel.read(chunk, position + chunk.position()) < 0) {
+                break;
+            }
+        }
+        return chunk.flip();
+    }
+
+    private static Hit decode(ByteBuffer payload) {
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(payload.getLong(), payload.getInt(), ZoneOffset.UTC);
+        return Hit.builder()
+                .timestamp(timestamp)
+                .app(getString(payload))
+                .uri(getString(payload))
+                .ip(getString(payload))
+                .build();
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        buffer.putInt(value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = new byte[buffer.getInt()];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(ByteBuffer data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,204 @@
+package ru.practicum.stats.ingestion;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.storage.HitLogCheckpointRepository;
+import ru.practicum.stats.storage.HitLogCheckpointRepository.Checkpoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Фоновая отгрузка локального журнала хитов {@link HitLog} в БД.
+ * <p>
+ * После старта приложения читает контрольную точку журнала (см. {@link HitLog#getId()}) и продолжает
+ * с неё: так хиты, не отгруженные до остановки или падения, записываются в БД при следующем запуске.
+ * Хиты читаются пачками до {@code stats.wal.batch-size} и записываются через {@link HitWriter}
+ * одной транзакцией вместе с новой контрольной точкой. Сегменты, прочитанные целиком, удаляются.
+ * Если БД недоступна, пачка повторяется с паузой, растущей до {@code stats.wal.max-retry-interval-ms}:
+ * хиты всё это время остаются в журнале.
+ * <p>
+ * Если БД отвергла пачку из-за её данных ({@link DataIntegrityViolationException}), записи пачки
+ * отгружаются по одной: отвергнутая запись не повторяется, а дописывается в dead-letter файл журнала
+ * (см. {@link HitLog#deadLetter(Hit)}), учитывается в метрике {@code stats.wal.dead-lettered}
+ * и пропускается, чтобы не останавливать отгрузку остальных хитов.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HitLogShipper {
+    private final HitLog hitLog;
+    private final HitWriter hitWriter;
+    private final HitLogCheckpointRepository checkpointRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${stats.wal.batch-size:1000}")
+    private int batchSize;
+    @Value("${stats.wal.poll-interval-ms:100}")
+    private long pollIntervalMs;
+    @Value("${stats.wal.max-retry-interval-ms:10000}")
+    private long maxRetryIntervalMs;
+
+    private Thread shipper;
+    private volatile boolean running;
+
+    private String logId;
+    private Counter shippedCounter;
+    private Counter deadLetteredCounter;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!hitLog.isEnabled()) {
+            return;
+        }
+
+        logId = hitLog.getId();
+        shippedCounter = meterRegistry.counter("stats.wal.shipped");
+        deadLetteredCounter = meterRegistry.counter("stats.wal.dead-lettered");
+        running = true;
+        shipper = new Thread(this::shipLoop, "hit-log-shipper");
+        shipper.start();
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (shipper == null) {
+            return;
+        }
+        running = false;
+        shipper.interrupt();
+        shipper.join();
+    }
+
+    private void shipLoop() {
+        Optional<Checkpoint> checkpoint = retry(() -> checkpointRepository.find(logId).orElse(new Checkpoint(0, 0)));
+        if (checkpoint.isEmpty()) {
+            return;
+        }
+        Checkpoint position = startPosition(checkpoint.get());
+        log.info("Отгрузка журнала хитов начата с сегмента {}, позиция {}", position.segment(), position.position());
+
+        List<Hit> batch = new ArrayList<>(batchSize);
+        while (running) {
+            HitLogSegment segment = hitLog.segment(position.segment());
+            int end = segment.read(position.position(), batchSize, batch);
+            if (!batch.isEmpty()) {
+                Checkpoint next = new Checkpoint(position.segment(), end);
+                Optional<Boolean> shipped = retry(() -> shipOrReject(batch, next));
+                if (shipped.isEmpty() || !shipped.get() && !isolate(segment, position, next)) {
+                    return;
+                }
+                batch.clear();
+                position = next;
+            } else if (hitLog.isSealed(segment) && end == segment.getWritten()) {
+                // сегмент закрыт и прочитан целиком: его конец не допишется, переходим к следующему
+                Checkpoint next = new Checkpoint(hitLog.nextSequence(segment.getSequence()), 0);
+                if (retry(() -> ship(List.of(), next)).isEmpty()) {
+                    return;
+                }
+                position = next;
+            } else if (!sleep(pollIntervalMs)) {
+                return;
+            }
+        }
+    }
+
+    // позиция продолжения: сегмент из контрольной точки или первый более новый, если тот уже удалён
+    private Checkpoint startPosition(Checkpoint checkpoint) {
+        if (hitLog.segment(checkpoint.segment()) != null) {
+            hitLog.deleteBefore(checkpoint.segment());
+            return checkpoint;
+        }
+        long sequence = hitLog.ceilingSequence(checkpoint.segment());
+        hitLog.deleteBefore(sequence);
+        return new Checkpoint(sequence, 0);
+    }
+
+    // запись пачки вместе с контрольной точкой и удаление сегментов, которые до неё отгружены целиком
+    private Checkpoint ship(List<Hit> batch, Checkpoint next) {
+        if (batch.isEmpty()) {
+            checkpointRepository.save(logId, next);
+        } else {
+            hitWriter.write(batch, () -> checkpointRepository.save(logId, next));
+        }
+        hitLog.deleteBefore(next.segment());
+        return next;
+    }
+
+    // запись пачки; false — БД отвергла данные пачки, и повторять её бессмысленно
+    private boolean shipOrReject(List<Hit> batch, Checkpoint next) {
+        try {
+            ship(batch, next);
+            shippedCounter.increment(batch.size());
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            log.warn("БД отвергла пачку из {} хитов журнала: {}", batch.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    // отгрузка записей сегмента от from до to по одной с переносом отвергнутых в dead-letter файл
+    private boolean isolate(HitLogSegment segment, Checkpoint from, Checkpoint to) {
+        List<Hit> record = new ArrayList<>(1);
+        int position = from.position();
+        while (position < to.position()) {
+            position = segment.read(position, 1, record);
+            Hit hit = record.remove(0);
+            Checkpoint next = new Checkpoint(from.segment(), position);
+            Optional<Boolean> shipped = retry(() -> shipOrReject(List.of(hit), next));
+            if (shipped.isEmpty()) {
+                return false;
+            }
+            if (!shipped.get()) {
+                if (retry(() -> {
+                    hitLog.deadLetter(hit);
+                    return hit;
+                }).isEmpty() || retry(() -> ship(List.of(), next)).isEmpty()) {
+                    return false;
+                }
+                deadLetteredCounter.increment();
+                log.error("Хит журнала перенесён в dead-letter файл: app={}, uri={}, ip={}, timestamp={}",
+                        hit.getApp(), hit.getUri(), hit.getIp(), hit.getTimestamp());
+            }
+        }
+        return true;
+    }
+
+    // повторяет действие, пока оно не выполнится; пустой результат — отгрузка остановлена
+    private <T> Optional<T> retry(Supplier<T> action) {
+        long interval = pollIntervalMs;
+        for (int attempt = 1; running; attempt++) {
+            try {
+                return Optional.of(action.get());
+            } catch (RuntimeException e) {
+                log.warn("Ошибка отгрузки журнала хитов (попытка {}): {}", attempt, e.getMessage());
+                if (!sleep(interval)) {
+                    break;
+                }
+                interval = Math.min(interval * 2, maxRetryIntervalMs);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
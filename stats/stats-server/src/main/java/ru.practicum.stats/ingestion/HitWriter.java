@@ -0,0 +1,85 @@
+package ru.practicum.stats.ingestion;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.bitmap.HitBitmaps;
+import ru.practicum.stats.cache.StatsResultCache;
+import ru.practicum.stats.hot.HotWindowCounters;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.storage.HitJdbcRepository;
+import ru.practicum.stats.storage.HitRollupRepository;
+import ru.practicum.stats.storage.HitSketchRepository;
+import ru.practicum.stats.topk.HeavyHitters;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Единая точка записи хитов в БД.
+ * <p>
+ * Используется как синхронным путём сохранения, так и фоновыми писателями
+ * {@link HitIngestionQueue}: каждый вызов {@link #write(List)} фиксируется одной транзакцией
+ * вместе с обновлением агрегатов, скетчей и битовых карт уникальных посещений.
+ * Id сервиса, URI и IP проставляются до начала транзакции через {@link HitDictionary},
+ * после фиксации хиты учитываются в {@link HotWindowCounters}, {@link HeavyHitters} и {@link StatsResultCache}.
+ */
+@Component
+@RequiredArgsConstructor
+public class HitWriter {
+    private final HitJdbcRepository hitJdbcRepository;
+    private final HitRollupRepository hitRollupRepository;
+    private final HitSketchRepository hitSketchRepository;
+    private final HitBitmaps hitBitmaps;
+    private final HitDictionary hitDictionary;
+    private final HotWindowCounters hotWindowCounters;
+    private final HeavyHitters heavyHitters;
+    private final StatsResultCache resultCache;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Сохраняет пачку хитов и обновляет агрегаты, скетчи и битовые карты одной транзакцией.
+     *
+     * @param hits хиты для сохранения
+     */
+    public void write(List<Hit> hits) {
+        write(hits, () -> {
+        });
+    }
+
+    /**
+     * Сохраняет пачку хитов и выполняет дополнительное действие в той же транзакции.
+     *
+     * @param hits          хиты для сохранения
+     * @param inTransaction действие, которое фиксируется вместе с хитами (например, контрольная точка журнала)
+     */
+    public void write(List<Hit> hits, Runnable inTransaction) {
+        write(hits, inTransaction, hitJdbcRepository::saveAll);
+    }
+
+    /**
+     * Сохраняет крупную пачку хитов протоколом COPY и выполняет дополнительное действие в той же транзакции.
+     * Агрегаты, скетчи и битовые карты обновляются так же, как при {@link #write(List, Runnable)}.
+     *
+     * @param hits          хиты для сохранения
+     * @param inTransaction действие, которое фиксируется вместе с хитами (например, состояние импорта)
+     */
+    public void copy(List<Hit> hits, Runnable inTransaction) {
+        write(hits, inTransaction, hitJdbcRepository::copyAll);
+    }
+
+    private void write(List<Hit> hits, Runnable inTransaction, Consumer<List<Hit>> insert) {
+        hitDictionary.resolve(hits);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            insert.accept(hits);
+            hitRollupRepository.addHits(hits);
+            hitSketchRepository.addHits(hits);
+            hitBitmaps.addHits(hits);
+            inTransaction.run();
+        });
+        hotWindowCounters.add(hits);
+        heavyHitters.onHitsWritten(hits);
+        resultCache.onHitsWritten(hits);
+    }
+}
@@ -0,0 +1,19 @@
+package ru.practicum.stats.ingestion;
+
+/**
+ * Режим приёма хитов.
+ */
+public enum IngestionMode {
+    /**
+     * Хит записывается в БД в потоке запроса.
+     */
+    SYNC,
+    /**
+     * Хит помещается в очередь в памяти и записывается фоновыми писателями.
+     */
+    ASYNC,
+    /**
+     * Хит дописывается в локальный журнал на диске и записывается в БД фоновой отгрузкой.
+     */
+    WAL
+}
@@ -0,0 +1,27 @@
+package ru.practicum.stats.ingestion;
+
+/**
+ * Результат приёма одного хита.
+ */
+public enum IngestionStatus {
+    /**
+     * Хит записан в БД.
+     */
+    STORED,
+    /**
+     * Хит принят в очередь и будет записан позже.
+     */
+    QUEUED,
+    /**
+     * Хит сохранён в локальный журнал на диске и будет записан в БД позже.
+     */
+    LOGGED,
+    /**
+     * Хит отброшен из-за переполнения очереди.
+     */
+    DROPPED,
+    /**
+     * Хит повторяет недавно принятый и не записывается (см. {@link ru.practicum.stats.dedup.HitDeduplicator}).
+     */
+    DEDUPLICATED
+}
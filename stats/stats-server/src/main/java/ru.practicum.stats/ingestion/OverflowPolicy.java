@@ -0,0 +1,19 @@
+package ru.practicum.stats.ingestion;
+
+/**
+ * Поведение очереди хитов при её переполнении.
+ */
+public enum OverflowPolicy {
+    /**
+     * Поток запроса ждёт освобождения места в очереди.
+     */
+    BLOCK,
+    /**
+     * Хит отбрасывается, увеличивается счётчик отброшенных хитов.
+     */
+    DROP,
+    /**
+     * Хит записывается в БД напрямую в потоке запроса, минуя очередь.
+     */
+    SPILL
+}
@@ -1,6 +1,7 @@
 package ru.practicum.stats.mapper;
 
 import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.exceptions.InvalidParameterException;
 import ru.practicum.stats.model.Hit;
 
 /**
@@ -15,12 +16,13 @@ public final class EndpointHitMapper {
      *
      * @param endpointHitDto DTO с информацией о запросе к эндпоинту
      * @return сущность EndpointHit для сохранения в БД
-     * @throws NullPointerException если endpointHitDto равен null
+     * @throws NullPointerException      если endpointHitDto равен null
+     * @throws InvalidParameterException если IP-адрес некорректен
      */
     public static Hit toEndpointHit(EndpointHitDto endpointHitDto) {
         return Hit.builder()
                 .app(endpointHitDto.getApp())
-                .ip(endpointHitDto.getIp())
+                .ip(IpAddresses.normalize(endpointHitDto.getIp()))
                 .timestamp(endpointHitDto.getTimestamp())
                 .uri(endpointHitDto.getUri())
                 .build();
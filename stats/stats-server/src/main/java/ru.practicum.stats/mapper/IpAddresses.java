@@ -0,0 +1,56 @@
+package ru.practicum.stats.mapper;
+
+import ru.practicum.stats.exceptions.InvalidParameterException;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.regex.Pattern;
+
+/**
+ * Утилитарный класс для разбора IP-адресов хитов.
+ * <p>
+ * IP хранятся в БД в колонке типа inet, поэтому строка из запроса должна быть
+ * литералом IPv4 или IPv6. Адрес приводится к каноническому виду, чтобы одинаковые
+ * адреса в разной записи считались одним и тем же посетителем.
+ */
+public final class IpAddresses {
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+    private static final Pattern IPV6 = Pattern.compile("[0-9a-fA-F:.]+");
+
+    private IpAddresses() {
+    }
+
+    /**
+     * Проверяет IP-адрес и приводит его к каноническому виду.
+     *
+     * @param ip IP-адрес в текстовом виде
+     * @return канонический текстовый вид адреса
+     * @throws InvalidParameterException если строка не является литералом IPv4 или IPv6
+     */
+    public static String normalize(String ip) {
+        if (ip == null || !isLiteral(ip)) {
+            throw new InvalidParameterException("Некорректный IP-адрес: " + ip);
+        }
+        try {
+            // для литерала адреса getByName не обращается к DNS
+            return InetAddress.getByName(ip).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new InvalidParameterException("Некорректный IP-адрес: " + ip);
+        }
+    }
+
+    private static boolean isLiteral(String ip) {
+        if (ip.indexOf(':') >= 0) {
+            return IPV6.matcher(ip).matches();
+        }
+        if (!IPV4.matcher(ip).matches()) {
+            return false;
+        }
+        for (String octet : ip.split("\\.")) {
+            if (Integer.parseInt(octet) > 255) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
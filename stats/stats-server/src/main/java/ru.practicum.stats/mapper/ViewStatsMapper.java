@@ -0,0 +1,43 @@
+package ru.practicum.stats.mapper;
+
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.storage.ViewStatsProjection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Утилитарный класс для преобразования строк статистики из хранилища в DTO ответа.
+ */
+public final class ViewStatsMapper {
+    private ViewStatsMapper() {
+    }
+
+    /**
+     * Преобразует строку статистики в DTO.
+     *
+     * @param proj строка статистики
+     * @return DTO статистики
+     */
+    public static ViewStatsDto toViewStatsDto(ViewStatsProjection proj) {
+        return ViewStatsDto.builder()
+                .app(proj.getApp())
+                .uri(proj.getUri())
+                .hits(proj.getHits())
+                .build();
+    }
+
+    /**
+     * Преобразует строки статистики в DTO с сохранением порядка.
+     *
+     * @param projections строки статистики
+     * @return список DTO статистики
+     */
+    public static List<ViewStatsDto> toViewStatsDtos(List<ViewStatsProjection> projections) {
+        List<ViewStatsDto> result = new ArrayList<>(projections.size());
+        for (ViewStatsProjection proj : projections) {
+            result.add(toViewStatsDto(proj));
+        }
+        return result;
+    }
+}
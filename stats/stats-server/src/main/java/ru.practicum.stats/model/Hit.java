@@ -4,6 +4,7 @@ package ru.practicum.stats.model;
 import jakarta.persistence.*;
 import lombok.Builder;
 import lombok.Data;
+import org.hibernate.annotations.ColumnTransformer;
 
 import java.time.LocalDateTime;
 
@@ -12,6 +13,11 @@ import java.time.LocalDateTime;
  * <p>
  * Содержит данные о том, что на определенный URI конкретного сервиса
  * был отправлен HTTP-запрос от пользователя с конкретного IP-адреса.
+ * <p>
+ * В БД сервис и URI хранятся целочисленными id из словарей app_dict и uri_dict,
+ * IP — значением типа inet. Названия сервиса и URI в сущности не сохраняются:
+ * id по ним проставляет {@link ru.practicum.stats.ingestion.HitDictionary} перед записью.
+ * Id IP из словаря ip_dict проставляется только для битовых карт уникальных посещений и в hit не хранится.
  */
 @Entity
 @Data
@@ -21,12 +27,19 @@ public class Hit {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
-    @Column(nullable = false)
+    @Column(name = "app_id", nullable = false)
+    private Integer appId;
+    @Column(name = "uri_id", nullable = false)
+    private Integer uriId;
+    @Transient
     private String app;
-    @Column(nullable = false)
+    @Transient
     private String uri;
-    @Column(nullable = false)
+    @Column(nullable = false, columnDefinition = "inet")
+    @ColumnTransformer(read = "host(ip)", write = "?::inet")
     private String ip;
+    @Transient
+    private Integer ipId;
     @Column(nullable = false)
     private LocalDateTime timestamp;
 }
@@ -0,0 +1,48 @@
+package ru.practicum.stats.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import ru.practicum.stats.exceptions.InvalidParameterException;
+
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Размер бакета временного ряда просмотров.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum Interval {
+    MINUTE(ChronoUnit.MINUTES, List.of(ChronoUnit.MINUTES)),
+    HOUR(ChronoUnit.HOURS, List.of(ChronoUnit.HOURS, ChronoUnit.MINUTES)),
+    DAY(ChronoUnit.DAYS, List.of(ChronoUnit.HOURS, ChronoUnit.MINUTES));
+
+    private final ChronoUnit unit;
+    /**
+     * Гранулярности агрегатов, бакеты которых целиком попадают в один бакет ряда.
+     */
+    private final List<ChronoUnit> rollupGranularities;
+
+    /**
+     * @return имя поля для date_trunc в PostgreSQL
+     */
+    public String getSqlField() {
+        return name().toLowerCase();
+    }
+
+    /**
+     * Разбирает значение параметра запроса без учёта регистра.
+     *
+     * @param value значение параметра, например "hour"
+     * @return размер бакета
+     * @throws InvalidParameterException если значение не поддерживается
+     */
+    public static Interval from(String value) {
+        for (Interval interval : values()) {
+            if (interval.name().equalsIgnoreCase(value)) {
+                return interval;
+            }
+        }
+        throw new InvalidParameterException("неизвестное значение interval: " + value);
+    }
+}
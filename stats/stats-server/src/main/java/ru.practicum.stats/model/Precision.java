@@ -0,0 +1,33 @@
+package ru.practicum.stats.model;
+
+import ru.practicum.stats.exceptions.InvalidParameterException;
+
+/**
+ * Точность подсчёта уникальных посещений.
+ */
+public enum Precision {
+    /**
+     * Точный подсчёт через COUNT(DISTINCT ip) по таблице hit.
+     */
+    EXACT,
+    /**
+     * Приближённый подсчёт по скетчам HyperLogLog (ошибка около 1.6%).
+     */
+    APPROXIMATE;
+
+    /**
+     * Разбирает значение параметра запроса без учёта регистра.
+     *
+     * @param value значение параметра, например "approximate"
+     * @return точность подсчёта
+     * @throws InvalidParameterException если значение не поддерживается
+     */
+    public static Precision from(String value) {
+        for (Precision precision : values()) {
+            if (precision.name().equalsIgnoreCase(value)) {
+                return precision;
+            }
+        }
+        throw new InvalidParameterException("неизвестное значение precision: " + value);
+    }
+}
@@ -0,0 +1,149 @@
+package ru.practicum.stats.partition;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.archive.HitArchiver;
+import ru.practicum.stats.cache.StatsResultCache;
+import ru.practicum.stats.storage.HitBitmapRepository;
+import ru.practicum.stats.storage.HitPartitionRepository;
+import ru.practicum.stats.storage.HitRollupRepository;
+import ru.practicum.stats.storage.HitSketchRepository;
+import ru.practicum.stats.topk.HeavyHitters;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Обслуживание дневных секций таблицы hit.
+ * <p>
+ * При старте и затем по расписанию {@code stats.partition.maintenance-cron}:
+ * - создаёт секции на сегодня и {@code stats.partition.premake-days} дней вперёд,
+ * а также на дни, хиты за которые попали в секцию по умолчанию;
+ * - если включено хранение с ограничением ({@code stats.retention.enabled}),
+ * удаляет секции старше {@code stats.retention.days} дней целиком, без построчного DELETE,
+ * и вместе с ними агрегаты, скетчи, битовые карты и сегменты архива за те же дни,
+ * чтобы ответы /stats оставались согласованными.
+ * <p>
+ * Удаление секции блокирует таблицу hit целиком, поэтому каждая секция удаляется отдельной короткой
+ * транзакцией, ожидающей блокировку не дольше {@code stats.partition.lock-timeout-ms}: если таблицу
+ * занимают долгие запросы, секция удаляется при следующем обслуживании, а запись хитов и чтение
+ * статистики не выстраиваются в очередь за ожидающим удалением.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HitPartitionManager {
+    private final HitPartitionRepository partitionRepository;
+    private final HitRollupRepository rollupRepository;
+    private final HitSketchRepository sketchRepository;
+    private final HitBitmapRepository bitmapRepository;
+    private final HeavyHitters heavyHitters;
+    private final StatsResultCache resultCache;
+    private final HitArchiver hitArchiver;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${stats.partition.premake-days:7}")
+    private int premakeDays;
+    @Value("${stats.partition.lock-timeout-ms:5000}")
+    private long lockTimeoutMs;
+    @Value("${stats.retention.enabled:false}")
+    private boolean retentionEnabled;
+    @Value("${stats.retention.days:90}")
+    private int retentionDays;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${stats.partition.maintenance-cron:0 0 * * * *}")
+    public void maintain() {
+        try {
+            inMaintenanceTransaction(this::createMissingPartitions);
+            if (retentionEnabled) {
+                applyRetention();
+            }
+        } catch (RuntimeException e) {
+            log.error("Ошибка обслуживания секций таблицы hit", e);
+        }
+    }
+
+    private void createMissingPartitions() {
+        LocalDate today = LocalDate.now();
+        LocalDate oldestKept = retentionEnabled ? retentionCutoff().toLocalDate() : LocalDate.MIN;
+
+        Set<LocalDate> existing = new HashSet<>(partitionRepository.findPartitionDays());
+        Set<LocalDate> needed = new TreeSet<>();
+        for (int i = 0; i <= premakeDays; i++) {
+            needed.add(today.plusDays(i));
+        }
+        for (LocalDate day : partitionRepository.findDaysInDefaultPartition()) {
+            if (!day.isBefore(oldestKept)) {
+                needed.add(day);
+            }
+        }
+        needed.removeAll(existing);
+
+        for (LocalDate day : needed) {
+            partitionRepository.createPartition(day);
+            log.info("Создана секция таблицы hit за {}", day);
+        }
+    }
+
+    private void applyRetention() {
+        LocalDateTime cutoff = retentionCutoff();
+
+        for (LocalDate day : partitionRepository.findPartitionDays()) {
+            if (day.plusDays(1).atStartOfDay().isAfter(cutoff)) {
+                continue;
+            }
+            try {
+                inMaintenanceTransaction(() -> {
+                    partitionRepository.setLockTimeout(lockTimeoutMs);
+                    partitionRepository.dropPartition(day);
+                });
+                log.info("Удалена секция таблицы hit за {}", day);
+            } catch (PessimisticLockingFailureException e) {
+                log.warn("Секция таблицы hit за {} не удалена: таблица занята дольше {} мс, " +
+                        "удаление повторится при следующем обслуживании", day, lockTimeoutMs);
+            }
+        }
+
+        inMaintenanceTransaction(() -> {
+            int deleted = partitionRepository.deleteFromDefaultPartitionBefore(cutoff);
+            if (deleted > 0) {
+                log.info("Из секции по умолчанию удалено {} хитов старше {}", deleted, cutoff);
+            }
+            rollupRepository.deleteBefore(cutoff);
+            sketchRepository.deleteBefore(cutoff);
+            bitmapRepository.deleteBefore(cutoff);
+            hitArchiver.deleteBefore(cutoff);
+        });
+        heavyHitters.evictBefore(cutoff);
+        resultCache.invalidateBefore(cutoff);
+    }
+
+    // транзакция под advisory-блокировкой обслуживания секций
+    private void inMaintenanceTransaction(Runnable action) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            partitionRepository.lockMaintenance();
+            action.run();
+        });
+    }
+
+    // начало самого старого хранимого дня
+    private LocalDateTime retentionCutoff() {
+        return LocalDate.now().minusDays(retentionDays).atStartOfDay();
+    }
+}
@@ -1,80 +1,440 @@
 package ru.practicum.stats.service;
 
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.archive.HitArchive;
+import ru.practicum.stats.bitmap.HitBitmaps;
+import ru.practicum.stats.cache.StatsQueryKey;
+import ru.practicum.stats.cache.StatsResultCache;
+import ru.practicum.stats.dedup.HitDeduplicator;
 import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.HitErrorDto;
+import ru.practicum.stats.dto.TimeSeriesDto;
+import ru.practicum.stats.dto.TimeSeriesPointDto;
 import ru.practicum.stats.dto.ViewStatsDto;
 import ru.practicum.stats.exceptions.InvalidDateException;
+import ru.practicum.stats.exceptions.InvalidParameterException;
+import ru.practicum.stats.hot.HotWindowCounters;
+import ru.practicum.stats.ingestion.HitIngestionQueue;
+import ru.practicum.stats.ingestion.HitLog;
+import ru.practicum.stats.ingestion.HitWriter;
+import ru.practicum.stats.ingestion.IngestionStatus;
 import ru.practicum.stats.mapper.EndpointHitMapper;
+import ru.practicum.stats.mapper.ViewStatsMapper;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.model.Interval;
+import ru.practicum.stats.model.Precision;
+import ru.practicum.stats.topk.HeavyHitters;
+import ru.practicum.stats.uri.UriIndex;
+import ru.practicum.stats.storage.HitRollupRepository;
+import ru.practicum.stats.storage.HitSketchRepository;
+import ru.practicum.stats.storage.RollupPlan;
 import ru.practicum.stats.storage.StatsRepository;
+import ru.practicum.stats.storage.StatsStreamRepository;
+import ru.practicum.stats.storage.TimeRange;
+import ru.practicum.stats.storage.TimeSeriesRepository;
+import ru.practicum.stats.storage.TopStatsRepository;
 import ru.practicum.stats.storage.ViewStatsProjection;
+import ru.practicum.stats.storage.ViewStatsRow;
+import ru.practicum.stats.storage.VisitorRow;
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Реализация сервиса статистики посещений.
  * <p>
- * Использует {@link StatsRepository} для доступа к данным
+ * Использует {@link StatsResultCache} для закрытых диапазонов, {@link HotWindowCounters} для недавних,
+ * {@link UriIndex} для раскрытия шаблонов URI, {@link StatsRepository}, {@link HitRollupRepository}
+ * и {@link HitSketchRepository} для чтения статистики из БД, {@link HitBitmaps} для точных уникальных посещений,
+ * {@link HitArchive} для дней, перенесённых в архив, {@link HitDeduplicator} для схлопывания повторов хитов,
+ * {@link HitWriter}, {@link HitIngestionQueue} и {@link HitLog} для записи хитов
  * и {@link EndpointHitMapper} для преобразования между DTO и сущностями.
  */
 @Service
 @RequiredArgsConstructor
 public class StatServiceImpl implements StatsService {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private final StatsRepository repository;
+    private final HitRollupRepository rollupRepository;
+    private final HitSketchRepository sketchRepository;
+    private final HitBitmaps hitBitmaps;
+    private final HitWriter hitWriter;
+    private final HitDeduplicator hitDeduplicator;
+    private final HitIngestionQueue ingestionQueue;
+    private final HitLog hitLog;
+    private final HotWindowCounters hotWindowCounters;
+    private final StatsStreamRepository streamRepository;
+    private final TopStatsRepository topRepository;
+    private final TimeSeriesRepository timeSeriesRepository;
+    private final HeavyHitters heavyHitters;
+    private final StatsResultCache resultCache;
+    private final HitArchive hitArchive;
+    private final UriIndex uriIndex;
+    private final PlatformTransactionManager transactionManager;
+    private final Validator validator;
+
+    @Value("${stats.rollup.use-for-queries:true}")
+    private boolean useRollups;
 
     @Override
-    public void addHit(EndpointHitDto endpointHitDto) {
-        repository.save(EndpointHitMapper.toEndpointHit(endpointHitDto));
+    public IngestionStatus addHit(EndpointHitDto endpointHitDto) {
+        Hit hit = EndpointHitMapper.toEndpointHit(endpointHitDto);
+
+        if (hitDeduplicator.isDuplicate(hit)) {
+            return IngestionStatus.DEDUPLICATED;
+        } else if (hitLog.isEnabled() && hitLog.append(hit)) {
+            return IngestionStatus.LOGGED;
+        } else if (ingestionQueue.isEnabled()) {
+            return ingestionQueue.offer(hit);
+        }
+
+        hitWriter.write(List.of(hit));
+        return IngestionStatus.STORED;
     }
 
     @Override
-    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
-        List<String> processedUris = (uris != null) ? uris : List.of();
+    public HitBatchResultDto addHits(List<EndpointHitDto> endpointHitDtos) {
+        List<Hit> hits = new ArrayList<>(endpointHitDtos.size());
+        List<HitErrorDto> errors = new ArrayList<>();
+
+        for (int i = 0; i < endpointHitDtos.size(); i++) {
+            EndpointHitDto dto = endpointHitDtos.get(i);
+            if (dto == null) {
+                errors.add(new HitErrorDto(i, "запись не должна быть null"));
+                continue;
+            }
+
+            Set<ConstraintViolation<EndpointHitDto>> violations = validator.validate(dto);
+            if (!violations.isEmpty()) {
+                errors.add(new HitErrorDto(i, formatViolations(violations)));
+                continue;
+            }
+
+            try {
+                hits.add(EndpointHitMapper.toEndpointHit(dto));
+            } catch (InvalidParameterException e) {
+                errors.add(new HitErrorDto(i, "ip: " + e.getMessage()));
+            }
+        }
+
+        List<Hit> deduplicated = hitDeduplicator.deduplicate(hits);
+        // в режиме журнала пачка дописывается в него, а в БД напрямую — только то, что не поместилось
+        List<Hit> unlogged = hitLog.isEnabled() ? hitLog.appendAll(deduplicated) : deduplicated;
+        if (!unlogged.isEmpty()) {
+            hitWriter.write(unlogged);
+        }
 
+        return HitBatchResultDto.builder()
+                .accepted(hits.size())
+                .rejected(errors.size())
+                .errors(errors)
+                .build();
+    }
+
+    @Override
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                       Precision precision) {
         if (start.isAfter(end)) {
             throw new InvalidDateException("Диапазон статистики указан некорректно");
         }
+        // шаблоны URI раскрываются до выбора источника, дальше запрос идёт как с явным списком
+        Optional<List<String>> expanded = uriIndex.expand((uris != null) ? uris : List.of());
+        if (expanded.isEmpty()) {
+            return List.of();
+        }
+        List<String> processedUris = expanded.get();
+        if (!resultCache.isEnabled()) {
+            return ViewStatsMapper.toViewStatsDtos(computeStats(start, end, processedUris, unique, precision));
+        }
 
+        LocalDateTime watermark = resultCache.watermark();
+        if (end.isBefore(watermark)) {
+            return ViewStatsMapper.toViewStatsDtos(getClosedStats(start, end, processedUris, unique, precision));
+        } else if (!unique && start.isBefore(watermark)) {
+            return ViewStatsMapper.toViewStatsDtos(getStatsWithCachedPrefix(start, end, processedUris, watermark));
+        }
+        return ViewStatsMapper.toViewStatsDtos(computeStats(start, end, processedUris, unique, precision));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                            Consumer<ViewStatsDto> consumer) {
+        if (start.isAfter(end)) {
+            throw new InvalidDateException("Диапазон статистики указан некорректно");
+        }
+        requireLiveRange(start, end);
+        // шаблоны URI раскрываются до выбора источника, дальше запрос идёт как с явным списком
+        Optional<List<String>> expanded = uriIndex.expand((uris != null) ? uris : List.of());
+        if (expanded.isEmpty()) {
+            return;
+        }
+        List<String> processedUris = expanded.get();
+
+        Consumer<ViewStatsProjection> rowConsumer = proj -> consumer.accept(ViewStatsMapper.toViewStatsDto(proj));
         if (unique) {
-            return processedUris.isEmpty()
-                    ? getUniqueStats(start, end)
-                    : getUniqueStatsByUris(start, end, processedUris);
+            streamRepository.streamUniqueStats(start, end, processedUris, rowConsumer);
         } else {
-            return processedUris.isEmpty()
-                    ? getAllStats(start, end)
-                    : getStatsByUris(start, end, processedUris);
+            RollupPlan plan = RollupPlan.of(start, end, useRollups ? HitRollupRepository.GRANULARITIES : List.of());
+            streamRepository.streamStats(plan, processedUris, rowConsumer);
         }
     }
 
-    // Получение общей статистики для всех uri
-    private List<ViewStatsDto> getAllStats(LocalDateTime start, LocalDateTime end) {
-        return convertProjections(repository.getAllViewStatsProjection(start, end));
+    @Override
+    public List<ViewStatsDto> getTopStats(LocalDateTime start, LocalDateTime end, String app, int limit,
+                                          Boolean unique, Precision precision) {
+        if (start.isAfter(end)) {
+            throw new InvalidDateException("Диапазон статистики указан некорректно");
+        }
+        if (limit <= 0) {
+            throw new InvalidParameterException("limit должен быть положительным: " + limit);
+        }
+        requireLiveRange(start, end);
+
+        if (unique && precision == Precision.APPROXIMATE) {
+            RollupPlan plan = RollupPlan.of(start, end, HitSketchRepository.GRANULARITIES);
+            return sketchRepository.getUniqueStats(plan, List.of()).stream()
+                    .filter(proj -> app == null || app.equals(proj.getApp()))
+                    .limit(limit)
+                    .map(ViewStatsMapper::toViewStatsDto)
+                    .toList();
+        } else if (unique) {
+            return ViewStatsMapper.toViewStatsDtos(topRepository.getTopUniqueStats(start, end, app, limit));
+        }
+
+        if (precision == Precision.APPROXIMATE) {
+            Optional<List<ViewStatsProjection>> top = heavyHitters.getTop(start, end, app, limit);
+            if (top.isPresent()) {
+                return ViewStatsMapper.toViewStatsDtos(top.get());
+            }
+        }
+        RollupPlan plan = RollupPlan.of(start, end, useRollups ? HitRollupRepository.GRANULARITIES : List.of());
+        return ViewStatsMapper.toViewStatsDtos(topRepository.getTopStats(plan, app, limit));
     }
 
-    // Получение общей статистики для указанных uri
-    private List<ViewStatsDto> getStatsByUris(LocalDateTime start, LocalDateTime end, List<String> uris) {
-        return convertProjections(repository.getViewStatsProjectionByUris(start, end, uris));
+    @Override
+    public List<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             Boolean unique, Interval interval) {
+        if (start.isAfter(end)) {
+            throw new InvalidDateException("Диапазон статистики указан некорректно");
+        }
+        requireLiveRange(start, end);
+        // шаблоны URI раскрываются до выбора источника, дальше запрос идёт как с явным списком
+        Optional<List<String>> expanded = uriIndex.expand((uris != null) ? uris : List.of());
+        if (expanded.isEmpty()) {
+            return List.of();
+        }
+        List<String> processedUris = expanded.get();
+
+        List<TimeSeriesRepository.TimeSeriesRow> rows;
+        if (unique) {
+            rows = timeSeriesRepository.getUniqueTimeSeries(start, end, processedUris, interval);
+        } else {
+            RollupPlan plan = RollupPlan.of(start, end, useRollups ? interval.getRollupGranularities() : List.of());
+            rows = timeSeriesRepository.getTimeSeries(plan, processedUris, interval);
+        }
+        return groupSeries(rows);
     }
 
-    // Получение уникальной статистики для всех uri
-    private List<ViewStatsDto> getUniqueStats(LocalDateTime start, LocalDateTime end) {
-        return convertProjections(repository.getViewStatsProjectionUnique(start, end));
+    @Override
+    public void requireLiveRange(LocalDateTime start, LocalDateTime end) {
+        if (!hitArchive.isEnabled() || !hitArchive.overlaps(new TimeRange(start, end, true))) {
+            return;
+        }
+        String cutoff = hitArchive.getCutoff().map(FORMATTER::format).orElse("?");
+        throw new InvalidParameterException(("Хиты до %s перенесены в архив и учитываются только в /stats: " +
+                "укажите start не раньше %s").formatted(cutoff, cutoff));
+    }
+
+    // Статистика закрытого диапазона: целиком из кэша результатов или из БД с сохранением в кэш
+    private List<ViewStatsProjection> getClosedStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                     boolean unique, Precision precision) {
+        StatsQueryKey key = StatsQueryKey.closed(start, end, uris, unique, unique ? precision : Precision.EXACT);
+        long version = resultCache.version();
+        StatsResultCache.CachedStats cached = resultCache.get(key);
+        if (cached != null) {
+            return cached.rows();
+        }
+
+        List<ViewStatsProjection> rows = computeStats(start, end, uris, unique, precision);
+        resultCache.put(key, new TimeRange(start, end, true), rows, version);
+        return rows;
+    }
+
+    // Статистика диапазона с открытым концом: закрытый префикс [start, watermark) берётся из кэша
+    // и досчитывается до нового водяного знака, хвост [watermark, end] считается заново
+    private List<ViewStatsProjection> getStatsWithCachedPrefix(LocalDateTime start, LocalDateTime end,
+                                                               List<String> uris, LocalDateTime watermark) {
+        StatsQueryKey key = StatsQueryKey.prefix(start, uris, false, Precision.EXACT);
+        long version = resultCache.version();
+        StatsResultCache.CachedStats cached = resultCache.get(key);
+
+        List<ViewStatsProjection> prefix;
+        if (cached == null || cached.range().getTo().isAfter(watermark)) {
+            prefix = getRangeStats(new TimeRange(start, watermark, false), uris);
+        } else if (cached.range().getTo().isBefore(watermark)) {
+            prefix = mergeStats(cached.rows(), getRangeStats(new TimeRange(cached.range().getTo(), watermark, false),
+                    uris));
+        } else {
+            prefix = cached.rows();
+        }
+        if (cached == null || prefix != cached.rows()) {
+            resultCache.put(key, new TimeRange(start, watermark, false), prefix, version);
+        }
+
+        return mergeStats(prefix, computeStats(watermark, end, uris, false, Precision.EXACT));
+    }
+
+    // Маршрутизация запроса статистики без кэша результатов: архив, если диапазон его затрагивает, и БД
+    private List<ViewStatsProjection> computeStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                   boolean unique, Precision precision) {
+        if (!hitArchive.isEnabled()) {
+            return computeLiveStats(start, end, uris, unique, precision);
+        }
+        TimeRange range = new TimeRange(start, end, true);
+        return hitArchive.read(() -> {
+            if (!hitArchive.overlaps(range)) {
+                return computeLiveStats(start, end, uris, unique, precision);
+            } else if (unique) {
+                return getUniqueStatsWithArchive(range, uris);
+            }
+            return mergeStats(computeLiveStats(start, end, uris, false, precision), hitArchive.getStats(range, uris));
+        });
+    }
+
+    // Уникальные посещения по архиву и БД: посетители объединяются, чтобы IP из обеих частей не считался дважды.
+    // Скетчи для архивных дней удалены, поэтому и приближённый запрос считается точно
+    private List<ViewStatsProjection> getUniqueStatsWithArchive(TimeRange range, List<String> uris) {
+        Map<AppUri, Set<String>> visitors = new HashMap<>();
+        Consumer<VisitorRow> collector = row ->
+                visitors.computeIfAbsent(new AppUri(row.app(), row.uri()), key -> new HashSet<>()).add(row.ip());
+        hitArchive.forEachVisitor(range, uris, collector);
+        readOnlyTransaction().executeWithoutResult(status ->
+                streamRepository.streamVisitors(range.getFrom(), range.getTo(), uris, collector));
+
+        List<ViewStatsProjection> result = new ArrayList<>(visitors.size());
+        visitors.forEach((key, ips) -> result.add(new ViewStatsRow(key.app(), key.uri(), (long) ips.size())));
+        result.sort(Comparator.comparingLong(ViewStatsProjection::getHits).reversed());
+        return result;
+    }
+
+    // Маршрутизация запроса статистики по данным в БД
+    private List<ViewStatsProjection> computeLiveStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                       boolean unique, Precision precision) {
+        if (unique && precision == Precision.APPROXIMATE) {
+            return getApproximateUniqueStats(start, end, uris);
+        } else if (unique && hitBitmaps.isEnabled()) {
+            return hitBitmaps.getUniqueStats(start, end, uris);
+        } else if (unique) {
+            return uris.isEmpty()
+                    ? repository.getViewStatsProjectionUnique(start, end)
+                    : repository.getViewStatsProjectionByUrisUnique(start, end, uris);
+        }
+
+        Optional<List<ViewStatsProjection>> hot = hotWindowCounters.getStats(start, end, uris);
+        if (hot.isPresent()) {
+            return hot.get();
+        } else if (useRollups) {
+            return getRollupStats(start, end, uris);
+        } else {
+            return uris.isEmpty()
+                    ? repository.getAllViewStatsProjection(start, end)
+                    : repository.getViewStatsProjectionByUris(start, end, uris);
+        }
+    }
+
+    // Получение общей статистики: целые бакеты из агрегатов, края диапазона из таблицы hit
+    private List<ViewStatsProjection> getRollupStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        RollupPlan plan = RollupPlan.of(start, end, HitRollupRepository.GRANULARITIES);
+        return rollupRepository.getStats(plan, uris);
+    }
+
+    // Получение общей статистики за полуоткрытый интервал, включая дни в архиве
+    private List<ViewStatsProjection> getRangeStats(TimeRange range, List<String> uris) {
+        RollupPlan plan = RollupPlan.of(List.of(range), useRollups ? HitRollupRepository.GRANULARITIES : List.of());
+        if (!hitArchive.isEnabled()) {
+            return rollupRepository.getStats(plan, uris);
+        }
+        return hitArchive.read(() ->
+                mergeStats(rollupRepository.getStats(plan, uris), hitArchive.getStats(range, uris)));
+    }
+
+    // Получение приближённой уникальной статистики: целые часы из скетчей, края диапазона из таблицы hit
+    private List<ViewStatsProjection> getApproximateUniqueStats(LocalDateTime start, LocalDateTime end,
+                                                                List<String> uris) {
+        RollupPlan plan = RollupPlan.of(start, end, HitSketchRepository.GRANULARITIES);
+        return sketchRepository.getUniqueStats(plan, uris);
     }
 
-    // Получение уникальной статистики для указанных uri
-    private List<ViewStatsDto> getUniqueStatsByUris(LocalDateTime start, LocalDateTime end, List<String> uris) {
-        return convertProjections(repository.getViewStatsProjectionByUrisUnique(start, end, uris));
+    private TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+
+    // сложение статистики по непересекающимся интервалам с сортировкой по убыванию просмотров
+    private List<ViewStatsProjection> mergeStats(List<ViewStatsProjection> first, List<ViewStatsProjection> second) {
+        if (second.isEmpty()) {
+            return first;
+        }
+        Map<AppUri, Long> hits = new HashMap<>();
+        for (ViewStatsProjection proj : first) {
+            hits.merge(new AppUri(proj.getApp(), proj.getUri()), proj.getHits(), Long::sum);
+        }
+        for (ViewStatsProjection proj : second) {
+            hits.merge(new AppUri(proj.getApp(), proj.getUri()), proj.getHits(), Long::sum);
+        }
+        List<ViewStatsProjection> merged = new ArrayList<>(hits.size());
+        hits.forEach((key, count) -> merged.add(new ViewStatsRow(key.app(), key.uri(), count)));
+        merged.sort(Comparator.comparingLong(ViewStatsProjection::getHits).reversed());
+        return merged;
+    }
+
+    // описание ошибок валидации одной записи в виде "поле: сообщение"
+    private String formatViolations(Set<ConstraintViolation<EndpointHitDto>> violations) {
+        return violations.stream()
+                .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    // строки приходят отсортированными по (app, uri, bucket), поэтому ряд собирается из подряд идущих строк
+    private List<TimeSeriesDto> groupSeries(List<TimeSeriesRepository.TimeSeriesRow> rows) {
+        List<TimeSeriesDto> series = new ArrayList<>();
+        TimeSeriesDto current = null;
+        for (TimeSeriesRepository.TimeSeriesRow row : rows) {
+            if (current == null || !current.getApp().equals(row.app()) || !current.getUri().equals(row.uri())) {
+                current = TimeSeriesDto.builder()
+                        .app(row.app())
+                        .uri(row.uri())
+                        .points(new ArrayList<>())
+                        .build();
+                series.add(current);
+            }
+            current.getPoints().add(new TimeSeriesPointDto(row.bucket(), row.hits()));
+        }
+        return series;
     }
 
-    // реобразование проекций в dto
-    private List<ViewStatsDto> convertProjections(List<ViewStatsProjection> projections) {
-        return projections.stream()
-                .map(proj -> ViewStatsDto.builder()
-                        .app(proj.getApp())
-                        .uri(proj.getUri())
-                        .hits(proj.getHits())
-                        .build())
-                .toList();
+    private record AppUri(String app, String uri) {
     }
 }
\ No newline at end of file
@@ -3,10 +3,16 @@ package ru.practicum.stats.service;
 import jakarta.validation.ValidationException;
 import org.springframework.dao.DataAccessException;
 import ru.practicum.stats.dto.EndpointHitDto;
+import ru.practicum.stats.dto.HitBatchResultDto;
+import ru.practicum.stats.dto.TimeSeriesDto;
 import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.ingestion.IngestionStatus;
+import ru.practicum.stats.model.Interval;
+import ru.practicum.stats.model.Precision;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Сервис для работы со статистикой посещений эндпоинтов.
@@ -19,22 +25,107 @@ public interface StatsService {
 
     /**
      * Сохраняет информацию о том, что к эндпоинту был отправлен запрос.
+     * <p>
+     * В асинхронном режиме приёма хит только помещается в очередь на запись,
+     * в режиме журнала — дописывается в локальный журнал на диске.
+     * Если включено схлопывание повторов, повтор недавно принятого хита не записывается.
      *
      * @param endpointHitDto данные о запросе к эндпоинту
+     * @return результат приёма хита: записан, поставлен в очередь, сохранён в журнал, отброшен или схлопнут
      * @throws ValidationException если данные запроса некорректны
      * @throws DataAccessException если произошла ошибка сохранения в БД
      */
-    void addHit(EndpointHitDto endpointHitDto);
+    IngestionStatus addHit(EndpointHitDto endpointHitDto);
+
+    /**
+     * Сохраняет пакет запросов к эндпоинтам одной транзакцией.
+     * <p>
+     * Каждая запись валидируется отдельно: некорректные записи не сохраняются
+     * и попадают в отчёт об ошибках, остальные записываются в БД.
+     * В режиме {@code stats.ingestion.mode=WAL} пачка дописывается в локальный журнал хитов
+     * и сбрасывается на диск до ответа, а в БД напрямую записываются только хиты, не поместившиеся в журнал.
+     * Повторы недавно принятых хитов считаются принятыми, но не записываются.
+     *
+     * @param endpointHitDtos пакет данных о запросах к эндпоинтам
+     * @return количество сохранённых и отклонённых записей с описанием ошибок
+     * @throws DataAccessException если произошла ошибка сохранения в БД
+     */
+    HitBatchResultDto addHits(List<EndpointHitDto> endpointHitDtos);
 
     /**
      * Получает статистику по посещениям с заданными параметрами фильтрации.
      *
-     * @param start  дата и время начала диапазона (включительно)
-     * @param end    дата и время конца диапазона (включительно)
-     * @param uris   список URI для фильтрации (может быть null или пустым)
-     * @param unique флаг учета только уникальных посещений по IP
+     * @param start     дата и время начала диапазона (включительно)
+     * @param end       дата и время конца диапазона (включительно)
+     * @param uris      список URI для фильтрации (может быть null или пустым); URI с * на конце — префикс
+     * @param unique    флаг учета только уникальных посещений по IP
+     * @param precision точность подсчёта уникальных посещений
      * @return список статистики по посещениям, отсортированный по количеству просмотров по убыванию
      * @throws ValidationException если диапазон дат некорректен
      */
-    List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique);
+    List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                Precision precision);
+
+    /**
+     * Передаёт статистику по посещениям построчно, не собирая весь результат в памяти.
+     * <p>
+     * Уникальные посещения считаются точно. Строки передаются в том же порядке,
+     * что и в {@link #getStats}.
+     *
+     * @param start    дата и время начала диапазона (включительно)
+     * @param end      дата и время конца диапазона (включительно)
+     * @param uris     список URI для фильтрации (может быть null или пустым); URI с * на конце — префикс
+     * @param unique   флаг учета только уникальных посещений по IP
+     * @param consumer обработчик строк статистики
+     * @throws ValidationException если диапазон дат некорректен или затрагивает дни, перенесённые в архив
+     */
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                     Consumer<ViewStatsDto> consumer);
+
+    /**
+     * Получает самые посещаемые URI за диапазон.
+     * <p>
+     * В точном режиме ограничение количества строк выполняется в БД. В приближённом режиме
+     * просмотры оцениваются по почасовым сводкам Space-Saving (оценка завышена не больше чем
+     * на N / stats.topk.capacity, где N — все хиты диапазона), а уникальные посещения — по скетчам HyperLogLog.
+     *
+     * @param start     дата и время начала диапазона (включительно)
+     * @param end       дата и время конца диапазона (включительно)
+     * @param app       название сервиса (null — все сервисы)
+     * @param limit     количество строк
+     * @param unique    флаг учета только уникальных посещений по IP
+     * @param precision точность подсчёта
+     * @return не больше limit строк статистики, отсортированных по количеству просмотров по убыванию
+     * @throws ValidationException если диапазон дат или limit некорректны или диапазон затрагивает дни,
+     *                             перенесённые в архив
+     */
+    List<ViewStatsDto> getTopStats(LocalDateTime start, LocalDateTime end, String app, int limit, Boolean unique,
+                                   Precision precision);
+
+    /**
+     * Получает временные ряды просмотров: количество за каждый бакет диапазона.
+     * <p>
+     * Все ряды считаются одним запросом к БД. Бакеты без просмотров в ряд не включаются;
+     * первый и последний бакеты учитывают только хиты, попавшие в диапазон.
+     *
+     * @param start    дата и время начала диапазона (включительно)
+     * @param end      дата и время конца диапазона (включительно)
+     * @param uris     список URI для фильтрации (может быть null или пустым); URI с * на конце — префикс
+     * @param unique   флаг учета только уникальных посещений по IP в каждом бакете
+     * @param interval размер бакета
+     * @return ряды, отсортированные по сервису и URI
+     * @throws ValidationException если диапазон дат некорректен или затрагивает дни, перенесённые в архив
+     */
+    List<TimeSeriesDto> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                      Interval interval);
+
+    /**
+     * Проверяет, что диапазон не затрагивает дни, перенесённые в архив: их учитывает только {@link #getStats},
+     * а {@link #streamStats}, {@link #getTopStats} и {@link #getTimeSeries} читают только БД.
+     *
+     * @param start дата и время начала диапазона (включительно)
+     * @param end   дата и время конца диапазона (включительно)
+     * @throws ValidationException если диапазон затрагивает дни в архиве; сообщение содержит границу архива
+     */
+    void requireLiveRange(LocalDateTime start, LocalDateTime end);
 }
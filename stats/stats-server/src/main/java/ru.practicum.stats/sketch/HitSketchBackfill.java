@@ -0,0 +1,54 @@
+package ru.practicum.stats.sketch;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.storage.HitSketchRepository;
+
+/**
+ * Первичное построение скетчей HyperLogLog по хитам, сохранённым до их появления.
+ * <p>
+ * Запускается в фоновом потоке после старта приложения, если таблица скетчей пуста,
+ * а хиты в БД уже есть. Каждая пачка хитов добавляется в скетчи отдельной транзакцией.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HitSketchBackfill {
+    private static final int BATCH_SIZE = 1000;
+
+    private final HitSketchRepository sketchRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (!sketchRepository.needsBackfill()) {
+            return;
+        }
+
+        Thread thread = new Thread(this::backfill, "hll-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void backfill() {
+        log.info("Построение скетчей уникальных посещений по сохранённым хитам");
+        TransactionTemplate readTx = new TransactionTemplate(transactionManager);
+        readTx.setReadOnly(true);
+        TransactionTemplate writeTx = new TransactionTemplate(transactionManager);
+        writeTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        try {
+            readTx.executeWithoutResult(status -> sketchRepository.forEachHitBatch(
+                    batch -> writeTx.executeWithoutResult(s -> sketchRepository.addHits(batch)), BATCH_SIZE));
+            log.info("Скетчи уникальных посещений построены");
+        } catch (RuntimeException e) {
+            log.error("Ошибка построения скетчей уникальных посещений", e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.practicum.stats.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Репозиторий для переноса хитов в архив.
+ * <p>
+ * Хиты дня читаются курсором порциями по {@code stats.stream.fetch-size}, поэтому методы чтения
+ * должны вызываться в транзакции. Список сегментов архива хранится в таблице hit_archive_segment
+ * и меняется в той же транзакции, что удаляет перенесённые хиты из hit.
+ */
+@Repository
+public class HitArchiveRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    public HitArchiveRepository(DataSource dataSource, @Value("${stats.stream.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    /**
+     * Запрещает запись в секцию дня до конца транзакции, чтобы хиты не появились в ней между
+     * чтением и удалением секции.
+     *
+     * @param day день секции
+     */
+    public void lockPartition(LocalDate day) {
+        jdbcTemplate.execute("LOCK TABLE " + HitPartitionRepository.partitionName(day) + " IN SHARE MODE");
+    }
+
+    /**
+     * Передаёт хиты дня в порядке сервиса, URI и времени.
+     *
+     * @param day      день
+     * @param consumer обработчик хитов
+     */
+    public void forEachHit(LocalDate day, Consumer<ArchivedHitRow> consumer) {
+        String sql = "SELECT a.app, u.uri, host(h.ip) AS ip, h.timestamp FROM " +
+                HitPartitionRepository.partitionName(day) + " h " +
+                "JOIN app_dict a ON a.id = h.app_id JOIN uri_dict u ON u.id = h.uri_id " +
+                "ORDER BY a.app, u.uri, h.timestamp";
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> consumer.accept(new ArchivedHitRow(rs.getString("app"),
+                rs.getString("uri"), rs.getString("ip"), rs.getTimestamp("timestamp").toLocalDateTime())));
+    }
+
+    /**
+     * @return имена сегментов архива, перенос которых зафиксирован
+     */
+    public List<String> findSegmentNames() {
+        return jdbcTemplate.queryForList("SELECT name FROM hit_archive_segment", String.class);
+    }
+
+    /**
+     * Регистрирует сегмент архива. Должен вызываться в транзакции, удаляющей перенесённые хиты.
+     *
+     * @param name    имя файла сегмента
+     * @param minTime время самого раннего хита
+     * @param maxTime время самого позднего хита
+     * @param hits    количество хитов
+     */
+    public void saveSegment(String name, LocalDateTime minTime, LocalDateTime maxTime, long hits) {
+        jdbcTemplate.update("INSERT INTO hit_archive_segment (name, min_time, max_time, hits) VALUES (?, ?, ?, ?)",
+                name, Timestamp.valueOf(minTime), Timestamp.valueOf(maxTime), hits);
+    }
+
+    /**
+     * Удаляет сегменты архива с хитами только раньше границы хранения.
+     *
+     * @param cutoff граница хранения
+     * @return имена удалённых сегментов
+     */
+    public List<String> deleteSegmentsBefore(LocalDateTime cutoff) {
+        return jdbcTemplate.queryForList("DELETE FROM hit_archive_segment WHERE max_time < ? RETURNING name",
+                String.class, Timestamp.valueOf(cutoff));
+    }
+
+    /**
+     * Хит, прочитанный для переноса в архив.
+     */
+    public record ArchivedHitRow(String app, String uri, String ip, LocalDateTime timestamp) {
+    }
+}
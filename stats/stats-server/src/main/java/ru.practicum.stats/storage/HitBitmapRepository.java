@@ -0,0 +1,355 @@
+package ru.practicum.stats.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.model.Hit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Репозиторий дневных битовых карт Roaring с id IP-адресов (таблица hit_ip_bitmap).
+ * <p>
+ * Для каждой тройки (id сервиса, id URI, день) хранится множество id IP из словаря ip_dict.
+ * Карты обновляются в транзакции вставки хитов так же, как скетчи {@link HitSketchRepository}:
+ * строки сначала создаются пустыми, затем блокируются в фиксированном порядке, объединяются
+ * с новыми id и перезаписываются. Количество уникальных посещений за целые дни — мощность
+ * объединения карт, поэтому считается точно без чтения хитов.
+ * <p>
+ * Карты дней раньше {@code covered_from} из таблицы hit_ip_bitmap_coverage могут быть неполными
+ * (хиты сохранены до появления карт), такие дни читаются из таблицы hit, пока их не заполнит
+ * {@link ru.practicum.stats.bitmap.HitBitmaps}.
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitBitmapRepository {
+    /**
+     * Гранулярность битовых карт.
+     */
+    public static final List<ChronoUnit> GRANULARITIES = List.of(ChronoUnit.DAYS);
+
+    /**
+     * Значение covered_from, когда карты всех дней полные.
+     */
+    public static final LocalDate COVERED_ALL = LocalDate.EPOCH;
+
+    private static final String INSERT_EMPTY = "INSERT INTO hit_ip_bitmap (app_id, uri_id, day, ips) " +
+            "VALUES (?, ?, ?, ?) ON CONFLICT (app_id, uri_id, day) DO NOTHING";
+    private static final String UPDATE_BITMAP = "UPDATE hit_ip_bitmap SET ips = ? " +
+            "WHERE app_id = ? AND uri_id = ? AND day = ?";
+
+    private static final Comparator<BitmapKey> KEY_ORDER = Comparator.comparing(BitmapKey::appId)
+            .thenComparing(BitmapKey::uriId)
+            .thenComparing(BitmapKey::day);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Добавляет id IP хитов в карты соответствующих дней.
+     * Должен вызываться в транзакции, в которой хиты вставляются в таблицу hit.
+     *
+     * @param hits сохраняемые хиты с проставленными id сервиса, URI и IP
+     */
+    public void addHits(List<Hit> hits) {
+        Map<BitmapKey, RoaringBitmap> bitmaps = new TreeMap<>(KEY_ORDER);
+        for (Hit hit : hits) {
+            BitmapKey key = new BitmapKey(hit.getAppId(), hit.getUriId(), hit.getTimestamp().toLocalDate());
+            bitmaps.computeIfAbsent(key, k -> new RoaringBitmap()).add(hit.getIpId());
+        }
+        merge(bitmaps);
+    }
+
+    /**
+     * Объединяет карты с сохранёнными в БД. Должен вызываться в транзакции.
+     *
+     * @param bitmaps карты, упорядоченные по ключу
+     */
+    private void merge(Map<BitmapKey, RoaringBitmap> bitmaps) {
+        if (bitmaps.isEmpty()) {
+            return;
+        }
+
+        byte[] empty = toBytes(new RoaringBitmap());
+        List<Object[]> insertArgs = new ArrayList<>(bitmaps.size());
+        for (BitmapKey key : bitmaps.keySet()) {
+            insertArgs.add(new Object[]{key.appId(), key.uriId(), Date.valueOf(key.day()), empty});
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_EMPTY, insertArgs);
+
+        Map<BitmapKey, RoaringBitmap> stored = lockBitmaps(bitmaps.keySet());
+
+        List<Object[]> updateArgs = new ArrayList<>(bitmaps.size());
+        bitmaps.forEach((key, ips) -> {
+            RoaringBitmap bitmap = stored.getOrDefault(key, new RoaringBitmap());
+            bitmap.or(ips);
+            updateArgs.add(new Object[]{toBytes(bitmap), key.appId(), key.uriId(), Date.valueOf(key.day())});
+        });
+        jdbcTemplate.getJdbcTemplate().batchUpdate(UPDATE_BITMAP, updateArgs);
+    }
+
+    /**
+     * Точно считает уникальные IP по плану: полные дни берутся из карт, края диапазона и дни
+     * раньше границы полноты карт читаются из таблицы hit.
+     *
+     * @param plan        план разбиения диапазона с гранулярностью {@link #GRANULARITIES}
+     * @param uris        список URI для фильтрации (пустой — без фильтра)
+     * @param coveredFrom начало первого дня с полными картами
+     * @return статистика уникальных посещений, отсортированная по убыванию
+     */
+    public List<ViewStatsProjection> getUniqueStats(RollupPlan plan, List<String> uris, LocalDateTime coveredFrom) {
+        List<TimeRange> rawRanges = new ArrayList<>(plan.getRawRanges());
+        List<TimeRange> days = new ArrayList<>();
+        for (TimeRange range : plan.getBuckets(ChronoUnit.DAYS)) {
+            LocalDateTime split = range.getFrom().isAfter(coveredFrom) ? range.getFrom()
+                    : range.getTo().isBefore(coveredFrom) ? range.getTo() : coveredFrom;
+            TimeRange uncovered = new TimeRange(range.getFrom(), split, false);
+            TimeRange covered = new TimeRange(split, range.getTo(), false);
+            if (!uncovered.isEmpty()) {
+                rawRanges.add(uncovered);
+            }
+            if (!covered.isEmpty()) {
+                days.add(covered);
+            }
+        }
+
+        Map<AppUri, Visitors> groups = new HashMap<>();
+        if (!rawRanges.isEmpty()) {
+            // IP, которых ещё нет в словаре, не могут быть в картах и считаются отдельно
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            String sql = "SELECT a.app, u.uri, e.ip_id FROM (SELECT DISTINCT h.app_id, h.uri_id, d.id AS ip_id, " +
+                    "CASE WHEN d.id IS NULL THEN h.ip END AS ip FROM hit h LEFT JOIN ip_dict d ON d.ip = h.ip " +
+                    "WHERE (" + HitRollupRepository.rangeCondition("h.timestamp", rawRanges, "RAW", params) + ")" +
+                    HitRollupRepository.uriFilter(uris, params) + ") e " +
+                    "JOIN app_dict a ON a.id = e.app_id JOIN uri_dict u ON u.id = e.uri_id";
+            jdbcTemplate.query(sql, params, (RowCallbackHandler) rs -> {
+                Visitors visitors = groups.computeIfAbsent(new AppUri(rs.getString("app"), rs.getString("uri")),
+                        k -> new Visitors());
+                int ipId = rs.getInt("ip_id");
+                if (rs.wasNull()) {
+                    visitors.unknown++;
+                } else {
+                    visitors.ips.add(ipId);
+                }
+            });
+        }
+
+        if (!days.isEmpty()) {
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            String sql = "SELECT a.app, u.uri, b.ips FROM hit_ip_bitmap b " +
+                    "JOIN app_dict a ON a.id = b.app_id JOIN uri_dict u ON u.id = b.uri_id WHERE (" +
+                    dayCondition(days, params) + ")" + HitRollupRepository.uriFilter(uris, params);
+            jdbcTemplate.query(sql, params, (RowCallbackHandler) rs ->
+                    groups.computeIfAbsent(new AppUri(rs.getString("app"), rs.getString("uri")), k -> new Visitors())
+                            .ips.or(fromBytes(rs.getBytes("ips"))));
+        }
+
+        List<ViewStatsProjection> result = new ArrayList<>(groups.size());
+        groups.forEach((key, visitors) -> result.add(new ViewStatsRow(key.app(), key.uri(),
+                visitors.ips.getLongCardinality() + visitors.unknown)));
+        result.sort(Comparator.comparing(ViewStatsProjection::getHits).reversed());
+        return result;
+    }
+
+    /**
+     * Создаёт запись о полноте карт, если её нет: если хиты уже есть, полными считаются только
+     * карты дней после последнего хита, иначе — карты всех дней.
+     *
+     * @param today текущая дата
+     */
+    public void initCoverage(LocalDate today) {
+        jdbcTemplate.update("INSERT INTO hit_ip_bitmap_coverage (id, covered_from) " +
+                        "SELECT 1, CASE WHEN max(timestamp) IS NULL THEN :all " +
+                        "ELSE GREATEST(:today, CAST(max(timestamp) AS DATE)) + 1 END FROM hit " +
+                        "ON CONFLICT (id) DO NOTHING",
+                new MapSqlParameterSource("all", Date.valueOf(COVERED_ALL)).addValue("today", Date.valueOf(today)));
+    }
+
+    /**
+     * Удаляет запись о полноте карт: пока карты не обновляются при записи хитов, полными они быть не могут.
+     */
+    public void resetCoverage() {
+        jdbcTemplate.getJdbcTemplate().update("DELETE FROM hit_ip_bitmap_coverage");
+    }
+
+    /**
+     * @return начало первого дня с полными картами или пустой Optional, если записи о полноте нет
+     */
+    public Optional<LocalDate> findCoveredFrom() {
+        List<LocalDate> days = jdbcTemplate.getJdbcTemplate().query(
+                "SELECT covered_from FROM hit_ip_bitmap_coverage WHERE id = 1",
+                (rs, rowNum) -> rs.getDate("covered_from").toLocalDate());
+        return days.stream().findFirst();
+    }
+
+    /**
+     * Блокирует запись о полноте карт до конца транзакции.
+     *
+     * @return начало первого дня с полными картами или пустой Optional, если записи нет
+     */
+    public Optional<LocalDate> lockCoveredFrom() {
+        List<LocalDate> days = jdbcTemplate.getJdbcTemplate().query(
+                "SELECT covered_from FROM hit_ip_bitmap_coverage WHERE id = 1 FOR UPDATE",
+                (rs, rowNum) -> rs.getDate("covered_from").toLocalDate());
+        return days.stream().findFirst();
+    }
+
+    /**
+     * @param day новое начало первого дня с полными картами
+     */
+    public void setCoveredFrom(LocalDate day) {
+        jdbcTemplate.getJdbcTemplate().update("UPDATE hit_ip_bitmap_coverage SET covered_from = ? WHERE id = 1",
+                Date.valueOf(day));
+    }
+
+    /**
+     * @param day день
+     * @return последний день раньше указанного, за который есть хиты
+     */
+    public Optional<LocalDate> findLastHitDayBefore(LocalDate day) {
+        Timestamp last = jdbcTemplate.getJdbcTemplate().queryForObject(
+                "SELECT max(timestamp) FROM hit WHERE timestamp < ?",
+                Timestamp.class, Timestamp.valueOf(day.atStartOfDay()));
+        return Optional.ofNullable(last).map(time -> time.toLocalDateTime().toLocalDate());
+    }
+
+    /**
+     * Добавляет в словарь ip_dict IP всех хитов за день. Выполняется отдельной транзакцией.
+     *
+     * @param day день
+     */
+    public void addDayIps(LocalDate day) {
+        jdbcTemplate.getJdbcTemplate().update("INSERT INTO ip_dict (ip) SELECT DISTINCT ip FROM hit " +
+                        "WHERE timestamp >= ? AND timestamp < ? ORDER BY ip ON CONFLICT DO NOTHING",
+                Timestamp.valueOf(day.atStartOfDay()), Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+    }
+
+    /**
+     * Строит карты дня по хитам из БД и объединяет их с сохранёнными.
+     * Должен вызываться в транзакции после {@link #addDayIps(LocalDate)}.
+     *
+     * @param day день
+     */
+    public void backfillDay(LocalDate day) {
+        Map<BitmapKey, RoaringBitmap> bitmaps = new TreeMap<>(KEY_ORDER);
+        jdbcTemplate.getJdbcTemplate().query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT h.app_id, h.uri_id, d.id AS ip_id FROM hit h " +
+                    "JOIN ip_dict d ON d.ip = h.ip WHERE h.timestamp >= ? AND h.timestamp < ?");
+            ps.setTimestamp(1, Timestamp.valueOf(day.atStartOfDay()));
+            ps.setTimestamp(2, Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+            ps.setFetchSize(10_000);
+            return ps;
+        }, (RowCallbackHandler) rs -> bitmaps.computeIfAbsent(
+                new BitmapKey(rs.getInt("app_id"), rs.getInt("uri_id"), day), k -> new RoaringBitmap())
+                .add(rs.getInt("ip_id")));
+        bitmaps.values().forEach(RoaringBitmap::runOptimize);
+        merge(bitmaps);
+    }
+
+    /**
+     * Удаляет карты дней раньше границы хранения.
+     *
+     * @param cutoff граница хранения, выровненная по началу дня
+     */
+    public void deleteBefore(LocalDateTime cutoff) {
+        jdbcTemplate.getJdbcTemplate().update("DELETE FROM hit_ip_bitmap WHERE day < ?",
+                Date.valueOf(cutoff.toLocalDate()));
+    }
+
+    /**
+     * Удаляет карты дней в интервале [from, to).
+     *
+     * @param from начало интервала, выровненное по началу дня
+     * @param to   конец интервала, выровненный по началу дня
+     */
+    public void deleteRange(LocalDateTime from, LocalDateTime to) {
+        jdbcTemplate.getJdbcTemplate().update("DELETE FROM hit_ip_bitmap WHERE day >= ? AND day < ?",
+                Date.valueOf(from.toLocalDate()), Date.valueOf(to.toLocalDate()));
+    }
+
+    // блокирует строки карт в порядке ключей и возвращает их текущее содержимое;
+    // ключи передаются тремя массивами, поэтому число параметров запроса не зависит от их количества
+    private Map<BitmapKey, RoaringBitmap> lockBitmaps(Set<BitmapKey> keys) {
+        Map<BitmapKey, RoaringBitmap> bitmaps = new HashMap<>();
+        Integer[] appIds = new Integer[keys.size()];
+        Integer[] uriIds = new Integer[keys.size()];
+        String[] days = new String[keys.size()];
+        int i = 0;
+        for (BitmapKey key : keys) {
+            appIds[i] = key.appId();
+            uriIds[i] = key.uriId();
+            days[i] = key.day().toString();
+            i++;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("app_ids", appIds)
+                .addValue("uri_ids", uriIds)
+                .addValue("days", days);
+        String sql = "SELECT b.app_id, b.uri_id, b.day, b.ips FROM hit_ip_bitmap b " +
+                "JOIN unnest(CAST(:app_ids AS integer[]), CAST(:uri_ids AS integer[]), " +
+                "CAST(:days AS date[])) AS k(app_id, uri_id, day) " +
+                "ON b.app_id = k.app_id AND b.uri_id = k.uri_id AND b.day = k.day " +
+                "ORDER BY b.app_id, b.uri_id, b.day FOR UPDATE OF b";
+        jdbcTemplate.query(sql, params, (RowCallbackHandler) rs -> bitmaps.put(
+                new BitmapKey(rs.getInt("app_id"), rs.getInt("uri_id"), rs.getDate("day").toLocalDate()),
+                fromBytes(rs.getBytes("ips"))));
+        return bitmaps;
+    }
+
+    // условие по дням карт для интервалов целых дней [from, to)
+    private static String dayCondition(List<TimeRange> days, MapSqlParameterSource params) {
+        List<String> conditions = new ArrayList<>(days.size());
+        for (int i = 0; i < days.size(); i++) {
+            params.addValue("day_from_" + i, Date.valueOf(days.get(i).getFrom().toLocalDate()));
+            params.addValue("day_to_" + i, Date.valueOf(days.get(i).getTo().toLocalDate()));
+            conditions.add("(b.day >= :day_from_%1$d AND b.day < :day_to_%1$d)".formatted(i));
+        }
+        return String.join(" OR ", conditions);
+    }
+
+    private static byte[] toBytes(RoaringBitmap bitmap) {
+        ByteBuffer buffer = ByteBuffer.allocate(bitmap.serializedSizeInBytes());
+        bitmap.serialize(buffer);
+        return buffer.array();
+    }
+
+    private static RoaringBitmap fromBytes(byte[] bytes) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        try {
+            bitmap.deserialize(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Повреждённая битовая карта IP", e);
+        }
+        return bitmap;
+    }
+
+    private record BitmapKey(Integer appId, Integer uriId, LocalDate day) {
+    }
+
+    private record AppUri(String app, String uri) {
+    }
+
+    // посетители пары (app, uri): id IP из карт и краёв диапазона и количество IP без id в словаре
+    private static final class Visitors {
+        private final RoaringBitmap ips = new RoaringBitmap();
+        private long unknown;
+    }
+}
@@ -0,0 +1,115 @@
+package ru.practicum.stats.storage;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.mapper.IpAddresses;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Репозиторий словарей названий сервисов, URI и IP (таблицы app_dict, uri_dict и ip_dict).
+ * <p>
+ * Значение получает id при первом появлении и больше его не меняет,
+ * поэтому найденные id можно кэшировать без инвалидации.
+ * IP хранятся в колонке типа inet и передаются в каноническом текстовом виде (см. {@link IpAddresses}).
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitDictionaryRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Словари, хранимые в БД.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public enum Dictionary {
+        APP("app_dict", "app", "?"),
+        URI("uri_dict", "uri", "?"),
+        IP("ip_dict", "ip", "CAST(? AS inet)");
+
+        private final String table;
+        private final String column;
+        private final String valueExpression;
+    }
+
+    /**
+     * Возвращает id значений словаря, добавляя отсутствующие значения.
+     * Должен вызываться вне транзакции записи хитов: добавленные значения фиксируются сразу,
+     * чтобы их id можно было кэшировать, даже если запись хитов будет отменена.
+     *
+     * @param dictionary словарь
+     * @param values     значения
+     * @return id каждого из значений
+     */
+    public Map<String, Integer> findOrCreate(Dictionary dictionary, SortedSet<String> values) {
+        Map<String, Integer> ids = findIds(dictionary, values);
+        if (ids.size() == values.size()) {
+            return ids;
+        }
+
+        // значения вставляются в отсортированном порядке, чтобы параллельные вставки не взаимоблокировались
+        SortedSet<String> missing = new TreeSet<>(values);
+        missing.removeAll(ids.keySet());
+        List<Object[]> args = new ArrayList<>(missing.size());
+        missing.forEach(value -> args.add(new Object[]{value}));
+        jdbcTemplate.getJdbcTemplate().batchUpdate("INSERT INTO " + dictionary.getTable() +
+                " (" + dictionary.getColumn() + ") VALUES (" + dictionary.getValueExpression() +
+                ") ON CONFLICT DO NOTHING", args);
+
+        ids.putAll(findIds(dictionary, missing));
+        return ids;
+    }
+
+    /**
+     * Возвращает id уже известных значений словаря.
+     *
+     * @param dictionary словарь
+     * @param values     значения
+     * @return id найденных значений; отсутствующих в словаре значений в результате нет
+     */
+    public Map<String, Integer> findIds(Dictionary dictionary, SortedSet<String> values) {
+        Map<String, Integer> ids = new HashMap<>();
+        if (values.isEmpty()) {
+            return ids;
+        }
+        if (dictionary == Dictionary.IP) {
+            // текстовый вид inet в БД может отличаться от канонического вида в Java (например, для IPv6)
+            jdbcTemplate.query("SELECT id, host(ip) AS ip FROM ip_dict WHERE ip = ANY(CAST(:values AS inet[]))",
+                    new MapSqlParameterSource("values", values.toArray(String[]::new)),
+                    (RowCallbackHandler) rs -> ids.put(IpAddresses.normalize(rs.getString("ip")), rs.getInt("id")));
+            return ids;
+        }
+        String column = dictionary.getColumn();
+        jdbcTemplate.query("SELECT id, " + column + " FROM " + dictionary.getTable() +
+                        " WHERE " + column + " IN (:values)",
+                new MapSqlParameterSource("values", values),
+                (RowCallbackHandler) rs -> ids.put(rs.getString(column), rs.getInt("id")));
+        return ids;
+    }
+
+    /**
+     * Передаёт значения словаря с id больше указанного в порядке возрастания id.
+     *
+     * @param dictionary словарь
+     * @param afterId    id, после которого читать значения
+     * @param consumer   обработчик id и значения
+     */
+    public void forEachAfter(Dictionary dictionary, int afterId, ObjIntConsumer<String> consumer) {
+        String column = dictionary.getColumn();
+        jdbcTemplate.query("SELECT id, " + column + " FROM " + dictionary.getTable() +
+                        " WHERE id > :afterId ORDER BY id",
+                new MapSqlParameterSource("afterId", afterId),
+                (RowCallbackHandler) rs -> consumer.accept(rs.getString(column), rs.getInt("id")));
+    }
+}
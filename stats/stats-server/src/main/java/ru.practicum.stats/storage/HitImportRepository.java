@@ -0,0 +1,72 @@
+package ru.practicum.stats.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Репозиторий состояния массовых импортов хитов (таблица hit_import).
+ * <p>
+ * Количество обработанных записей файла обновляется в той же транзакции, что и запись
+ * очередной части хитов, поэтому прерванный импорт продолжается ровно с первой незафиксированной записи.
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitImportRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param importId идентификатор импорта
+     * @return состояние импорта или пустой Optional, если импорт не начинался
+     */
+    public Optional<ImportState> find(String importId) {
+        List<ImportState> states = jdbcTemplate.query(
+                "SELECT processed, stored, rejected, completed FROM hit_import WHERE import_id = ?",
+                (rs, rowNum) -> new ImportState(rs.getLong("processed"), rs.getLong("stored"),
+                        rs.getLong("rejected"), rs.getBoolean("completed")), importId);
+        return states.stream().findFirst();
+    }
+
+    /**
+     * Создаёт запись импорта, если её ещё нет.
+     *
+     * @param importId идентификатор импорта
+     * @return состояние импорта
+     */
+    public ImportState findOrCreate(String importId) {
+        jdbcTemplate.update("INSERT INTO hit_import (import_id) VALUES (?) ON CONFLICT (import_id) DO NOTHING",
+                importId);
+        return find(importId).orElseThrow();
+    }
+
+    /**
+     * Сдвигает состояние импорта на обработанную часть файла. Должен вызываться в транзакции записи
+     * хитов этой части. Обновление выполняется, только если состояние не изменилось с момента чтения,
+     * поэтому два одновременных запроса с одним идентификатором не запишут одну часть дважды.
+     *
+     * @param importId идентификатор импорта
+     * @param expected состояние, с которого начиналась часть
+     * @param next     состояние после части
+     * @return true, если состояние обновлено
+     */
+    public boolean advance(String importId, ImportState expected, ImportState next) {
+        return jdbcTemplate.update("UPDATE hit_import SET processed = ?, stored = ?, rejected = ?, completed = ?, " +
+                        "updated_at = now() WHERE import_id = ? AND processed = ? AND NOT completed",
+                next.processed(), next.stored(), next.rejected(), next.completed(),
+                importId, expected.processed()) == 1;
+    }
+
+    /**
+     * Состояние импорта.
+     *
+     * @param processed количество обработанных записей файла
+     * @param stored    количество сохранённых записей
+     * @param rejected  количество отклонённых записей
+     * @param completed true, если файл импортирован до конца
+     */
+    public record ImportState(long processed, long stored, long rejected, boolean completed) {
+    }
+}
@@ -0,0 +1,101 @@
+package ru.practicum.stats.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.model.Hit;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Репозиторий для пакетной записи хитов через JDBC.
+ * <p>
+ * В отличие от {@link StatsRepository#save(Object)}, записывает список хитов
+ * пачками через {@link JdbcTemplate#batchUpdate}. При включённом в драйвере
+ * PostgreSQL параметре {@code reWriteBatchedInserts} каждая пачка
+ * отправляется в БД одним многострочным INSERT.
+ * Для массового импорта хиты передаются протоколом COPY ({@link #copyAll(List)}).
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitJdbcRepository {
+    private static final String INSERT_HIT = "INSERT INTO hit (app_id, uri_id, ip, timestamp) " +
+            "VALUES (?, ?, ?::inet, ?)";
+    private static final String COPY_HITS = "COPY hit (app_id, uri_id, ip, timestamp) FROM STDIN";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${stats.batch.jdbc-batch-size:500}")
+    private int batchSize;
+
+    /**
+     * @return время самого позднего сохранённого хита или null, если хитов нет
+     */
+    public LocalDateTime findMaxTimestamp() {
+        Timestamp max = jdbcTemplate.queryForObject("SELECT MAX(timestamp) FROM hit", Timestamp.class);
+        return max == null ? null : max.toLocalDateTime();
+    }
+
+    /**
+     * Сохраняет список хитов пачками размером не более {@code stats.batch.jdbc-batch-size}.
+     * Должен вызываться внутри транзакции, чтобы все пачки были зафиксированы одним коммитом.
+     * У хитов должны быть проставлены id сервиса и URI.
+     *
+     * @param hits хиты для сохранения
+     */
+    public void saveAll(List<Hit> hits) {
+        jdbcTemplate.batchUpdate(INSERT_HIT, hits, batchSize, (ps, hit) -> {
+            ps.setInt(1, hit.getAppId());
+            ps.setInt(2, hit.getUriId());
+            ps.setString(3, hit.getIp());
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+    }
+
+    /**
+     * Сохраняет список хитов протоколом COPY в текстовом формате одной командой.
+     * Должен вызываться внутри транзакции. У хитов должны быть проставлены id сервиса и URI.
+     *
+     * @param hits хиты для сохранения
+     * @return количество сохранённых строк
+     */
+    public long copyAll(List<Hit> hits) {
+        return jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            CopyIn copy = con.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_HITS);
+            try {
+                // значения — числа, IP и время, экранирование текстового формата COPY им не нужно
+                StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE + 128);
+                for (Hit hit : hits) {
+                    buffer.append(hit.getAppId()).append('\t')
+                            .append(hit.getUriId()).append('\t')
+                            .append(hit.getIp()).append('\t')
+                            .append(hit.getTimestamp()).append('\n');
+                    if (buffer.length() >= COPY_BUFFER_SIZE) {
+                        write(copy, buffer);
+                    }
+                }
+                write(copy, buffer);
+                return copy.endCopy();
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        });
+    }
+
+    private static void write(CopyIn copy, StringBuilder buffer) throws SQLException {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+}
@@ -0,0 +1,49 @@
+package ru.practicum.stats.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Репозиторий контрольных точек отгрузки локального журнала хитов.
+ * <p>
+ * Контрольная точка — позиция в журнале, до которой хиты записаны в БД. Она сохраняется
+ * в той же транзакции, что и сами хиты, поэтому после падения хиты не теряются и не дублируются.
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitLogCheckpointRepository {
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param logId идентификатор журнала
+     * @return контрольная точка или пустой Optional, если журнал ещё ничего не отгружал
+     */
+    public Optional<Checkpoint> find(String logId) {
+        List<Checkpoint> checkpoints = jdbcTemplate.query(
+                "SELECT segment, position FROM hit_log_checkpoint WHERE log_id = ?",
+                (rs, rowNum) -> new Checkpoint(rs.getLong("segment"), rs.getInt("position")), logId);
+        return checkpoints.stream().findFirst();
+    }
+
+    /**
+     * Сохраняет контрольную точку. Должен вызываться в транзакции записи отгруженных хитов.
+     *
+     * @param logId      идентификатор журнала
+     * @param checkpoint позиция, до которой хиты записаны в БД
+     */
+    public void save(String logId, Checkpoint checkpoint) {
+        jdbcTemplate.update("INSERT INTO hit_log_checkpoint (log_id, segment, position) VALUES (?, ?, ?) " +
+                        "ON CONFLICT (log_id) DO UPDATE SET segment = EXCLUDED.segment, position = EXCLUDED.position",
+                logId, checkpoint.segment(), checkpoint.position());
+    }
+
+    /**
+     * Позиция в журнале: номер сегмента и смещение следующей записи в нём.
+     */
+    public record Checkpoint(long segment, int position) {
+    }
+}
@@ -0,0 +1,140 @@
+package ru.practicum.stats.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Репозиторий для управления дневными секциями таблицы hit.
+ * <p>
+ * Секция за день {@code d} называется {@code hit_pYYYYMMDD} и содержит хиты
+ * с временем в интервале [d 00:00, d+1 00:00).
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitPartitionRepository {
+    private static final String PARTITION_PREFIX = "hit_p";
+    // SQLSTATE lock_not_available: истёк lock_timeout
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+    private static final DateTimeFormatter SUFFIX_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Берёт транзакционную advisory-блокировку, чтобы обслуживание секций
+     * не выполнялось одновременно несколькими экземплярами сервиса.
+     * Должен вызываться внутри транзакции.
+     */
+    public void lockMaintenance() {
+        jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(hashtext('hit_partition_maintenance'))",
+                Object.class);
+    }
+
+    /**
+     * Ограничивает ожидание блокировок до конца текущей транзакции.
+     * Должен вызываться внутри транзакции.
+     *
+     * @param millis максимальное время ожидания блокировки
+     */
+    public void setLockTimeout(long millis) {
+        jdbcTemplate.execute("SET LOCAL lock_timeout = " + millis);
+    }
+
+    /**
+     * @return дни, для которых уже созданы секции
+     */
+    public List<LocalDate> findPartitionDays() {
+        List<String> names = jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid " +
+                "JOIN pg_class p ON p.oid = i.inhparent " +
+                "WHERE p.relname = 'hit'", String.class);
+
+        List<LocalDate> days = new ArrayList<>(names.size());
+        for (String name : names) {
+            if (name.startsWith(PARTITION_PREFIX)) {
+                try {
+                    days.add(LocalDate.parse(name.substring(PARTITION_PREFIX.length()), SUFFIX_FORMAT));
+                } catch (DateTimeParseException ignored) {
+                    // секция создана не сервисом, её не трогаем
+                }
+            }
+        }
+        return days;
+    }
+
+    /**
+     * @return дни, хиты за которые лежат в секции по умолчанию
+     */
+    public List<LocalDate> findDaysInDefaultPartition() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT date_trunc('day', timestamp) FROM hit_default",
+                        Timestamp.class).stream()
+                .map(ts -> ts.toLocalDateTime().toLocalDate())
+                .toList();
+    }
+
+    /**
+     * Создаёт секцию за день и переносит в неё хиты этого дня из секции по умолчанию.
+     * Должен вызываться внутри транзакции.
+     *
+     * @param day день секции
+     */
+    public void createPartition(LocalDate day) {
+        String name = partitionName(day);
+        Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE hit INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        jdbcTemplate.update("WITH moved AS (DELETE FROM hit_default WHERE timestamp >= ? AND timestamp < ? " +
+                "RETURNING *) INSERT INTO " + name + " SELECT * FROM moved", from, to);
+        jdbcTemplate.execute("ALTER TABLE hit ATTACH PARTITION " + name +
+                " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+    }
+
+    /**
+     * Удаляет секцию за день целиком.
+     * <p>
+     * DETACH PARTITION берёт блокировку ACCESS EXCLUSIVE на всю таблицу hit до конца транзакции,
+     * поэтому транзакция удаления должна быть короткой. Неблокирующий DETACH PARTITION CONCURRENTLY
+     * неприменим: у таблицы hit есть секция по умолчанию.
+     *
+     * @param day день секции
+     * @throws CannotAcquireLockException если блокировку таблицы не удалось взять за время,
+     *                                    заданное {@link #setLockTimeout(long)}
+     */
+    public void dropPartition(LocalDate day) {
+        String name = partitionName(day);
+        try {
+            jdbcTemplate.execute("ALTER TABLE hit DETACH PARTITION " + name);
+        } catch (UncategorizedSQLException e) {
+            if (e.getSQLException() != null && LOCK_NOT_AVAILABLE.equals(e.getSQLException().getSQLState())) {
+                throw new CannotAcquireLockException("Таблица hit занята: секция " + name + " не отсоединена", e);
+            }
+            throw e;
+        }
+        jdbcTemplate.execute("DROP TABLE " + name);
+    }
+
+    /**
+     * Удаляет из секции по умолчанию хиты старше указанного момента.
+     *
+     * @param cutoff граница хранения
+     * @return количество удалённых хитов
+     */
+    public int deleteFromDefaultPartitionBefore(LocalDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM hit_default WHERE timestamp < ?", Timestamp.valueOf(cutoff));
+    }
+
+    static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + day.format(SUFFIX_FORMAT);
+    }
+}
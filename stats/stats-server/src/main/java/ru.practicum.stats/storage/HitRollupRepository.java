@@ -0,0 +1,188 @@
+package ru.practicum.stats.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.model.Hit;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Репозиторий поминутных и почасовых агрегатов хитов (таблицы hit_rollup_minute и hit_rollup_hour).
+ * <p>
+ * Агрегаты обновляются в той же транзакции, что и вставка хитов, поэтому
+ * сумма по целым бакетам всегда совпадает с подсчётом по таблице hit.
+ * Агрегаты, как и хиты, хранят id сервиса и URI; названия подставляются из словарей
+ * только в итоговый результат запроса.
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitRollupRepository {
+    /**
+     * Гранулярности агрегатов от крупной к мелкой.
+     */
+    public static final List<ChronoUnit> GRANULARITIES = List.of(ChronoUnit.HOURS, ChronoUnit.MINUTES);
+
+    private static final Map<ChronoUnit, String> TABLES = Map.of(
+            ChronoUnit.HOURS, "hit_rollup_hour",
+            ChronoUnit.MINUTES, "hit_rollup_minute"
+    );
+
+    private static final String UPSERT = "INSERT INTO %1$s (app_id, uri_id, bucket, hits) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (app_id, uri_id, bucket) DO UPDATE SET hits = %1$s.hits + EXCLUDED.hits";
+
+    private static final Comparator<RollupKey> KEY_ORDER = Comparator.comparing(RollupKey::appId)
+            .thenComparing(RollupKey::uriId)
+            .thenComparing(RollupKey::bucket);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Добавляет хиты к агрегатам всех гранулярностей.
+     * Должен вызываться в транзакции, в которой хиты вставляются в таблицу hit.
+     *
+     * @param hits сохраняемые хиты с проставленными id сервиса и URI
+     */
+    public void addHits(List<Hit> hits) {
+        for (ChronoUnit unit : GRANULARITIES) {
+            // ключи сортируются, чтобы параллельные транзакции блокировали строки в одном порядке
+            Map<RollupKey, Long> counts = new TreeMap<>(KEY_ORDER);
+            for (Hit hit : hits) {
+                RollupKey key = new RollupKey(hit.getAppId(), hit.getUriId(), hit.getTimestamp().truncatedTo(unit));
+                counts.merge(key, 1L, Long::sum);
+            }
+
+            List<Object[]> args = new ArrayList<>(counts.size());
+            counts.forEach((key, count) ->
+                    args.add(new Object[]{key.appId(), key.uriId(), Timestamp.valueOf(key.bucket()), count}));
+            jdbcTemplate.getJdbcTemplate().batchUpdate(UPSERT.formatted(TABLES.get(unit)), args);
+        }
+    }
+
+    /**
+     * Считает количество хитов по плану: целые бакеты берутся из агрегатов, края — из таблицы hit.
+     * Результат совпадает с {@link StatsRepository#getAllViewStatsProjection} и
+     * {@link StatsRepository#getViewStatsProjectionByUris} для того же диапазона.
+     *
+     * @param plan план разбиения диапазона
+     * @param uris список URI для фильтрации (пустой — без фильтра)
+     * @return статистика, отсортированная по количеству просмотров по убыванию
+     */
+    public List<ViewStatsProjection> getStats(RollupPlan plan, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = statsQuery(plan, uris, params);
+        if (sql == null) {
+            return List.of();
+        }
+        return jdbcTemplate.query(sql, params,
+                (rs, rowNum) -> new ViewStatsRow(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+    }
+
+    /**
+     * Удаляет агрегаты за бакеты, начинающиеся раньше границы хранения.
+     *
+     * @param cutoff граница хранения, выровненная по началу дня
+     */
+    public void deleteBefore(LocalDateTime cutoff) {
+        for (String table : TABLES.values()) {
+            jdbcTemplate.getJdbcTemplate().update("DELETE FROM " + table + " WHERE bucket < ?", toTimestamp(cutoff));
+        }
+    }
+
+    /**
+     * Удаляет агрегаты за бакеты, начинающиеся в интервале [from, to).
+     *
+     * @param from начало интервала, выровненное по началу дня
+     * @param to   конец интервала, выровненный по началу дня
+     */
+    public void deleteRange(LocalDateTime from, LocalDateTime to) {
+        for (String table : TABLES.values()) {
+            jdbcTemplate.getJdbcTemplate().update("DELETE FROM " + table + " WHERE bucket >= ? AND bucket < ?",
+                    toTimestamp(from), toTimestamp(to));
+        }
+    }
+
+    // запрос статистики по плану с колонками app, uri, hits; null, если план пуст
+    static String statsQuery(RollupPlan plan, List<String> uris, MapSqlParameterSource params) {
+        return statsQuery(plan, uris, null, params);
+    }
+
+    // то же с фильтром по сервису; app == null — без фильтра
+    static String statsQuery(RollupPlan plan, List<String> uris, String app, MapSqlParameterSource params) {
+        String uriFilter = uriFilter(uris, params) + appFilter(app, params);
+
+        List<String> parts = new ArrayList<>();
+        for (ChronoUnit unit : GRANULARITIES) {
+            List<TimeRange> ranges = plan.getBuckets(unit);
+            if (!ranges.isEmpty()) {
+                parts.add("SELECT app_id, uri_id, hits FROM " + TABLES.get(unit) +
+                        " WHERE (" + rangeCondition("bucket", ranges, unit.name(), params) + ")" + uriFilter);
+            }
+        }
+        if (!plan.getRawRanges().isEmpty()) {
+            parts.add("SELECT app_id, uri_id, COUNT(*) AS hits FROM hit" +
+                    " WHERE (" + rangeCondition("timestamp", plan.getRawRanges(), "RAW", params) + ")" + uriFilter +
+                    " GROUP BY app_id, uri_id");
+        }
+        if (parts.isEmpty()) {
+            return null;
+        }
+
+        return "SELECT a.app, u.uri, t.hits FROM (SELECT app_id, uri_id, SUM(hits) AS hits FROM (" +
+                String.join(" UNION ALL ", parts) + ") p GROUP BY app_id, uri_id) t " +
+                "JOIN app_dict a ON a.id = t.app_id JOIN uri_dict u ON u.id = t.uri_id ORDER BY t.hits DESC";
+    }
+
+    // условие вида (column >= :from AND column < :to) OR ... для списка интервалов
+    static String rangeCondition(String column, List<TimeRange> ranges, String prefix, MapSqlParameterSource params) {
+        List<String> conditions = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            TimeRange range = ranges.get(i);
+            String from = prefix + "_from_" + i;
+            String to = prefix + "_to_" + i;
+            params.addValue(from, toTimestamp(range.getFrom()));
+            params.addValue(to, toTimestamp(range.getTo()));
+            conditions.add("(" + column + " >= :" + from + " AND " + column +
+                    (range.isToInclusive() ? " <= :" : " < :") + to + ")");
+        }
+        return String.join(" OR ", conditions);
+    }
+
+    // таблица агрегатов гранулярности
+    static String tableFor(ChronoUnit unit) {
+        return TABLES.get(unit);
+    }
+
+    // фильтр по списку URI через словарь; пустой список — без фильтра
+    static String uriFilter(List<String> uris, MapSqlParameterSource params) {
+        if (uris.isEmpty()) {
+            return "";
+        }
+        params.addValue("uris", uris);
+        return " AND uri_id IN (SELECT id FROM uri_dict WHERE uri IN (:uris))";
+    }
+
+    // фильтр по названию сервиса через словарь; null — без фильтра
+    static String appFilter(String app, MapSqlParameterSource params) {
+        if (app == null) {
+            return "";
+        }
+        params.addValue("app", app);
+        return " AND app_id IN (SELECT id FROM app_dict WHERE app = :app)";
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return Timestamp.valueOf(time);
+    }
+
+    private record RollupKey(Integer appId, Integer uriId, LocalDateTime bucket) {
+    }
+}
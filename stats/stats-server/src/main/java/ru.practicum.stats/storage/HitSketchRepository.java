@@ -0,0 +1,265 @@
+package ru.practicum.stats.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.mapper.IpAddresses;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.sketch.HyperLogLog;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Репозиторий почасовых скетчей HyperLogLog по IP-адресам (таблица hit_hll_hour).
+ * <p>
+ * Для каждой тройки (id сервиса, id URI, час) хранится скетч уникальных IP в каноническом
+ * текстовом виде (см. {@link IpAddresses}). Скетчи обновляются
+ * в транзакции вставки хитов: строки сначала создаются пустыми, затем блокируются
+ * в фиксированном порядке, объединяются с новыми IP и перезаписываются.
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitSketchRepository {
+    /**
+     * Гранулярность скетчей.
+     */
+    public static final List<ChronoUnit> GRANULARITIES = List.of(ChronoUnit.HOURS);
+
+    private static final String INSERT_EMPTY = "INSERT INTO hit_hll_hour (app_id, uri_id, bucket, sketch) " +
+            "VALUES (?, ?, ?, ?) ON CONFLICT (app_id, uri_id, bucket) DO NOTHING";
+    private static final String UPDATE_SKETCH = "UPDATE hit_hll_hour SET sketch = ? " +
+            "WHERE app_id = ? AND uri_id = ? AND bucket = ?";
+
+    private static final Comparator<SketchKey> KEY_ORDER = Comparator.comparing(SketchKey::appId)
+            .thenComparing(SketchKey::uriId)
+            .thenComparing(SketchKey::bucket);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Добавляет IP-адреса хитов в скетчи соответствующих часов.
+     * Должен вызываться в транзакции, в которой хиты вставляются в таблицу hit.
+     *
+     * @param hits сохраняемые хиты с проставленными id сервиса и URI
+     */
+    public void addHits(List<Hit> hits) {
+        Map<SketchKey, Set<String>> ipsByKey = new TreeMap<>(KEY_ORDER);
+        for (Hit hit : hits) {
+            SketchKey key = new SketchKey(hit.getAppId(), hit.getUriId(),
+                    hit.getTimestamp().truncatedTo(ChronoUnit.HOURS));
+            ipsByKey.computeIfAbsent(key, k -> new HashSet<>()).add(hit.getIp());
+        }
+        if (ipsByKey.isEmpty()) {
+            return;
+        }
+
+        byte[] empty = new HyperLogLog().toBytes();
+        List<Object[]> insertArgs = new ArrayList<>(ipsByKey.size());
+        for (SketchKey key : ipsByKey.keySet()) {
+            insertArgs.add(new Object[]{key.appId(), key.uriId(), Timestamp.valueOf(key.bucket()), empty});
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_EMPTY, insertArgs);
+
+        Map<SketchKey, HyperLogLog> sketches = lockSketches(ipsByKey.keySet());
+
+        List<Object[]> updateArgs = new ArrayList<>(ipsByKey.size());
+        ipsByKey.forEach((key, ips) -> {
+            HyperLogLog sketch = sketches.getOrDefault(key, new HyperLogLog());
+            ips.forEach(sketch::add);
+            updateArgs.add(new Object[]{sketch.toBytes(), key.appId(), key.uriId(), Timestamp.valueOf(key.bucket())});
+        });
+        jdbcTemplate.getJdbcTemplate().batchUpdate(UPDATE_SKETCH, updateArgs);
+    }
+
+    /**
+     * Оценивает количество уникальных IP по плану: целые часы берутся из скетчей,
+     * IP из краёв диапазона читаются из таблицы hit и добавляются в скетч.
+     *
+     * @param plan план разбиения диапазона с гранулярностью {@link #GRANULARITIES}
+     * @param uris список URI для фильтрации (пустой — без фильтра)
+     * @return приближённая статистика уникальных посещений, отсортированная по убыванию
+     */
+    public List<ViewStatsProjection> getUniqueStats(RollupPlan plan, List<String> uris) {
+        // IP из краёв диапазона — не больше двух неполных часов
+        Map<AppUri, HyperLogLog> edges = new HashMap<>();
+        if (!plan.getRawRanges().isEmpty()) {
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            String sql = "SELECT a.app, u.uri, host(e.ip) AS ip FROM (SELECT DISTINCT app_id, uri_id, ip FROM hit " +
+                    "WHERE (" + HitRollupRepository.rangeCondition("timestamp", plan.getRawRanges(), "RAW", params) +
+                    ")" + HitRollupRepository.uriFilter(uris, params) + ") e " +
+                    "JOIN app_dict a ON a.id = e.app_id JOIN uri_dict u ON u.id = e.uri_id";
+            jdbcTemplate.query(sql, params, (RowCallbackHandler) rs ->
+                    edges.computeIfAbsent(new AppUri(rs.getString("app"), rs.getString("uri")),
+                            k -> new HyperLogLog()).add(IpAddresses.normalize(rs.getString("ip"))));
+        }
+
+        List<ViewStatsProjection> result = new ArrayList<>();
+        List<TimeRange> hours = plan.getBuckets(ChronoUnit.HOURS);
+        if (!hours.isEmpty()) {
+            // скетчи читаются по порядку пар (app, uri), поэтому в памяти одновременно объединяется одна группа
+            MapSqlParameterSource params = new MapSqlParameterSource();
+            String sql = "SELECT a.app, u.uri, s.sketch FROM hit_hll_hour s " +
+                    "JOIN app_dict a ON a.id = s.app_id JOIN uri_dict u ON u.id = s.uri_id WHERE (" +
+                    HitRollupRepository.rangeCondition("s.bucket", hours, "HOURS", params) + ")" +
+                    HitRollupRepository.uriFilter(uris, params) + " ORDER BY s.app_id, s.uri_id";
+            SketchGroupMerger merger = new SketchGroupMerger(edges, result);
+            jdbcTemplate.query(sql, params, (RowCallbackHandler) rs -> merger.accept(
+                    new AppUri(rs.getString("app"), rs.getString("uri")),
+                    HyperLogLog.fromBytes(rs.getBytes("sketch"))));
+            merger.finish();
+        }
+
+        edges.forEach((key, sketch) -> result.add(new ViewStatsRow(key.app(), key.uri(), sketch.estimate())));
+        result.sort(Comparator.comparing(ViewStatsProjection::getHits).reversed());
+        return result;
+    }
+
+    /**
+     * @return true, если скетчей ещё нет, а хиты в БД уже есть
+     */
+    public boolean needsBackfill() {
+        Boolean needs = jdbcTemplate.getJdbcTemplate().queryForObject(
+                "SELECT NOT EXISTS (SELECT 1 FROM hit_hll_hour) AND EXISTS (SELECT 1 FROM hit)", Boolean.class);
+        return Boolean.TRUE.equals(needs);
+    }
+
+    /**
+     * Передаёт все хиты из БД пачками в порядке (id сервиса, id URI, время) для построения скетчей.
+     * У переданных хитов заполнены только id сервиса и URI, IP и время.
+     * Повторное добавление IP в скетч его не меняет, поэтому заполнение можно выполнять
+     * параллельно с приёмом новых хитов.
+     * Должен вызываться в транзакции, чтобы драйвер читал строки курсором, а не целиком.
+     *
+     * @param consumer  обработчик очередной пачки хитов
+     * @param batchSize размер пачки
+     */
+    public void forEachHitBatch(Consumer<List<Hit>> consumer, int batchSize) {
+        List<Hit> batch = new ArrayList<>(batchSize);
+        jdbcTemplate.getJdbcTemplate().query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT app_id, uri_id, host(ip) AS ip, timestamp FROM hit ORDER BY app_id, uri_id, timestamp");
+            ps.setFetchSize(batchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            batch.add(Hit.builder()
+                    .appId(rs.getInt("app_id"))
+                    .uriId(rs.getInt("uri_id"))
+                    .ip(IpAddresses.normalize(rs.getString("ip")))
+                    .timestamp(rs.getTimestamp("timestamp").toLocalDateTime())
+                    .build());
+            if (batch.size() == batchSize) {
+                consumer.accept(List.copyOf(batch));
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) {
+            consumer.accept(List.copyOf(batch));
+        }
+    }
+
+    /**
+     * Удаляет скетчи за часы, начинающиеся раньше границы хранения.
+     *
+     * @param cutoff граница хранения, выровненная по началу дня
+     */
+    public void deleteBefore(LocalDateTime cutoff) {
+        jdbcTemplate.getJdbcTemplate().update("DELETE FROM hit_hll_hour WHERE bucket < ?", Timestamp.valueOf(cutoff));
+    }
+
+    /**
+     * Удаляет скетчи за часы, начинающиеся в интервале [from, to).
+     *
+     * @param from начало интервала, выровненное по началу дня
+     * @param to   конец интервала, выровненный по началу дня
+     */
+    public void deleteRange(LocalDateTime from, LocalDateTime to) {
+        jdbcTemplate.getJdbcTemplate().update("DELETE FROM hit_hll_hour WHERE bucket >= ? AND bucket < ?",
+                Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    // блокирует строки скетчей в порядке ключей и возвращает их текущее содержимое;
+    // ключи передаются тремя массивами, поэтому число параметров запроса не зависит от их количества
+    private Map<SketchKey, HyperLogLog> lockSketches(Set<SketchKey> keys) {
+        Map<SketchKey, HyperLogLog> sketches = new HashMap<>();
+        Integer[] appIds = new Integer[keys.size()];
+        Integer[] uriIds = new Integer[keys.size()];
+        String[] buckets = new String[keys.size()];
+        int i = 0;
+        for (SketchKey key : keys) {
+            appIds[i] = key.appId();
+            uriIds[i] = key.uriId();
+            buckets[i] = key.bucket().toString();
+            i++;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("app_ids", appIds)
+                .addValue("uri_ids", uriIds)
+                .addValue("buckets", buckets);
+        String sql = "SELECT s.app_id, s.uri_id, s.bucket, s.sketch FROM hit_hll_hour s " +
+                "JOIN unnest(CAST(:app_ids AS integer[]), CAST(:uri_ids AS integer[]), " +
+                "CAST(:buckets AS timestamp[])) AS k(app_id, uri_id, bucket) " +
+                "ON s.app_id = k.app_id AND s.uri_id = k.uri_id AND s.bucket = k.bucket " +
+                "ORDER BY s.app_id, s.uri_id, s.bucket FOR UPDATE OF s";
+        jdbcTemplate.query(sql, params, (RowCallbackHandler) rs -> sketches.put(
+                new SketchKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                        rs.getTimestamp("bucket").toLocalDateTime()),
+                HyperLogLog.fromBytes(rs.getBytes("sketch"))));
+        return sketches;
+    }
+
+    private record SketchKey(Integer appId, Integer uriId, LocalDateTime bucket) {
+    }
+
+    private record AppUri(String app, String uri) {
+    }
+
+    // объединяет подряд идущие скетчи одной пары (app, uri) и добавляет IP краёв диапазона
+    private static final class SketchGroupMerger {
+        private final Map<AppUri, HyperLogLog> edges;
+        private final List<ViewStatsProjection> result;
+        private AppUri current;
+        private HyperLogLog merged;
+
+        private SketchGroupMerger(Map<AppUri, HyperLogLog> edges, List<ViewStatsProjection> result) {
+            this.edges = edges;
+            this.result = result;
+        }
+
+        private void accept(AppUri key, HyperLogLog sketch) {
+            if (!key.equals(current)) {
+                finish();
+                current = key;
+                merged = sketch;
+            } else {
+                merged.merge(sketch);
+            }
+        }
+
+        private void finish() {
+            if (current == null) {
+                return;
+            }
+            HyperLogLog edge = edges.remove(current);
+            if (edge != null) {
+                merged.merge(edge);
+            }
+            result.add(new ViewStatsRow(current.app(), current.uri(), merged.estimate()));
+            current = null;
+            merged = null;
+        }
+    }
+}
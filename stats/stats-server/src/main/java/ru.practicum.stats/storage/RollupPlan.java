@@ -0,0 +1,93 @@
+package ru.practicum.stats.storage;
+
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * План разбиения диапазона [start, end] на целые бакеты агрегатов и «сырые» края.
+ * <p>
+ * Середина диапазона покрывается целыми бакетами самой крупной гранулярности,
+ * оставшиеся края рекурсивно покрываются бакетами следующей гранулярности,
+ * а то, что не покрывается ни одним целым бакетом, читается из таблицы hit.
+ * Например, для [10:15:30, 13:20:10] и гранулярностей [HOURS, MINUTES]:
+ * часы [11:00, 13:00), минуты [10:16, 11:00) и [13:00, 13:20),
+ * сырые строки [10:15:30, 10:16:00) и [13:20:00, 13:20:10].
+ */
+@Getter
+public final class RollupPlan {
+    private final Map<ChronoUnit, List<TimeRange>> buckets = new EnumMap<>(ChronoUnit.class);
+    private final List<TimeRange> rawRanges = new ArrayList<>();
+
+    private RollupPlan() {
+    }
+
+    /**
+     * Строит план для диапазона [start, end] (обе границы включительно).
+     *
+     * @param start         начало диапазона
+     * @param end           конец диапазона
+     * @param granularities гранулярности бакетов от крупной к мелкой (DAYS, HOURS, MINUTES)
+     * @return план чтения
+     */
+    public static RollupPlan of(LocalDateTime start, LocalDateTime end, List<ChronoUnit> granularities) {
+        return of(List.of(new TimeRange(start, end, true)), granularities);
+    }
+
+    /**
+     * Строит общий план для нескольких непересекающихся интервалов.
+     *
+     * @param ranges        интервалы
+     * @param granularities гранулярности бакетов от крупной к мелкой
+     * @return план чтения
+     */
+    public static RollupPlan of(List<TimeRange> ranges, List<ChronoUnit> granularities) {
+        RollupPlan plan = new RollupPlan();
+        for (TimeRange range : ranges) {
+            plan.split(range, granularities, 0);
+        }
+        return plan;
+    }
+
+    /**
+     * @param unit гранулярность
+     * @return интервалы целых бакетов этой гранулярности вида [from, to)
+     */
+    public List<TimeRange> getBuckets(ChronoUnit unit) {
+        return buckets.getOrDefault(unit, List.of());
+    }
+
+    private void split(TimeRange range, List<ChronoUnit> granularities, int level) {
+        if (range.isEmpty()) {
+            return;
+        }
+        if (level == granularities.size()) {
+            rawRanges.add(range);
+            return;
+        }
+
+        ChronoUnit unit = granularities.get(level);
+        LocalDateTime firstBucket = ceil(range.getFrom(), unit);
+        LocalDateTime lastBucketEnd = range.getTo().truncatedTo(unit);
+
+        if (!firstBucket.isBefore(lastBucketEnd)) {
+            split(range, granularities, level + 1);
+            return;
+        }
+
+        buckets.computeIfAbsent(unit, u -> new ArrayList<>())
+                .add(new TimeRange(firstBucket, lastBucketEnd, false));
+        split(new TimeRange(range.getFrom(), firstBucket, false), granularities, level + 1);
+        split(new TimeRange(lastBucketEnd, range.getTo(), range.isToInclusive()), granularities, level + 1);
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime truncated = time.truncatedTo(unit);
+        return truncated.equals(time) ? time : truncated.plus(1, unit);
+    }
+}
@@ -10,31 +10,45 @@ import java.util.List;
 
 public interface StatsRepository extends JpaRepository<Hit, Long> {
 
-    @Query("SELECT h.app AS app, h.uri AS uri, COUNT(h) AS hits  \n" +
-            "FROM Hit h\n" +
-            "where h.timestamp between :start and :end\n" +
-            "GROUP BY h.app, h.uri\n" +
-            "ORDER BY hits DESC")
+    @Query(value = "SELECT a.app AS app, u.uri AS uri, t.hits AS hits\n" +
+            "FROM (SELECT h.app_id, h.uri_id, COUNT(*) AS hits\n" +
+            "      FROM hit h\n" +
+            "      where h.timestamp between :start and :end\n" +
+            "      GROUP BY h.app_id, h.uri_id) t\n" +
+            "JOIN app_dict a ON a.id = t.app_id\n" +
+            "JOIN uri_dict u ON u.id = t.uri_id\n" +
+            "ORDER BY hits DESC", nativeQuery = true)
     List<ViewStatsProjection> getAllViewStatsProjection(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 
-    @Query("SELECT h.app AS app, h.uri AS uri, COUNT(h) AS hits  \n" +
-            "FROM Hit h\n" +
-            "where (h.timestamp between :start and :end) and uri in :uris\n" +
-            "GROUP BY h.app, h.uri\n" +
-            "ORDER BY hits DESC")
+    @Query(value = "SELECT a.app AS app, u.uri AS uri, t.hits AS hits\n" +
+            "FROM (SELECT h.app_id, h.uri_id, COUNT(*) AS hits\n" +
+            "      FROM hit h\n" +
+            "      where (h.timestamp between :start and :end)\n" +
+            "        and h.uri_id in (SELECT id FROM uri_dict WHERE uri in :uris)\n" +
+            "      GROUP BY h.app_id, h.uri_id) t\n" +
+            "JOIN app_dict a ON a.id = t.app_id\n" +
+            "JOIN uri_dict u ON u.id = t.uri_id\n" +
+            "ORDER BY hits DESC", nativeQuery = true)
     List<ViewStatsProjection> getViewStatsProjectionByUris(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end, @Param("uris") List<String> uris);
 
-    @Query("SELECT h.app AS app, h.uri AS uri, COUNT(DISTINCT h.ip) AS hits  \n" +
-            "FROM Hit h\n" +
-            "where h.timestamp between :start and :end\n" +
-            "GROUP BY h.app, h.uri\n" +
-            "ORDER BY hits DESC")
+    @Query(value = "SELECT a.app AS app, u.uri AS uri, t.hits AS hits\n" +
+            "FROM (SELECT h.app_id, h.uri_id, COUNT(DISTINCT h.ip) AS hits\n" +
+            "      FROM hit h\n" +
+            "      where h.timestamp between :start and :end\n" +
+            "      GROUP BY h.app_id, h.uri_id) t\n" +
+            "JOIN app_dict a ON a.id = t.app_id\n" +
+            "JOIN uri_dict u ON u.id = t.uri_id\n" +
+            "ORDER BY hits DESC", nativeQuery = true)
     List<ViewStatsProjection> getViewStatsProjectionUnique(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 
-    @Query("SELECT h.app AS app, h.uri AS uri, COUNT(DISTINCT h.ip) AS hits  \n" +
-            "FROM Hit h\n" +
-            "where (h.timestamp between :start and :end) and uri in :uris\n" +
-            "GROUP BY h.app, h.uri\n" +
-            "ORDER BY hits DESC")
+    @Query(value = "SELECT a.app AS app, u.uri AS uri, t.hits AS hits\n" +
+            "FROM (SELECT h.app_id, h.uri_id, COUNT(DISTINCT h.ip) AS hits\n" +
+            "      FROM hit h\n" +
+            "      where (h.timestamp between :start and :end)\n" +
+            "        and h.uri_id in (SELECT id FROM uri_dict WHERE uri in :uris)\n" +
+            "      GROUP BY h.app_id, h.uri_id) t\n" +
+            "JOIN app_dict a ON a.id = t.app_id\n" +
+            "JOIN uri_dict u ON u.id = t.uri_id\n" +
+            "ORDER BY hits DESC", nativeQuery = true)
     List<ViewStatsProjection> getViewStatsProjectionByUrisUnique(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end, @Param("uris") List<String> uris);
 }
@@ -0,0 +1,93 @@
+package ru.practicum.stats.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Репозиторий потокового чтения статистики.
+ * <p>
+ * Строки читаются курсором порциями по {@code stats.stream.fetch-size} и передаются обработчику
+ * по одной, поэтому в памяти не накапливается весь результат. Драйвер PostgreSQL читает
+ * курсором только при выключенном автокоммите, поэтому методы должны вызываться в транзакции.
+ */
+@Repository
+public class StatsStreamRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public StatsStreamRepository(DataSource dataSource, @Value("${stats.stream.fetch-size:1000}") int fetchSize) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.setFetchSize(fetchSize);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(template);
+    }
+
+    /**
+     * Передаёт статистику по плану (целые бакеты из агрегатов, края из таблицы hit).
+     *
+     * @param plan     план разбиения диапазона
+     * @param uris     список URI для фильтрации (пустой — без фильтра)
+     * @param consumer обработчик строк в порядке убывания количества просмотров
+     */
+    public void streamStats(RollupPlan plan, List<String> uris, Consumer<ViewStatsProjection> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = HitRollupRepository.statsQuery(plan, uris, params);
+        if (sql != null) {
+            query(sql, params, consumer);
+        }
+    }
+
+    /**
+     * Передаёт точную статистику уникальных посещений, посчитанную по таблице hit.
+     *
+     * @param start    начало диапазона (включительно)
+     * @param end      конец диапазона (включительно)
+     * @param uris     список URI для фильтрации (пустой — без фильтра)
+     * @param consumer обработчик строк в порядке убывания количества посещений
+     */
+    public void streamUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                  Consumer<ViewStatsProjection> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+        String sql = "SELECT a.app, u.uri, t.hits FROM (SELECT app_id, uri_id, COUNT(DISTINCT ip) AS hits FROM hit " +
+                "WHERE timestamp BETWEEN :start AND :end" + HitRollupRepository.uriFilter(uris, params) +
+                " GROUP BY app_id, uri_id) t " +
+                "JOIN app_dict a ON a.id = t.app_id JOIN uri_dict u ON u.id = t.uri_id ORDER BY t.hits DESC";
+        query(sql, params, consumer);
+    }
+
+    /**
+     * Передаёт уникальных посетителей каждого URI за диапазон, без подсчёта.
+     * Используется, когда уникальные посещения нужно объединить с посетителями из архива.
+     *
+     * @param start    начало диапазона (включительно)
+     * @param end      конец диапазона (включительно)
+     * @param uris     список URI для фильтрации (пустой — без фильтра)
+     * @param consumer обработчик строк
+     */
+    public void streamVisitors(LocalDateTime start, LocalDateTime end, List<String> uris,
+                               Consumer<VisitorRow> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+        String sql = "SELECT a.app, u.uri, host(t.ip) AS ip FROM (SELECT DISTINCT app_id, uri_id, ip FROM hit " +
+                "WHERE timestamp BETWEEN :start AND :end" + HitRollupRepository.uriFilter(uris, params) + ") t " +
+                "JOIN app_dict a ON a.id = t.app_id JOIN uri_dict u ON u.id = t.uri_id";
+        jdbcTemplate.query(sql, params, (RowCallbackHandler) rs ->
+                consumer.accept(new VisitorRow(rs.getString("app"), rs.getString("uri"), rs.getString("ip"))));
+    }
+
+    private void query(String sql, MapSqlParameterSource params, Consumer<ViewStatsProjection> consumer) {
+        jdbcTemplate.query(sql, params, (RowCallbackHandler) rs ->
+                consumer.accept(new ViewStatsRow(rs.getString("app"), rs.getString("uri"), rs.getLong("hits"))));
+    }
+}
@@ -0,0 +1,30 @@
+package ru.practicum.stats.storage;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Интервал времени [from, to) или [from, to], если {@code toInclusive} равен true.
+ */
+@Value
+public class TimeRange {
+    LocalDateTime from;
+    LocalDateTime to;
+    boolean toInclusive;
+
+    /**
+     * @return true, если в интервал не попадает ни один момент времени
+     */
+    public boolean isEmpty() {
+        return toInclusive ? from.isAfter(to) : !from.isBefore(to);
+    }
+
+    /**
+     * @param time момент времени
+     * @return true, если момент попадает в интервал
+     */
+    public boolean contains(LocalDateTime time) {
+        return !time.isBefore(from) && (toInclusive ? !time.isAfter(to) : time.isBefore(to));
+    }
+}
@@ -0,0 +1,100 @@
+package ru.practicum.stats.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.model.Interval;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Репозиторий временных рядов просмотров.
+ * <p>
+ * Ряд для всех URI строится одним запросом с группировкой по date_trunc:
+ * общее количество — по агрегатам и краям из таблицы hit, уникальное — по таблице hit.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TimeSeriesRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Считает количество просмотров по бакетам ряда.
+     *
+     * @param plan     план разбиения диапазона с гранулярностями {@link Interval#getRollupGranularities()}
+     * @param uris     список URI для фильтрации (пустой — без фильтра)
+     * @param interval размер бакета ряда
+     * @return строки, отсортированные по сервису, URI и началу бакета
+     */
+    public List<TimeSeriesRow> getTimeSeries(RollupPlan plan, List<String> uris, Interval interval) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String uriFilter = HitRollupRepository.uriFilter(uris, params);
+        String field = interval.getSqlField();
+
+        List<String> parts = new ArrayList<>();
+        for (ChronoUnit unit : interval.getRollupGranularities()) {
+            List<TimeRange> ranges = plan.getBuckets(unit);
+            if (!ranges.isEmpty()) {
+                parts.add("SELECT app_id, uri_id, date_trunc('" + field + "', bucket) AS bucket, hits FROM " +
+                        HitRollupRepository.tableFor(unit) + " WHERE (" +
+                        HitRollupRepository.rangeCondition("bucket", ranges, unit.name(), params) + ")" + uriFilter);
+            }
+        }
+        if (!plan.getRawRanges().isEmpty()) {
+            parts.add("SELECT app_id, uri_id, date_trunc('" + field + "', timestamp) AS bucket, COUNT(*) AS hits " +
+                    "FROM hit WHERE (" +
+                    HitRollupRepository.rangeCondition("timestamp", plan.getRawRanges(), "RAW", params) + ")" +
+                    uriFilter + " GROUP BY 1, 2, 3");
+        }
+        if (parts.isEmpty()) {
+            return List.of();
+        }
+
+        String sql = "SELECT a.app, u.uri, t.bucket, t.hits FROM (SELECT app_id, uri_id, bucket, SUM(hits) AS hits " +
+                "FROM (" + String.join(" UNION ALL ", parts) + ") p GROUP BY app_id, uri_id, bucket) t " +
+                "JOIN app_dict a ON a.id = t.app_id JOIN uri_dict u ON u.id = t.uri_id " +
+                "ORDER BY a.app, u.uri, t.bucket";
+        return jdbcTemplate.query(sql, params, TimeSeriesRepository::toRow);
+    }
+
+    /**
+     * Считает количество уникальных IP по бакетам ряда по таблице hit.
+     *
+     * @param start    начало диапазона (включительно)
+     * @param end      конец диапазона (включительно)
+     * @param uris     список URI для фильтрации (пустой — без фильтра)
+     * @param interval размер бакета ряда
+     * @return строки, отсортированные по сервису, URI и началу бакета
+     */
+    public List<TimeSeriesRow> getUniqueTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                   Interval interval) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+        String sql = "SELECT a.app, u.uri, t.bucket, t.hits FROM (SELECT app_id, uri_id, " +
+                "date_trunc('" + interval.getSqlField() + "', timestamp) AS bucket, COUNT(DISTINCT ip) AS hits " +
+                "FROM hit WHERE timestamp BETWEEN :start AND :end" + HitRollupRepository.uriFilter(uris, params) +
+                " GROUP BY 1, 2, 3) t " +
+                "JOIN app_dict a ON a.id = t.app_id JOIN uri_dict u ON u.id = t.uri_id " +
+                "ORDER BY a.app, u.uri, t.bucket";
+        return jdbcTemplate.query(sql, params, TimeSeriesRepository::toRow);
+    }
+
+    private static TimeSeriesRow toRow(ResultSet rs, int rowNum) throws SQLException {
+        return new TimeSeriesRow(rs.getString("app"), rs.getString("uri"),
+                rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits"));
+    }
+
+    /**
+     * Количество просмотров URI сервиса за один бакет ряда.
+     */
+    public record TimeSeriesRow(String app, String uri, LocalDateTime bucket, long hits) {
+    }
+}
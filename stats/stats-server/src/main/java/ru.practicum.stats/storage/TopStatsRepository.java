@@ -0,0 +1,119 @@
+package ru.practicum.stats.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Репозиторий для выборки самых посещаемых URI.
+ * <p>
+ * Точные запросы ограничивают результат через LIMIT на стороне БД. Методы построчного
+ * чтения используются для построения сводок Space-Saving и, как и в {@link StatsStreamRepository},
+ * читают курсором, поэтому должны вызываться в транзакции.
+ */
+@Repository
+public class TopStatsRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public TopStatsRepository(DataSource dataSource, @Value("${stats.stream.fetch-size:1000}") int fetchSize) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.setFetchSize(fetchSize);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(template);
+    }
+
+    /**
+     * Возвращает самые посещаемые URI по плану (целые бакеты из агрегатов, края из таблицы hit).
+     *
+     * @param plan  план разбиения диапазона
+     * @param app   название сервиса (null — все сервисы)
+     * @param limit количество строк
+     * @return статистика, отсортированная по количеству просмотров по убыванию
+     */
+    public List<ViewStatsProjection> getTopStats(RollupPlan plan, String app, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource("limit", limit);
+        String sql = HitRollupRepository.statsQuery(plan, List.of(), app, params);
+        if (sql == null) {
+            return List.of();
+        }
+        return jdbcTemplate.query(sql + " LIMIT :limit", params, TopStatsRepository::toRow);
+    }
+
+    /**
+     * Возвращает URI с наибольшим количеством уникальных посещений, посчитанным по таблице hit.
+     *
+     * @param start начало диапазона (включительно)
+     * @param end   конец диапазона (включительно)
+     * @param app   название сервиса (null — все сервисы)
+     * @param limit количество строк
+     * @return статистика, отсортированная по количеству посещений по убыванию
+     */
+    public List<ViewStatsProjection> getTopUniqueStats(LocalDateTime start, LocalDateTime end, String app,
+                                                       int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("limit", limit);
+        String sql = "SELECT a.app, u.uri, t.hits FROM (SELECT app_id, uri_id, COUNT(DISTINCT ip) AS hits FROM hit " +
+                "WHERE timestamp BETWEEN :start AND :end" + HitRollupRepository.appFilter(app, params) +
+                " GROUP BY app_id, uri_id ORDER BY hits DESC LIMIT :limit) t " +
+                "JOIN app_dict a ON a.id = t.app_id JOIN uri_dict u ON u.id = t.uri_id ORDER BY t.hits DESC";
+        return jdbcTemplate.query(sql, params, TopStatsRepository::toRow);
+    }
+
+    /**
+     * Передаёт статистику по плану построчно в порядке убывания количества просмотров.
+     *
+     * @param plan     план разбиения диапазона
+     * @param app      название сервиса (null — все сервисы)
+     * @param consumer обработчик строк
+     */
+    public void forEachStats(RollupPlan plan, String app, Consumer<ViewStatsProjection> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = HitRollupRepository.statsQuery(plan, List.of(), app, params);
+        if (sql != null) {
+            jdbcTemplate.query(sql, params, (RowCallbackHandler) rs -> consumer.accept(toRow(rs, 0)));
+        }
+    }
+
+    /**
+     * Передаёт строки почасовых агрегатов за указанные часы, внутри часа — по убыванию количества просмотров.
+     *
+     * @param hours    начала часов
+     * @param consumer обработчик строк
+     */
+    public void forEachHourRollup(Collection<LocalDateTime> hours, Consumer<HourRollupRow> consumer) {
+        if (hours.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("hours",
+                hours.stream().map(Timestamp::valueOf).toList());
+        String sql = "SELECT r.bucket, a.app, u.uri, r.hits FROM hit_rollup_hour r " +
+                "JOIN app_dict a ON a.id = r.app_id JOIN uri_dict u ON u.id = r.uri_id " +
+                "WHERE r.bucket IN (:hours) ORDER BY r.bucket, r.hits DESC";
+        jdbcTemplate.query(sql, params, (RowCallbackHandler) rs -> consumer.accept(new HourRollupRow(
+                rs.getTimestamp("bucket").toLocalDateTime(), rs.getString("app"), rs.getString("uri"),
+                rs.getLong("hits"))));
+    }
+
+    private static ViewStatsProjection toRow(ResultSet rs, int rowNum) throws SQLException {
+        return new ViewStatsRow(rs.getString("app"), rs.getString("uri"), rs.getLong("hits"));
+    }
+
+    /**
+     * Строка почасового агрегата.
+     */
+    public record HourRollupRow(LocalDateTime bucket, String app, String uri, long hits) {
+    }
+}
@@ -0,0 +1,13 @@
+package ru.practicum.stats.storage;
+
+import lombok.Value;
+
+/**
+ * Строка статистики, прочитанная через JDBC.
+ */
+@Value
+public class ViewStatsRow implements ViewStatsProjection {
+    String app;
+    String uri;
+    Long hits;
+}
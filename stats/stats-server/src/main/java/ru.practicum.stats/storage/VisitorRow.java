@@ -0,0 +1,11 @@
+package ru.practicum.stats.storage;
+
+/**
+ * Посетитель URI: сервис, URI и IP-адрес, с которого был хотя бы один хит.
+ *
+ * @param app название сервиса
+ * @param uri URI
+ * @param ip  IP-адрес
+ */
+public record VisitorRow(String app, String uri, String ip) {
+}
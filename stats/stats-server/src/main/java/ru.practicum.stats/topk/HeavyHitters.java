@@ -0,0 +1,197 @@
+package ru.practicum.stats.topk;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.model.Hit;
+import ru.practicum.stats.storage.HitRollupRepository;
+import ru.practicum.stats.storage.RollupPlan;
+import ru.practicum.stats.storage.TimeRange;
+import ru.practicum.stats.storage.TopStatsRepository;
+import ru.practicum.stats.storage.ViewStatsProjection;
+import ru.practicum.stats.storage.ViewStatsRow;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Приближённый поиск самых посещаемых URI по почасовым сводкам Space-Saving.
+ * <p>
+ * Для каждого закрытого часа и сервиса строится сводка из {@code stats.topk.capacity} счётчиков
+ * по строкам hit_rollup_hour; сводки кэшируются в памяти (не больше {@code stats.topk.cache-hours} часов).
+ * Края диапазона и текущий час, в который ещё пишутся хиты, читаются из агрегатов точно
+ * и добавляются как ещё одна сводка. Результат — объединение сводок
+ * ({@link SpaceSaving#mergeTop}): оценка каждого URI не меньше истинного количества просмотров
+ * и превышает его не больше чем на N / capacity, где N — все хиты диапазона.
+ * <p>
+ * Хит, записанный в уже закрытый час (например, из очереди отложенной записи), удаляет сводку этого часа
+ * из кэша, и она строится заново при следующем запросе.
+ */
+@Component
+@RequiredArgsConstructor
+public class HeavyHitters {
+    private final TopStatsRepository repository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${stats.topk.capacity:1000}")
+    private int capacity;
+    @Value("${stats.topk.cache-hours:720}")
+    private int cacheHours;
+
+    // сводки по часам: сервис -> сводка; доступ только под блокировкой самого кэша
+    private final Map<LocalDateTime, Map<String, SpaceSaving<AppUri>>> cache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<LocalDateTime, Map<String, SpaceSaving<AppUri>>> e) {
+                    return size() > cacheHours;
+                }
+            };
+    // увеличивается при записи хитов в закрытые часы; сводки, построенные до этого, не кэшируются
+    private long lateVersion;
+
+    /**
+     * Оценивает самые посещаемые URI за диапазон.
+     *
+     * @param start начало диапазона (включительно)
+     * @param end   конец диапазона (включительно)
+     * @param app   название сервиса (null — все сервисы)
+     * @param limit количество строк
+     * @return оценки, отсортированные по убыванию, или пустой Optional, если запрос выгоднее выполнить точно:
+     * limit больше ёмкости сводок или диапазон длиннее кэша
+     */
+    public Optional<List<ViewStatsProjection>> getTop(LocalDateTime start, LocalDateTime end, String app, int limit) {
+        if (limit > capacity) {
+            return Optional.empty();
+        }
+
+        LocalDateTime openFrom = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        RollupPlan plan = RollupPlan.of(start, end, List.of(ChronoUnit.HOURS));
+        List<LocalDateTime> closedHours = new ArrayList<>();
+        List<TimeRange> exactRanges = new ArrayList<>(plan.getRawRanges());
+        for (TimeRange range : plan.getBuckets(ChronoUnit.HOURS)) {
+            for (LocalDateTime hour = range.getFrom(); hour.isBefore(range.getTo()) && hour.isBefore(openFrom);
+                 hour = hour.plusHours(1)) {
+                closedHours.add(hour);
+            }
+            if (range.getTo().isAfter(openFrom)) {
+                LocalDateTime from = range.getFrom().isAfter(openFrom) ? range.getFrom() : openFrom;
+                exactRanges.add(new TimeRange(from, range.getTo(), false));
+            }
+        }
+        if (closedHours.size() > cacheHours) {
+            return Optional.empty();
+        }
+
+        List<SpaceSaving<AppUri>> summaries = new ArrayList<>();
+        for (Map<String, SpaceSaving<AppUri>> byApp : getHourSummaries(closedHours)) {
+            if (app == null) {
+                summaries.addAll(byApp.values());
+            } else if (byApp.containsKey(app)) {
+                summaries.add(byApp.get(app));
+            }
+        }
+        if (!exactRanges.isEmpty()) {
+            SpaceSaving<AppUri> exact = new SpaceSaving<>(capacity);
+            readOnly().executeWithoutResult(status -> repository.forEachStats(
+                    RollupPlan.of(exactRanges, HitRollupRepository.GRANULARITIES), app,
+                    row -> exact.offer(new AppUri(row.getApp(), row.getUri()), row.getHits())));
+            summaries.add(exact);
+        }
+
+        List<ViewStatsProjection> result = new ArrayList<>(limit);
+        for (SpaceSaving.Estimate<AppUri> estimate : SpaceSaving.mergeTop(summaries, limit)) {
+            result.add(new ViewStatsRow(estimate.item().app(), estimate.item().uri(), estimate.count()));
+        }
+        return Optional.of(result);
+    }
+
+    /**
+     * Сбрасывает сводки часов, в которые записаны хиты после их закрытия.
+     *
+     * @param hits хиты, транзакция записи которых зафиксирована
+     */
+    public void onHitsWritten(List<Hit> hits) {
+        LocalDateTime openFrom = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        Set<LocalDateTime> lateHours = new TreeSet<>();
+        for (Hit hit : hits) {
+            if (hit.getTimestamp().isBefore(openFrom)) {
+                lateHours.add(hit.getTimestamp().truncatedTo(ChronoUnit.HOURS));
+            }
+        }
+        if (lateHours.isEmpty()) {
+            return;
+        }
+        synchronized (cache) {
+            lateVersion++;
+            cache.keySet().removeAll(lateHours);
+        }
+    }
+
+    /**
+     * Удаляет сводки часов раньше границы хранения или архива вместе с агрегатами, по которым они построены.
+     * Запросы /stats/top по этим часам отклоняются, поэтому сводки больше не нужны.
+     *
+     * @param cutoff граница хранения или конец дня, перенесённого в архив
+     */
+    public void evictBefore(LocalDateTime cutoff) {
+        synchronized (cache) {
+            lateVersion++;
+            cache.keySet().removeIf(hour -> hour.isBefore(cutoff));
+        }
+    }
+
+    // сводки часов из кэша; недостающие строятся одним проходом по почасовым агрегатам
+    private List<Map<String, SpaceSaving<AppUri>>> getHourSummaries(List<LocalDateTime> hours) {
+        List<Map<String, SpaceSaving<AppUri>>> result = new ArrayList<>(hours.size());
+        List<LocalDateTime> missing = new ArrayList<>();
+        long version;
+        synchronized (cache) {
+            for (LocalDateTime hour : hours) {
+                Map<String, SpaceSaving<AppUri>> byApp = cache.get(hour);
+                if (byApp != null) {
+                    result.add(byApp);
+                } else {
+                    missing.add(hour);
+                }
+            }
+            version = lateVersion;
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<LocalDateTime, Map<String, SpaceSaving<AppUri>>> loaded = new HashMap<>();
+        missing.forEach(hour -> loaded.put(hour, new HashMap<>()));
+        readOnly().executeWithoutResult(status -> repository.forEachHourRollup(missing, row ->
+                loaded.get(row.bucket())
+                        .computeIfAbsent(row.app(), a -> new SpaceSaving<>(capacity))
+                        .offer(new AppUri(row.app(), row.uri()), row.hits())));
+
+        synchronized (cache) {
+            if (version == lateVersion) {
+                cache.putAll(loaded);
+            }
+        }
+        result.addAll(loaded.values());
+        return result;
+    }
+
+    private TransactionTemplate readOnly() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+
+    private record AppUri(String app, String uri) {
+    }
+}
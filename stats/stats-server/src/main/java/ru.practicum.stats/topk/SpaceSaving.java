@@ -0,0 +1,152 @@
+package ru.practicum.stats.topk;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Сводка самых частых элементов потока по алгоритму Space-Saving (Metwally и др.).
+ * <p>
+ * Хранит не больше {@code capacity} счётчиков. Элемент, которого нет в заполненной сводке,
+ * вытесняет счётчик с минимальным значением и наследует его значение как погрешность.
+ * Оценка {@code count} каждого элемента не меньше его истинной частоты и превышает её
+ * не больше чем на {@code error}, а {@code error} не больше N / capacity, где N — сумма весов потока.
+ * Пока сводка не заполнена, все оценки точные.
+ *
+ * @param <T> тип элемента
+ */
+public class SpaceSaving<T> {
+    private static final Comparator<Slot<?>> SLOT_ORDER = Comparator.<Slot<?>>comparingLong(slot -> slot.count)
+            .thenComparingLong(slot -> slot.seq);
+
+    private final int capacity;
+    private final Map<T, Slot<T>> slots = new HashMap<>();
+    private final TreeSet<Slot<?>> byCount = new TreeSet<>(SLOT_ORDER);
+    private long total;
+    private long seq;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity должна быть положительной: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Учитывает элемент с весом.
+     *
+     * @param item   элемент
+     * @param weight вес (количество появлений), больше нуля
+     */
+    public void offer(T item, long weight) {
+        total += weight;
+        Slot<T> slot = slots.get(item);
+        if (slot != null) {
+            update(slot, slot.count + weight, slot.error);
+            return;
+        }
+        if (slots.size() < capacity) {
+            insert(item, weight, 0);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Slot<T> min = (Slot<T>) byCount.pollFirst();
+        slots.remove(min.item);
+        insert(item, min.count + weight, min.count);
+    }
+
+    /**
+     * @return сумма весов всех учтённых элементов
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return верхняя граница частоты любого элемента, отсутствующего в сводке
+     */
+    public long getMinCount() {
+        return slots.size() < capacity || byCount.isEmpty() ? 0 : byCount.first().count;
+    }
+
+    /**
+     * Объединяет сводки (например, по соседним бакетам времени) и возвращает самые частые элементы.
+     * <p>
+     * Оценка элемента — сумма его оценок по сводкам; если в какой-то сводке элемента нет,
+     * вместо оценки берётся минимальный счётчик этой сводки. Погрешности складываются так же,
+     * поэтому итоговая погрешность не больше суммы минимальных счётчиков, то есть не больше
+     * N / capacity, где N — сумма весов всех сводок.
+     *
+     * @param summaries сводки с одинаковой ёмкостью
+     * @param limit     количество возвращаемых элементов
+     * @param <T>       тип элемента
+     * @return оценки, отсортированные по убыванию
+     */
+    public static <T> List<Estimate<T>> mergeTop(List<SpaceSaving<T>> summaries, int limit) {
+        long minSum = 0;
+        for (SpaceSaving<T> summary : summaries) {
+            minSum += summary.getMinCount();
+        }
+
+        // к базовой сумме минимумов добавляется превышение счётчика элемента над минимумом его сводки
+        Map<T, long[]> combined = new HashMap<>();
+        for (SpaceSaving<T> summary : summaries) {
+            long min = summary.getMinCount();
+            for (Slot<T> slot : summary.slots.values()) {
+                long[] acc = combined.computeIfAbsent(slot.item, k -> new long[2]);
+                acc[0] += slot.count - min;
+                acc[1] += slot.error - min;
+            }
+        }
+
+        List<Estimate<T>> estimates = new ArrayList<>(combined.size());
+        for (Map.Entry<T, long[]> entry : combined.entrySet()) {
+            long[] acc = entry.getValue();
+            estimates.add(new Estimate<>(entry.getKey(), minSum + acc[0], minSum + acc[1]));
+        }
+        estimates.sort(Comparator.comparingLong(Estimate<T>::count).reversed());
+        return estimates.size() > limit ? List.copyOf(estimates.subList(0, limit)) : estimates;
+    }
+
+    private void insert(T item, long count, long error) {
+        Slot<T> slot = new Slot<>(item, count, error, seq++);
+        slots.put(item, slot);
+        byCount.add(slot);
+    }
+
+    private void update(Slot<T> slot, long count, long error) {
+        byCount.remove(slot);
+        slot.count = count;
+        slot.error = error;
+        byCount.add(slot);
+    }
+
+    /**
+     * Оценка частоты элемента.
+     *
+     * @param item  элемент
+     * @param count оценка сверху
+     * @param error максимальное превышение оценки над истинной частотой
+     * @param <T>   тип элемента
+     */
+    public record Estimate<T>(T item, long count, long error) {
+    }
+
+    private static final class Slot<T> {
+        private final T item;
+        private final long seq;
+        private long count;
+        private long error;
+
+        private Slot(T item, long count, long error, long seq) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+            this.seq = seq;
+        }
+    }
+}
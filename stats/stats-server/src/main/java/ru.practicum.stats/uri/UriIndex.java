@@ -0,0 +1,124 @@
+package ru.practicum.stats.uri;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.exceptions.InvalidParameterException;
+import ru.practicum.stats.storage.HitDictionaryRepository;
+import ru.practicum.stats.storage.HitDictionaryRepository.Dictionary;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Индекс известных URI для запросов статистики по префиксу ({@code uris=/events/*}).
+ * <p>
+ * Хранит в памяти префиксное дерево {@link UriTrie} всех URI из таблицы uri_dict. Новые URI добавляет
+ * {@link ru.practicum.stats.ingestion.HitDictionary} при записи хитов, а перед разбором шаблонов
+ * индекс дочитывает из uri_dict строки с id больше последнего прочитанного — так в него попадают
+ * и URI, записанные другими экземплярами сервера. Первый запрос с шаблоном загружает словарь целиком.
+ * <p>
+ * Шаблон раскрывается в список конкретных URI, поэтому дальше запрос выполняется так же,
+ * как с явным списком: по индексу hit (uri_id, timestamp), агрегатам и архиву, без полного сканирования.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UriIndex {
+    /**
+     * Символ в конце элемента uris, означающий поиск по префиксу.
+     */
+    public static final String WILDCARD = "*";
+
+    private final HitDictionaryRepository dictionaryRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${stats.uri-index.max-prefix-matches:10000}")
+    private int maxPrefixMatches;
+
+    private final UriTrie trie = new UriTrie();
+    private final AtomicLong size = new AtomicLong();
+    // последний id uri_dict, прочитанный в индекс; -1 — словарь ещё не загружался
+    private int lastId = -1;
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("stats.uri-index.size", size, AtomicLong::get).register(meterRegistry);
+    }
+
+    // элементы с * не в конце тоже считаются шаблонами, чтобы expand их отклонил
+    private static boolean hasPatterns(List<String> uris) {
+        for (String uri : uris) {
+            if (uri.contains(WILDCARD)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Раскрывает шаблоны в списке URI.
+     *
+     * @param uris список URI из запроса; элементы с * на конце — префиксы
+     * @return список конкретных URI (пустой — без фильтра, если среди шаблонов есть {@code *});
+     * пустой Optional, если под фильтр не подходит ни один URI
+     * @throws InvalidParameterException если * стоит не в конце или шаблоны подходят под слишком много URI
+     */
+    public Optional<List<String>> expand(List<String> uris) {
+        if (!hasPatterns(uris)) {
+            return Optional.of(uris);
+        }
+        refresh();
+
+        List<String> result = new ArrayList<>();
+        for (String uri : uris) {
+            int wildcard = uri.indexOf(WILDCARD);
+            if (wildcard < 0) {
+                result.add(uri);
+            } else if (wildcard != uri.length() - 1) {
+                throw new InvalidParameterException("* допускается только в конце URI: " + uri);
+            } else if (wildcard == 0) {
+                return Optional.of(List.of());
+            } else if (!trie.collect(uri.substring(0, wildcard), maxPrefixMatches - result.size(), result)) {
+                throw new InvalidParameterException("под шаблоны " + uris + " подходит больше " +
+                        maxPrefixMatches + " URI");
+            }
+        }
+        return result.isEmpty() ? Optional.empty() : Optional.of(result);
+    }
+
+    /**
+     * Добавляет новые URI из словаря.
+     *
+     * @param uris URI
+     */
+    public void add(Collection<String> uris) {
+        for (String uri : uris) {
+            if (trie.add(uri)) {
+                size.incrementAndGet();
+            }
+        }
+    }
+
+    // дочитывает из словаря URI, добавленные после прошлого чтения
+    private synchronized void refresh() {
+        boolean initial = lastId < 0;
+        dictionaryRepository.forEachAfter(Dictionary.URI, Math.max(lastId, 0), (uri, id) -> {
+            if (trie.add(uri)) {
+                size.incrementAndGet();
+            }
+            lastId = Math.max(lastId, id);
+        });
+        lastId = Math.max(lastId, 0);
+        if (initial) {
+            log.info("Индекс URI загружен: {} URI", size.get());
+        }
+    }
+}
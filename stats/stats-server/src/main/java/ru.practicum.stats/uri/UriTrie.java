@@ -0,0 +1,87 @@
+package ru.practicum.stats.uri;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Префиксное дерево URI по сегментам пути (частям между символами '/').
+ * <p>
+ * Узел соответствует сегменту, поэтому URI с общим началом пути делят узлы, и поиск по префиксу
+ * обходит только поддерево префикса. Добавление и поиск могут выполняться одновременно из разных потоков.
+ */
+final class UriTrie {
+    private final Node root = new Node();
+
+    /**
+     * Добавляет URI.
+     *
+     * @param uri URI
+     * @return true, если URI не было в дереве
+     */
+    boolean add(String uri) {
+        Node node = root;
+        for (String segment : split(uri)) {
+            node = node.children.computeIfAbsent(segment, s -> new Node());
+        }
+        boolean added = !node.terminal;
+        node.terminal = true;
+        return added;
+    }
+
+    /**
+     * Собирает URI, начинающиеся с префикса.
+     *
+     * @param prefix префикс; может заканчиваться посередине сегмента
+     * @param limit  максимальное количество добавляемых URI; URI, уже находящиеся в result, не учитываются
+     * @param result список, в который добавляются найденные URI
+     * @return false, если URI больше limit и собраны не все
+     */
+    boolean collect(String prefix, int limit, List<String> result) {
+        int maxSize = result.size() + limit;
+        String[] segments = split(prefix);
+        Node node = root;
+        for (int i = 0; i < segments.length - 1; i++) {
+            node = node.children.get(segments[i]);
+            if (node == null) {
+                return true;
+            }
+        }
+
+        // последний сегмент префикса может быть неполным: подходят все дочерние сегменты, начинающиеся с него
+        String partial = segments[segments.length - 1];
+        String parentPath = prefix.substring(0, prefix.length() - partial.length());
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            if (child.getKey().startsWith(partial)
+                    && !collectAll(child.getValue(), parentPath + child.getKey(), maxSize, result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // maxSize — размер result, после которого URI больше не добавляются
+    private static boolean collectAll(Node node, String path, int maxSize, List<String> result) {
+        if (node.terminal) {
+            if (result.size() >= maxSize) {
+                return false;
+            }
+            result.add(path);
+        }
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            if (!collectAll(child.getValue(), path + "/" + child.getKey(), maxSize, result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] split(String path) {
+        return path.split("/", -1);
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private volatile boolean terminal;
+    }
+}
@@ -1,7 +1,147 @@
+-- версия схемы: увеличивается при каждом изменении существующих таблиц, которое этот скрипт
+-- не может выполнить сам (CREATE TABLE IF NOT EXISTS не меняет уже созданные таблицы).
+-- Если БД создана другой версией сервера, запуск прерывается с понятной ошибкой,
+-- а не падает позже на запросах к таблицам прежнего вида.
+-- БД без schema_version, созданная до её появления, принимается, если hit уже имеет текущий вид.
+DO '
+BEGIN
+    IF to_regclass(''schema_version'') IS NOT NULL THEN
+        IF NOT EXISTS (SELECT 1 FROM schema_version WHERE id = 1 AND version = 1) THEN
+            RAISE EXCEPTION ''Версия схемы БД статистики не совпадает с версией сервера (ожидается 1): %'',
+                (SELECT version FROM schema_version WHERE id = 1)
+                USING HINT = ''Запустите сервер той версии, которой создана БД, или перенесите данные в новую БД'';
+        END IF;
+    ELSIF to_regclass(''hit'') IS NOT NULL AND (
+            NOT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(''hit''))
+            OR NOT EXISTS (SELECT 1 FROM information_schema.columns
+                           WHERE table_schema = current_schema() AND table_name = ''hit''
+                             AND column_name = ''app_id'')) THEN
+        RAISE EXCEPTION ''Таблица hit создана прежней версией сервера статистики: ожидается таблица, ''
+            ''секционированная по timestamp, со ссылками app_id и uri_id на словари app_dict и uri_dict''
+            USING HINT = ''Перенесите хиты в новую БД или удалите том БД прежней версии'';
+    END IF;
+END';
+
+CREATE TABLE IF NOT EXISTS schema_version (
+    id SMALLINT PRIMARY KEY,
+    version INTEGER NOT NULL
+);
+
+-- словари названий сервисов и URI: в хитах и агрегатах хранятся только их целочисленные id
+CREATE TABLE IF NOT EXISTS app_dict (
+    id SERIAL PRIMARY KEY,
+    app VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS uri_dict (
+    id SERIAL PRIMARY KEY,
+    uri VARCHAR(255) NOT NULL UNIQUE
+);
+
+-- словарь IP для битовых карт уникальных посещений: в битовых картах хранятся id адресов
+CREATE TABLE IF NOT EXISTS ip_dict (
+    id SERIAL PRIMARY KEY,
+    ip INET NOT NULL UNIQUE
+);
+
+-- хиты секционируются по дням; секции на ближайшие дни создаёт HitPartitionManager,
+-- строки вне существующих секций попадают в секцию по умолчанию
 CREATE TABLE IF NOT EXISTS hit (
-    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    app VARCHAR(255) NOT NULL,
-    uri VARCHAR(255) NOT NULL,
-    ip VARCHAR(45) NOT NULL,
-    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL
-);
\ No newline at end of file
+    id BIGSERIAL,
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip INET NOT NULL,
+    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+CREATE TABLE IF NOT EXISTS hit_default PARTITION OF hit DEFAULT;
+
+CREATE INDEX IF NOT EXISTS hit_timestamp_idx ON hit (timestamp);
+
+CREATE INDEX IF NOT EXISTS hit_uri_timestamp_idx ON hit (uri_id, timestamp);
+
+CREATE TABLE IF NOT EXISTS hit_rollup_minute (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS hit_rollup_minute_bucket_idx ON hit_rollup_minute (bucket);
+
+CREATE TABLE IF NOT EXISTS hit_rollup_hour (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS hit_rollup_hour_bucket_idx ON hit_rollup_hour (bucket);
+
+-- первичное заполнение агрегатов по уже сохранённым хитам (выполняется, только пока агрегаты пусты)
+INSERT INTO hit_rollup_minute (app_id, uri_id, bucket, hits)
+SELECT app_id, uri_id, date_trunc('minute', timestamp), COUNT(*)
+FROM hit
+WHERE NOT EXISTS (SELECT 1 FROM hit_rollup_minute)
+GROUP BY app_id, uri_id, date_trunc('minute', timestamp);
+
+INSERT INTO hit_rollup_hour (app_id, uri_id, bucket, hits)
+SELECT app_id, uri_id, date_trunc('hour', timestamp), COUNT(*)
+FROM hit
+WHERE NOT EXISTS (SELECT 1 FROM hit_rollup_hour)
+GROUP BY app_id, uri_id, date_trunc('hour', timestamp);
+
+CREATE TABLE IF NOT EXISTS hit_hll_hour (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (app_id, uri_id, bucket)
+);
+
+CREATE INDEX IF NOT EXISTS hit_hll_hour_bucket_idx ON hit_hll_hour (bucket);
+
+-- битовые карты Roaring id IP за день: точный подсчёт уникальных посещений без чтения хитов
+CREATE TABLE IF NOT EXISTS hit_ip_bitmap (
+    app_id INTEGER NOT NULL,
+    uri_id INTEGER NOT NULL,
+    day DATE NOT NULL,
+    ips BYTEA NOT NULL,
+    PRIMARY KEY (app_id, uri_id, day)
+);
+
+CREATE INDEX IF NOT EXISTS hit_ip_bitmap_day_idx ON hit_ip_bitmap (day);
+
+-- битовые карты дней начиная с covered_from содержат все хиты этих дней
+CREATE TABLE IF NOT EXISTS hit_ip_bitmap_coverage (
+    id SMALLINT PRIMARY KEY,
+    covered_from DATE NOT NULL
+);
+
+-- состояние массового импорта: processed — число записей файла, зафиксированных вместе с хитами
+CREATE TABLE IF NOT EXISTS hit_import (
+    import_id VARCHAR(255) PRIMARY KEY,
+    processed BIGINT NOT NULL DEFAULT 0,
+    stored BIGINT NOT NULL DEFAULT 0,
+    rejected BIGINT NOT NULL DEFAULT 0,
+    completed BOOLEAN NOT NULL DEFAULT FALSE,
+    updated_at TIMESTAMP WITHOUT TIME ZONE NOT NULL DEFAULT now()
+);
+
+CREATE TABLE IF NOT EXISTS hit_log_checkpoint (
+    log_id VARCHAR(255) PRIMARY KEY,
+    segment BIGINT NOT NULL,
+    position INTEGER NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS hit_archive_segment (
+    name VARCHAR(255) PRIMARY KEY,
+    min_time TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    max_time TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL
+);
+
+INSERT INTO schema_version (id, version) VALUES (1, 1) ON CONFLICT DO NOTHING;